@@ -0,0 +1,429 @@
+package guideforce;
+
+import guideforce.interproc.AnalysisOptions;
+import guideforce.interproc.EffectType;
+import guideforce.interproc.InterProcAnalysis;
+import guideforce.interproc.SummaryCache;
+import guideforce.intraproc.IterationOrder;
+import guideforce.policy.AbstractDomain;
+import guideforce.policy.Policy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import soot.SootMethod;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Long-running analysis server that sets up Soot once and keeps the scene, the bodies of
+ * methods and the shared summaries of each policy in memory between requests.
+ * <p>
+ * Requests and responses are JSON objects, one per line. A request names the entry point and
+ * the parameters of the analysis:
+ * <pre>
+ * {"id": 1, "class": "securibench.micro.basic.Basic1", "method": "doGet", "policy": "BinaryPolicy", "k": 1}
+ * </pre>
+ * The method is given by its name or subsignature. The policy is the name of a class in package
+ * {@code guideforce.policy} or a fully qualified class name; it must have a public constructor
+ * without arguments. The fields {@code policy} and {@code k} default to {@code BinaryPolicy}
+ * and 1. Classes that have not been loaded at startup are loaded into the scene on demand.
+ * <p>
+ * Each request is answered by a single line as soon as its analysis has finished:
+ * <pre>
+ * {"id": 1, "status": "ok", "accepted": true, "type": "...", "finitary": "...", "infinitary": "...", "widened": 0, "millis": 42}
+ * </pre>
+ * The status is {@code diverged} if the analysis did not converge, and {@code error} with a
+ * {@code message} if the request could not be analysed. The report of
+ * {@link InterProcAnalysis#analysisResult()} is added as field {@code report} if the request
+ * contains {@code "report": true}.
+ * <p>
+ * Usage: {@code Daemon [--port N] [--snapshots DIR] [--iterations N] [--time-budget MS] [--widen]
+ * [--iteration-order ORDER] [--stream-equations] [--environment-limit N] <soot classpath>
+ * <class> [<class>...]}. The options {@code --iterations} and {@code --time-budget} set the budget of each analysis, and with
+ * {@code --widen} the entries that are still changing when it is exhausted are widened, see
+ * {@link AnalysisOptions}. The number of widened entries is given in the field
+ * {@code widened} of a response. {@code --iteration-order} names the {@link IterationOrder}
+ * of the intraprocedural analyses, and with {@code --stream-equations} they build the
+ * equations of the infinitary analysis during the fixpoint. {@code --environment-limit}
+ * bounds the number of environments before each unit, see
+ * {@link AnalysisOptions#getEnvironmentLimit()}.
+ * <p>
+ * The given classes are loaded when the scene is set up, the first one as main class. Without
+ * {@code --port}, requests are read from standard input and answered on standard output, and
+ * everything else that would be printed on standard output goes to standard error. With
+ * {@code --port}, the daemon accepts connections on the loopback interface and answers the
+ * requests of each connection on the same connection. Analyses are run one at a time, because
+ * Soot is not thread-safe.
+ */
+public final class Daemon {
+
+  private static final String DEFAULT_POLICY = "BinaryPolicy";
+
+  private final TSA tsa;
+  private final AnalysisOptions options;
+
+  /**
+   * Shared summaries, by policy and depth of calling contexts. Summaries are only shared
+   * between analyses with the same depth, as they may differ in precision otherwise. All
+   * caches share the bodies of the scene.
+   */
+  private final Map<String, SummaryCache> caches = new HashMap<>();
+  private final Map<String, Policy> policies = new HashMap<>();
+
+  private final Logger logger = LoggerFactory.getLogger(Daemon.class);
+
+  Daemon(TSA tsa, AnalysisOptions options) {
+    this.tsa = tsa;
+    this.options = options;
+  }
+
+  public static void main(String[] args) throws IOException {
+    // Responses must be the only output on standard output, so that it can be
+    // read line by line. This must happen before any logger or Soot is set up.
+    PrintStream stdout = System.out;
+    System.setOut(System.err);
+
+    int port = -1;
+    AnalysisOptions options = AnalysisOptions.DEFAULT;
+    List<String> positional = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--port") && i + 1 < args.length) {
+        port = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--snapshots") && i + 1 < args.length) {
+        options = options.withSnapshotDirectory(Paths.get(args[++i]));
+      } else if (args[i].equals("--iterations") && i + 1 < args.length) {
+        options = options.withIterationBudget(Integer.parseInt(args[++i]));
+      } else if (args[i].equals("--time-budget") && i + 1 < args.length) {
+        options = options.withTimeBudget(Duration.ofMillis(Long.parseLong(args[++i])));
+      } else if (args[i].equals("--widen")) {
+        options = options.withWidening(true);
+      } else if (args[i].equals("--iteration-order") && i + 1 < args.length) {
+        options = options.withIterationOrder(IterationOrder.valueOf(args[++i]));
+      } else if (args[i].equals("--stream-equations")) {
+        options = options.withStreamingEquations(true);
+      } else if (args[i].equals("--environment-limit") && i + 1 < args.length) {
+        options = options.withEnvironmentLimit(Integer.parseInt(args[++i]));
+      } else {
+        positional.add(args[i]);
+      }
+    }
+    if (positional.size() < 2) {
+      System.err.println("Usage: Daemon [--port N] [--snapshots DIR] [--iterations N] "
+              + "[--time-budget MS] [--widen] [--iteration-order ORDER] [--stream-equations] "
+              + "[--environment-limit N] "
+              + "<soot classpath> <class> [<class>...]");
+      System.exit(2);
+    }
+
+    String[] appClasses = positional.subList(2, positional.size()).toArray(new String[0]);
+    TSA tsa = new TSA(positional.get(0), positional.get(1), appClasses);
+    Daemon daemon = new Daemon(tsa, options);
+
+    if (port < 0) {
+      daemon.serve(new InputStreamReader(System.in, StandardCharsets.UTF_8),
+              new OutputStreamWriter(stdout, StandardCharsets.UTF_8));
+    } else {
+      daemon.listen(port);
+    }
+  }
+
+  /**
+   * Accepts connections on the loopback interface and serves each in its own thread.
+   */
+  void listen(int port) throws IOException {
+    try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+      logger.info("Listening on " + server.getLocalSocketAddress());
+      while (true) {
+        Socket socket = server.accept();
+        Thread thread = new Thread(() -> {
+          try (Socket s = socket) {
+            serve(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8),
+                    new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
+          } catch (IOException e) {
+            logger.warn("Connection failed: " + e.getMessage());
+          }
+        }, "daemon-" + socket.getPort());
+        thread.setDaemon(true);
+        thread.start();
+      }
+    }
+  }
+
+  /**
+   * Answers the requests from {@code in} until the end of the input.
+   */
+  void serve(Reader in, Writer out) throws IOException {
+    BufferedReader reader = new BufferedReader(in);
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.trim().isEmpty()) {
+        continue;
+      }
+      out.write(handle(line));
+      out.write('\n');
+      out.flush();
+    }
+  }
+
+  /**
+   * Answers a single request.
+   */
+  String handle(String line) {
+    Map<String, Object> request;
+    try {
+      request = Json.parseObject(line);
+    } catch (IllegalArgumentException e) {
+      return error(null, "Malformed request: " + e.getMessage());
+    }
+    Object id = request.get("id");
+    try {
+      Object className = request.get("class");
+      Object methodName = request.get("method");
+      if (!(className instanceof String) || !(methodName instanceof String)) {
+        return error(id, "Request must name a class and a method");
+      }
+      Object policyName = request.getOrDefault("policy", DEFAULT_POLICY);
+      Object k = request.getOrDefault("k", 1L);
+      if (!(policyName instanceof String) || !(k instanceof Long)) {
+        return error(id, "Policy must be a name and k a number");
+      }
+      long kCFA = (Long) k;
+      if (kCFA < 1 || kCFA > Integer.MAX_VALUE) {
+        return error(id, "k must be between 1 and " + Integer.MAX_VALUE + ": " + kCFA);
+      }
+      return analyse(id, (String) className, (String) methodName, (String) policyName,
+              (int) kCFA, Boolean.TRUE.equals(request.get("report")));
+    } catch (RuntimeException e) {
+      logger.warn("Request " + line + " failed", e);
+      return error(id, e.toString());
+    }
+  }
+
+  private synchronized String analyse(Object id, String className, String methodName,
+                                      String policyName, int kCFA, boolean report) {
+    long start = System.currentTimeMillis();
+    SootMethod method = tsa.resolveMethod(className, methodName);
+    Policy policy = getPolicy(policyName);
+    SummaryCache summaries =
+            caches.computeIfAbsent(policyName + "@" + kCFA, n -> tsa.newSummaryCache(policy));
+    InterProcAnalysis analysis = tsa.run(summaries, kCFA, method, options);
+    long millis = System.currentTimeMillis() - start;
+    logger.info("Analysed " + method + " in " + millis + " ms, "
+            + summaries.size() + " shared summaries");
+
+    Map<String, Object> response = new LinkedHashMap<>();
+    response.put("id", id);
+    if (analysis == null) {
+      response.put("status", "diverged");
+    } else {
+      EffectType te = analysis.getTypeAndEffectsAtEntryPoint();
+      AbstractDomain.Finitary finitary = te.getAggregateFinitary();
+      AbstractDomain.Infinitary infinitary = te.getInfinitary().getConstantTerm();
+      response.put("status", "ok");
+      response.put("accepted", finitary.accepted() && infinitary.accepted());
+      response.put("type", te.getType().toString());
+      response.put("finitary", finitary.toString());
+      response.put("infinitary", infinitary.toString());
+      response.put("widened", analysis.getWidenedEntries().size());
+      if (report) {
+        response.put("report", analysis.analysisResult());
+      }
+    }
+    response.put("millis", millis);
+    return Json.write(response);
+  }
+
+  /**
+   * Returns the policy with the given name, which is instantiated on first use. Classes
+   * that are not policies are neither initialised nor instantiated.
+   */
+  private Policy getPolicy(String name) {
+    Policy policy = policies.get(name);
+    if (policy == null) {
+      String className = name.contains(".") ? name : "guideforce.policy." + name;
+      try {
+        Class<?> c = Class.forName(className, false, Daemon.class.getClassLoader());
+        if (!Policy.class.isAssignableFrom(c)) {
+          throw new IllegalArgumentException(className + " is not a policy");
+        }
+        policy = c.asSubclass(Policy.class).getConstructor().newInstance();
+      } catch (ReflectiveOperationException | LinkageError e) {
+        throw new IllegalArgumentException("Cannot instantiate policy " + name, e);
+      }
+      policies.put(name, policy);
+    }
+    return policy;
+  }
+
+  private static String error(Object id, String message) {
+    Map<String, Object> response = new LinkedHashMap<>();
+    response.put("id", id);
+    response.put("status", "error");
+    response.put("message", message);
+    return Json.write(response);
+  }
+
+  /**
+   * The subset of JSON that is needed for requests and responses: a single object whose
+   * values are strings, integers, booleans or null.
+   */
+  static final class Json {
+
+    private final String text;
+    private int pos;
+
+    private Json(String text) {
+      this.text = text;
+    }
+
+    static Map<String, Object> parseObject(String text) {
+      Json parser = new Json(text);
+      Map<String, Object> object = new LinkedHashMap<>();
+      parser.expect('{');
+      if (parser.peek() != '}') {
+        do {
+          String key = parser.parseString();
+          parser.expect(':');
+          object.put(key, parser.parseValue());
+        } while (parser.accept(','));
+      }
+      parser.expect('}');
+      if (parser.peek() != 0) {
+        throw new IllegalArgumentException("trailing characters at " + parser.pos);
+      }
+      return object;
+    }
+
+    private Object parseValue() {
+      char c = peek();
+      if (c == '"') {
+        return parseString();
+      } else if (c == '-' || (c >= '0' && c <= '9')) {
+        int begin = pos;
+        pos++;
+        while (pos < text.length() && Character.isDigit(text.charAt(pos))) {
+          pos++;
+        }
+        try {
+          return Long.parseLong(text.substring(begin, pos));
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("bad number at " + begin);
+        }
+      } else if (text.startsWith("true", pos)) {
+        pos += 4;
+        return Boolean.TRUE;
+      } else if (text.startsWith("false", pos)) {
+        pos += 5;
+        return Boolean.FALSE;
+      } else if (text.startsWith("null", pos)) {
+        pos += 4;
+        return null;
+      }
+      throw new IllegalArgumentException("unsupported value at " + pos);
+    }
+
+    private String parseString() {
+      expect('"');
+      StringBuilder buffer = new StringBuilder();
+      while (true) {
+        if (pos >= text.length()) {
+          throw new IllegalArgumentException("unterminated string");
+        }
+        char c = text.charAt(pos++);
+        if (c == '"') {
+          return buffer.toString();
+        } else if (c != '\\') {
+          buffer.append(c);
+        } else if (pos >= text.length()) {
+          throw new IllegalArgumentException("unterminated string");
+        } else {
+          char e = text.charAt(pos++);
+          switch (e) {
+            case 'b': buffer.append('\b'); break;
+            case 'f': buffer.append('\f'); break;
+            case 'n': buffer.append('\n'); break;
+            case 'r': buffer.append('\r'); break;
+            case 't': buffer.append('\t'); break;
+            case 'u':
+              if (pos + 4 > text.length()) {
+                throw new IllegalArgumentException("bad escape at " + pos);
+              }
+              buffer.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+              pos += 4;
+              break;
+            default: buffer.append(e);
+          }
+        }
+      }
+    }
+
+    /**
+     * Skips whitespace and returns the next character, or 0 at the end of the text.
+     */
+    private char peek() {
+      while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+        pos++;
+      }
+      return pos < text.length() ? text.charAt(pos) : 0;
+    }
+
+    private boolean accept(char c) {
+      if (peek() == c) {
+        pos++;
+        return true;
+      }
+      return false;
+    }
+
+    private void expect(char c) {
+      if (!accept(c)) {
+        throw new IllegalArgumentException("expected '" + c + "' at " + pos);
+      }
+    }
+
+    static String write(Map<String, Object> object) {
+      StringBuilder buffer = new StringBuilder("{");
+      for (Map.Entry<String, Object> e : object.entrySet()) {
+        if (buffer.length() > 1) {
+          buffer.append(", ");
+        }
+        writeString(buffer, e.getKey());
+        buffer.append(": ");
+        Object value = e.getValue();
+        if (value instanceof String) {
+          writeString(buffer, (String) value);
+        } else {
+          buffer.append(value);
+        }
+      }
+      return buffer.append('}').toString();
+    }
+
+    private static void writeString(StringBuilder buffer, String s) {
+      buffer.append('"');
+      for (int i = 0; i < s.length(); i++) {
+        char c = s.charAt(i);
+        switch (c) {
+          case '"': buffer.append("\\\""); break;
+          case '\\': buffer.append("\\\\"); break;
+          case '\n': buffer.append("\\n"); break;
+          case '\r': buffer.append("\\r"); break;
+          case '\t': buffer.append("\\t"); break;
+          default:
+            if (c < 0x20) {
+              buffer.append(String.format("\\u%04x", (int) c));
+            } else {
+              buffer.append(c);
+            }
+        }
+      }
+      buffer.append('"');
+    }
+  }
+}
@@ -63,6 +63,15 @@ public class MockInfo {
         return Collections.unmodifiableSet(mockClass.keySet());
     }
 
+    /**
+     * Returns whether the given class is a mockup class that replaces some other class.
+     *
+     * @param className A class name
+     */
+    public boolean isMockClass(String className) {
+        return mockClass.containsValue(className);
+    }
+
     /**
      * Returns the name of a mockup class that replaces the given class.
      *
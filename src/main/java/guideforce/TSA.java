@@ -1,13 +1,16 @@
 package guideforce;
 
-import com.google.common.base.Stopwatch;
 import com.google.common.reflect.ClassPath;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import soot.*;
 import soot.options.Options;
 import soot.util.Chain;
+import guideforce.interproc.AnalysisMetrics;
+import guideforce.interproc.AnalysisOptions;
+import guideforce.interproc.CFGCache;
 import guideforce.interproc.InterProcAnalysis;
+import guideforce.interproc.SummaryCache;
 import guideforce.policy.Policy;
 
 import java.io.File;
@@ -16,9 +19,13 @@ import java.io.PrintWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This class provides the entry point for analysing an application class.
@@ -38,7 +45,7 @@ public final class TSA {
   };
 
   /**
-   * Upper bound on iterations for finitary analysis.
+   * Upper bound on iterations for finitary analysis, unless the options give another one.
    */
   private static final int MAX_ITERATIONS = 40;
 
@@ -47,6 +54,17 @@ public final class TSA {
    */
   private final SootClass mainApplicationClass;
 
+  /**
+   * Bodies of methods and information about mock classes, shared by all summary caches of
+   * the scene.
+   */
+  private final CFGCache cfgCache;
+
+  /**
+   * Time taken to set up Soot, in nanoseconds.
+   */
+  private final long setupNanos;
+
   private final static Logger logger = LoggerFactory.getLogger(TSA.class);
 
   /**
@@ -57,7 +75,10 @@ public final class TSA {
    * @param appClasses               Additional classes that should be loaded as application classes
    */
   TSA(String sootClassPath, String mainApplicationClassName, String... appClasses) {
+    long start = System.nanoTime();
     this.mainApplicationClass = setupSoot(sootClassPath, mainApplicationClassName, appClasses);
+    this.cfgCache = new CFGCache(new MockInfo());
+    this.setupNanos = System.nanoTime() - start;
   }
 
   /**
@@ -69,6 +90,20 @@ public final class TSA {
    * @return Object with analysis result or {@code null} if the analysis did not converge.
    */
   InterProcAnalysis run(Policy policy, int kCFA, String methodNameOrSubSignature) {
+    return run(policy, kCFA, methodNameOrSubSignature, AnalysisOptions.DEFAULT);
+  }
+
+  /**
+   * Analyze a given method.
+   *
+   * @param policy                   Policy for analysis
+   * @param kCFA                     Depth of calling contexts
+   * @param methodNameOrSubSignature Name or subsignature of method to be analysed.
+   * @param options                  Options for computing the fixpoint, e.g. parallelism
+   * @return Object with analysis result or {@code null} if the analysis did not converge.
+   */
+  InterProcAnalysis run(Policy policy, int kCFA, String methodNameOrSubSignature,
+                        AnalysisOptions options) {
     // Resolve the method
     SootMethod method = getMethodByNameOrSubSignature(methodNameOrSubSignature);
 
@@ -79,16 +114,139 @@ public final class TSA {
     logger.info("Library classes: " + Scene.v().getLibraryClasses() + "\n");
 
     // Perform analysis
-    Stopwatch stopwatch = Stopwatch.createStarted();
-    InterProcAnalysis analysis = new InterProcAnalysis(policy, kCFA, method);
-    boolean success = analysis.doAnalysis(MAX_ITERATIONS);
-    stopwatch.stop();
+    InterProcAnalysis analysis = new InterProcAnalysis(policy, kCFA, method, options);
+    analysis.getMetrics().recordPhase(AnalysisMetrics.SCENE_SETUP, setupNanos);
+    boolean success = analysis.doAnalysis(maximumIterations(options));
 
-//    System.out.println("The analysis took " + stopwatch.elapsed(TimeUnit.MILLISECONDS) + " ms.");
+    return success ? analysis : null;
+  }
+
+  /**
+   * Analyze several methods in the scene that has been set up once. The analyses share the
+   * bodies of methods and the summaries of library and mock methods that do not depend on
+   * the entry point.
+   * <p>
+   * Methods are given by their name or subsignature in the main application class, or by
+   * their full Soot signature, such as {@code <a.B: void doGet(int)>}. The classes of the
+   * latter must have been loaded, e.g. by passing them as additional application classes.
+   *
+   * @param policy      Policy for analysis
+   * @param kCFA        Depth of calling contexts
+   * @param entryPoints Methods to be analysed.
+   * @param options     Options for computing the fixpoint, e.g. parallelism
+   * @return Map from each entry point to its analysis result or {@code null} if the analysis
+   * did not converge.
+   */
+  Map<String, InterProcAnalysis> runAll(Policy policy, int kCFA, List<String> entryPoints,
+                                        AnalysisOptions options) {
+    return runAll(policy, kCFA, entryPoints, options, null);
+  }
+
+  /**
+   * Analyze several methods like {@link #runAll(Policy, int, List, AnalysisOptions)} and
+   * keep the shared summaries in a file across runs. Summaries from the file are used as
+   * final entries if their classes are unchanged. Afterwards, all shared summaries are
+   * written back to the file.
+   *
+   * @param summaryFile File with summaries, which need not exist yet.
+   */
+  Map<String, InterProcAnalysis> runAll(Policy policy, int kCFA, List<String> entryPoints,
+                                        AnalysisOptions options, Path summaryFile) {
+    // Output Jimple representation of the application classes for debugging
+    outputJimpleClasses(Scene.v().getApplicationClasses());
 
+    SummaryCache summaries = newSummaryCache(policy);
+    if (summaryFile != null && Files.exists(summaryFile)) {
+      try {
+        int loaded = summaries.load(summaryFile);
+        logger.info("Loaded " + loaded + " summaries from " + summaryFile);
+      } catch (IOException e) {
+        logger.warn("Cannot load summaries from " + summaryFile + ": " + e.getMessage());
+      }
+    }
+
+    Map<String, InterProcAnalysis> results = new LinkedHashMap<>();
+    for (String entryPoint : entryPoints) {
+      SootMethod method = entryPoint.startsWith("<") ? Scene.v().getMethod(entryPoint) :
+              getMethodByNameOrSubSignature(entryPoint);
+
+      InterProcAnalysis analysis = new InterProcAnalysis(policy, kCFA, method, options,
+              summaries);
+      analysis.getMetrics().recordPhase(AnalysisMetrics.SCENE_SETUP, setupNanos);
+      boolean success = analysis.doAnalysis(maximumIterations(options));
+      logger.info("Analysed " + entryPoint + ", " + summaries.size() + " shared summaries");
+      results.put(entryPoint, success ? analysis : null);
+    }
+
+    if (summaryFile != null) {
+      try {
+        int saved = summaries.save(summaryFile);
+        logger.info("Saved " + saved + " summaries to " + summaryFile);
+      } catch (IOException e) {
+        logger.warn("Cannot save summaries to " + summaryFile + ": " + e.getMessage());
+      }
+    }
+    return results;
+  }
+
+  Map<String, InterProcAnalysis> runAll(Policy policy, int kCFA, List<String> entryPoints) {
+    return runAll(policy, kCFA, entryPoints, AnalysisOptions.DEFAULT);
+  }
+
+  /**
+   * Creates an empty summary cache for {@code policy} that shares the bodies of the scene with
+   * all other caches created by this method.
+   */
+  SummaryCache newSummaryCache(Policy policy) {
+    return new SummaryCache(policy, cfgCache);
+  }
+
+  /**
+   * Analyze a method of an arbitrary class in the scene with the bodies and shared summaries
+   * of {@code summaries}, which is kept by the caller across analyses.
+   *
+   * @param summaries Shared resources for the policy of the analysis
+   * @return Object with analysis result or {@code null} if the analysis did not converge.
+   */
+  InterProcAnalysis run(SummaryCache summaries, int kCFA, SootMethod method,
+                        AnalysisOptions options) {
+    InterProcAnalysis analysis = new InterProcAnalysis(summaries.getPolicy(), kCFA, method,
+            options, summaries);
+    analysis.getMetrics().recordPhase(AnalysisMetrics.SCENE_SETUP, setupNanos);
+    boolean success = analysis.doAnalysis(maximumIterations(options));
     return success ? analysis : null;
   }
 
+  /**
+   * Resolves a method of class {@code className} like {@link #getMethodByNameOrSubSignature}.
+   * If the class has not been loaded with the scene, it is loaded now as an application
+   * class and the class hierarchy is computed again.
+   * <p>
+   * Throws an exception if the class or the method cannot be found.
+   *
+   * @param className          Name of the class declaring the method
+   * @param nameOrSubSignature Method name or subsignature
+   * @return Method
+   */
+  SootMethod resolveMethod(String className, String nameOrSubSignature) {
+    SootClass c = Scene.v().getSootClassUnsafe(className, false);
+    if (c == null || c.isPhantom() || c.resolvingLevel() < SootClass.BODIES) {
+      c = Scene.v().forceResolve(className, SootClass.BODIES);
+      if (c.isPhantom()) {
+        throw new IllegalArgumentException("Cannot find class " + className);
+      }
+      c.setApplicationClass();
+      Scene.v().releaseActiveHierarchy();
+      Scene.v().releaseFastHierarchy();
+      logger.info("Loaded class " + className + " into the scene");
+    }
+    return getMethodByNameOrSubSignature(c, nameOrSubSignature);
+  }
+
+  private static int maximumIterations(AnalysisOptions options) {
+    return options.getIterationBudget() > 0 ? options.getIterationBudget() : MAX_ITERATIONS;
+  }
+
   private SootClass setupSoot(String sootClassPath, String entryPointClass, String... appClasses) {
 
     // We set up various soot options:
@@ -179,12 +337,16 @@ public final class TSA {
    * @return Method
    */
   private SootMethod getMethodByNameOrSubSignature(String nameOrSubSignature) {
+    return getMethodByNameOrSubSignature(mainApplicationClass, nameOrSubSignature);
+  }
+
+  private static SootMethod getMethodByNameOrSubSignature(SootClass c, String nameOrSubSignature) {
     try {
       // Generally, we write just the name, not the sub-signature.
       // However, when the method is ambiguous, we write the signature.
-      return mainApplicationClass.getMethodByName(nameOrSubSignature);
+      return c.getMethodByName(nameOrSubSignature);
     } catch (RuntimeException e) {
-      return mainApplicationClass.getMethod(nameOrSubSignature);
+      return c.getMethod(nameOrSubSignature);
     }
   }
 
@@ -0,0 +1,298 @@
+package guideforce.interproc;
+
+import guideforce.intraproc.IterationOrder;
+import soot.SootMethodRef;
+import soot.Unit;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Measurements of one run of the interprocedural analysis: the wall time of its phases, the
+ * work done in each round of the finitary analysis and the time spent on the analysis of each
+ * method.
+ * <p>
+ * For each round, the metrics record how many method table entries have been analysed, how
+ * many flow computations their intraprocedural analyses needed, the sizes of the tables after
+ * the round and the sizes of the supports of the types in the method table. For each method,
+ * they record how often an entry of it has been analysed and how long this took, summed over
+ * all calling contexts and regions, and the units before which the environments have been
+ * joined, if the options bound their number. The number of flow computations depends on the
+ * {@link IterationOrder} of the intraprocedural analyses, which is recorded as well.
+ * <p>
+ * The metrics can be exported as JSON, e.g. to track the performance across releases.
+ */
+public final class AnalysisMetrics {
+
+  /** Setting up Soot and loading the classes, which may be shared with other analyses. */
+  public static final String SCENE_SETUP = "sceneSetup";
+  /** Creating the tables and computing the type pool. */
+  public static final String TYPE_POOL = "typePool";
+  /** Computing the fixpoint of the finitary analysis. */
+  public static final String FINITARY = "finitary";
+  /** Running the infinitary analysis of all entries to set up the equations. */
+  public static final String INFINITARY_EQUATIONS = "infinitaryEquations";
+  /** Solving the infinitary equations. */
+  public static final String SOLVE = "solve";
+  /** Searching for a counterexample. */
+  public static final String COUNTEREXAMPLE = "counterexample";
+
+  private static final List<String> PHASES = Arrays.asList(SCENE_SETUP, TYPE_POOL, FINITARY,
+          INFINITARY_EQUATIONS, SOLVE, COUNTEREXAMPLE);
+
+  private final String entryPoint;
+  private final IterationOrder iterationOrder;
+  private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+  private final List<Round> rounds = new ArrayList<>();
+  private final Map<String, MethodMetrics> methods = new HashMap<>();
+  private Round currentRound;
+
+  AnalysisMetrics(String entryPoint, IterationOrder iterationOrder) {
+    this.entryPoint = entryPoint;
+    this.iterationOrder = iterationOrder;
+  }
+
+  /**
+   * Adds {@code nanos} nanoseconds to the time of phase {@code phase}.
+   */
+  public void recordPhase(String phase, long nanos) {
+    phaseNanos.merge(phase, nanos, Long::sum);
+  }
+
+  /**
+   * Returns the wall time of each phase in nanoseconds.
+   */
+  public Map<String, Long> getPhaseNanos() {
+    return Collections.unmodifiableMap(phaseNanos);
+  }
+
+  public int getRoundCount() {
+    return rounds.size();
+  }
+
+  public IterationOrder getIterationOrder() {
+    return iterationOrder;
+  }
+
+  /**
+   * Returns the number of flow computations of all intraprocedural analyses.
+   */
+  public long getFlowComputations() {
+    long result = 0;
+    for (MethodMetrics metrics : methods.values()) {
+      result += metrics.flowComputations;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the methods with the largest total time of analysis, most expensive first.
+   */
+  public List<String> getHotMethods(int limit) {
+    List<String> result = new ArrayList<>();
+    for (Map.Entry<String, MethodMetrics> entry : methodsByTime()) {
+      if (result.size() >= limit) {
+        break;
+      }
+      result.add(entry.getKey());
+    }
+    return result;
+  }
+
+  void startRound() {
+    currentRound = new Round(rounds.size() + 1);
+    rounds.add(currentRound);
+  }
+
+  void methodAnalysed(MethodTable.Key key, long nanos, int flowComputations) {
+    if (currentRound != null) {
+      currentRound.analysedEntries++;
+      currentRound.flowComputations += flowComputations;
+    }
+    SootMethodRef m = key.getMethodRef();
+    MethodMetrics metrics = methods.computeIfAbsent(m.getSignature(), s -> new MethodMetrics());
+    metrics.analyses++;
+    metrics.nanos += nanos;
+    metrics.flowComputations += flowComputations;
+  }
+
+  /**
+   * Records the units of the method of {@code key} before which the environments have been
+   * joined, because there were more than the limit of the options.
+   */
+  void environmentsJoined(MethodTable.Key key, Collection<Unit> units) {
+    if (units.isEmpty()) {
+      return;
+    }
+    SootMethodRef m = key.getMethodRef();
+    MethodMetrics metrics = methods.computeIfAbsent(m.getSignature(), s -> new MethodMetrics());
+    for (Unit u : units) {
+      metrics.joinedUnits.add(u.toString());
+    }
+  }
+
+  /**
+   * Returns the units before which the environments have been joined, for each method in
+   * which there are such units.
+   */
+  public Map<String, Set<String>> getJoinedUnits() {
+    Map<String, Set<String>> result = new TreeMap<>();
+    for (Map.Entry<String, MethodMetrics> entry : methods.entrySet()) {
+      if (!entry.getValue().joinedUnits.isEmpty()) {
+        result.put(entry.getKey(), Collections.unmodifiableSet(entry.getValue().joinedUnits));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Completes the current round, if there is one, with the sizes of the tables in
+   * {@code state}.
+   */
+  void endRound(ClassTable state) {
+    Round round = currentRound;
+    if (round == null) {
+      return;
+    }
+    currentRound = null;
+    round.nanos = System.nanoTime() - round.start;
+    synchronized (state) {
+      round.methodTableSize = state.getMethodTable().size();
+      round.fieldTableSize = state.getFieldTable().size();
+      round.arrayTableSize = state.getArrayTable().size();
+      for (EffectType te : state.getMethodTable().values()) {
+        int support = te.getType().support().size() + te.getExceptionalType().support().size();
+        round.supportSize += support;
+        round.maxSupportSize = Math.max(round.maxSupportSize, support);
+      }
+    }
+  }
+
+  private List<Map.Entry<String, MethodMetrics>> methodsByTime() {
+    List<Map.Entry<String, MethodMetrics>> entries = new ArrayList<>(methods.entrySet());
+    entries.sort(Comparator.comparingLong(
+            (Map.Entry<String, MethodMetrics> e) -> e.getValue().nanos).reversed()
+            .thenComparing(Map.Entry::getKey));
+    return entries;
+  }
+
+  /**
+   * Returns the metrics as a JSON object. Times are given in milliseconds.
+   */
+  public String toJson() {
+    StringBuilder buffer = new StringBuilder();
+    buffer.append("{\n  \"entryPoint\": ");
+    appendString(buffer, entryPoint);
+    buffer.append(",\n  \"iterationOrder\": ");
+    appendString(buffer, iterationOrder.name());
+    buffer.append(",\n  \"flowComputations\": ").append(getFlowComputations());
+    buffer.append(",\n  \"phases\": {");
+    String separator = "";
+    List<String> phases = new ArrayList<>(PHASES);
+    phases.retainAll(phaseNanos.keySet());
+    for (String phase : phaseNanos.keySet()) {
+      if (!PHASES.contains(phase)) {
+        phases.add(phase);
+      }
+    }
+    for (String phase : phases) {
+      buffer.append(separator).append("\n    ");
+      appendString(buffer, phase);
+      buffer.append(": ").append(millis(phaseNanos.get(phase)));
+      separator = ",";
+    }
+    buffer.append("\n  },\n  \"rounds\": [");
+    separator = "";
+    for (Round round : rounds) {
+      buffer.append(separator).append("\n    {\"round\": ").append(round.number)
+              .append(", \"millis\": ").append(millis(round.nanos))
+              .append(", \"analysedEntries\": ").append(round.analysedEntries)
+              .append(", \"flowComputations\": ").append(round.flowComputations)
+              .append(", \"methodTableSize\": ").append(round.methodTableSize)
+              .append(", \"fieldTableSize\": ").append(round.fieldTableSize)
+              .append(", \"arrayTableSize\": ").append(round.arrayTableSize)
+              .append(", \"supportSize\": ").append(round.supportSize)
+              .append(", \"maxSupportSize\": ").append(round.maxSupportSize)
+              .append("}");
+      separator = ",";
+    }
+    buffer.append("\n  ],\n  \"methods\": [");
+    separator = "";
+    for (Map.Entry<String, MethodMetrics> entry : methodsByTime()) {
+      MethodMetrics metrics = entry.getValue();
+      buffer.append(separator).append("\n    {\"method\": ");
+      appendString(buffer, entry.getKey());
+      buffer.append(", \"analyses\": ").append(metrics.analyses)
+              .append(", \"millis\": ").append(millis(metrics.nanos))
+              .append(", \"flowComputations\": ").append(metrics.flowComputations);
+      if (!metrics.joinedUnits.isEmpty()) {
+        buffer.append(", \"joinedUnits\": [");
+        String unitSeparator = "";
+        for (String u : metrics.joinedUnits) {
+          buffer.append(unitSeparator);
+          appendString(buffer, u);
+          unitSeparator = ", ";
+        }
+        buffer.append("]");
+      }
+      buffer.append("}");
+      separator = ",";
+    }
+    buffer.append("\n  ]\n}\n");
+    return buffer.toString();
+  }
+
+  /**
+   * Writes the metrics as JSON to {@code file}.
+   */
+  public void writeJson(Path file) throws IOException {
+    Files.write(file, toJson().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String millis(long nanos) {
+    return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+  }
+
+  private static void appendString(StringBuilder buffer, String s) {
+    buffer.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        buffer.append('\\').append(c);
+      } else if (c < 0x20) {
+        buffer.append(String.format("\\u%04x", (int) c));
+      } else {
+        buffer.append(c);
+      }
+    }
+    buffer.append('"');
+  }
+
+  private static final class Round {
+    private final int number;
+    private final long start = System.nanoTime();
+    private long nanos;
+    private int analysedEntries;
+    private long flowComputations;
+    private int methodTableSize;
+    private int fieldTableSize;
+    private int arrayTableSize;
+    private long supportSize;
+    private int maxSupportSize;
+
+    Round(int number) {
+      this.number = number;
+    }
+  }
+
+  private static final class MethodMetrics {
+    private int analyses;
+    private long nanos;
+    private long flowComputations;
+    // Units before which the environments have been joined
+    private final Set<String> joinedUnits = new TreeSet<>();
+  }
+}
@@ -0,0 +1,187 @@
+package guideforce.interproc;
+
+import guideforce.intraproc.IterationOrder;
+
+import javax.annotation.concurrent.Immutable;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Options that control how the interprocedural analysis computes its fixpoint.
+ * They do not change the result of the analysis, unless the budget for the fixpoint is
+ * exhausted and entries are widened or the number of environments is bounded.
+ */
+@Immutable
+public final class AnalysisOptions {
+
+  /**
+   * Sequential analysis that gives up if it does not converge within the default number
+   * of iterations.
+   */
+  public static final AnalysisOptions DEFAULT = new AnalysisOptions(1, null, 0, null, false,
+          IterationOrder.PSEUDO_TOPOLOGICAL, false, 0);
+
+  private final int parallelism;
+  private final Path snapshotDirectory;
+  private final int iterationBudget;
+  private final Duration timeBudget;
+  private final boolean widening;
+  private final IterationOrder iterationOrder;
+  private final boolean streamingEquations;
+  private final int environmentLimit;
+
+  private AnalysisOptions(int parallelism, Path snapshotDirectory, int iterationBudget,
+                          Duration timeBudget, boolean widening, IterationOrder iterationOrder,
+                          boolean streamingEquations, int environmentLimit) {
+    this.parallelism = parallelism;
+    this.snapshotDirectory = snapshotDirectory;
+    this.iterationBudget = iterationBudget;
+    this.timeBudget = timeBudget;
+    this.widening = widening;
+    this.iterationOrder = iterationOrder;
+    this.streamingEquations = streamingEquations;
+    this.environmentLimit = environmentLimit;
+  }
+
+  /**
+   * Number of threads that analyse independent method table entries concurrently.
+   * With parallelism 1, the entries are analysed one after the other. Soot is not
+   * thread-safe, so the concurrent analyses resolve methods, build bodies and query the
+   * class hierarchy under the lock of the {@link soot.Scene}.
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  public AnalysisOptions withParallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+    return new AnalysisOptions(parallelism, snapshotDirectory, iterationBudget, timeBudget,
+            widening, iterationOrder, streamingEquations, environmentLimit);
+  }
+
+  /**
+   * Directory in which the fixpoint of each entry point is stored, so that a later analysis
+   * of the same entry point only needs to analyse again what is affected by changed classes,
+   * or {@code null} if every analysis starts afresh.
+   */
+  public Path getSnapshotDirectory() {
+    return snapshotDirectory;
+  }
+
+  public AnalysisOptions withSnapshotDirectory(Path snapshotDirectory) {
+    return new AnalysisOptions(parallelism, snapshotDirectory, iterationBudget, timeBudget,
+            widening, iterationOrder, streamingEquations, environmentLimit);
+  }
+
+  /**
+   * Upper bound on the number of rounds of the finitary analysis and on the number of
+   * iterations for each component of the call graph, or 0 for the default bound.
+   */
+  public int getIterationBudget() {
+    return iterationBudget;
+  }
+
+  public AnalysisOptions withIterationBudget(int iterationBudget) {
+    if (iterationBudget < 0) {
+      throw new IllegalArgumentException("iteration budget must not be negative: "
+              + iterationBudget);
+    }
+    return new AnalysisOptions(parallelism, snapshotDirectory, iterationBudget, timeBudget,
+            widening, iterationOrder, streamingEquations, environmentLimit);
+  }
+
+  /**
+   * Time after which the finitary analysis is considered to have exhausted its budget, or
+   * {@code null} if only the number of iterations is bounded.
+   */
+  public Duration getTimeBudget() {
+    return timeBudget;
+  }
+
+  public AnalysisOptions withTimeBudget(Duration timeBudget) {
+    return new AnalysisOptions(parallelism, snapshotDirectory, iterationBudget, timeBudget,
+            widening, iterationOrder, streamingEquations, environmentLimit);
+  }
+
+  /**
+   * Whether the entries that are still changing when the budget is exhausted are widened to
+   * a conservative approximation, so that the analysis still gives a sound result. Otherwise,
+   * the analysis gives up.
+   */
+  public boolean isWidening() {
+    return widening;
+  }
+
+  public AnalysisOptions withWidening(boolean widening) {
+    return new AnalysisOptions(parallelism, snapshotDirectory, iterationBudget, timeBudget,
+            widening, iterationOrder, streamingEquations, environmentLimit);
+  }
+
+  /**
+   * Order in which the intraprocedural analyses process the units of a method body. It only
+   * affects how many steps the analyses need.
+   */
+  public IterationOrder getIterationOrder() {
+    return iterationOrder;
+  }
+
+  public AnalysisOptions withIterationOrder(IterationOrder iterationOrder) {
+    if (iterationOrder == null) {
+      throw new IllegalArgumentException("iteration order must not be null");
+    }
+    return new AnalysisOptions(parallelism, snapshotDirectory, iterationBudget, timeBudget,
+            widening, iterationOrder, streamingEquations, environmentLimit);
+  }
+
+  /**
+   * Whether the intraprocedural analyses build the equations of the infinitary analysis
+   * whenever they evaluate a statement during the fixpoint, instead of building them for the
+   * converged flows afterwards. This moves the work into the fixpoint, where it is shared
+   * by the threads that analyse entries concurrently, at the price of also building
+   * equations for flows that do not last.
+   */
+  public boolean isStreamingEquations() {
+    return streamingEquations;
+  }
+
+  public AnalysisOptions withStreamingEquations(boolean streamingEquations) {
+    return new AnalysisOptions(parallelism, snapshotDirectory, iterationBudget, timeBudget,
+            widening, iterationOrder, streamingEquations, environmentLimit);
+  }
+
+  /**
+   * Upper bound on the number of environments that the intraprocedural analyses keep before
+   * each unit, or 0 if the number is not bounded. Once the environments before a unit exceed
+   * the bound, they are joined into one that maps each local to the union of its regions,
+   * with the join of their effects. This loses precision, but bounds the time and memory
+   * that branchy methods take. Unlike the other options, it may change the result.
+   */
+  public int getEnvironmentLimit() {
+    return environmentLimit;
+  }
+
+  public AnalysisOptions withEnvironmentLimit(int environmentLimit) {
+    if (environmentLimit < 0) {
+      throw new IllegalArgumentException("environment limit must not be negative: "
+              + environmentLimit);
+    }
+    return new AnalysisOptions(parallelism, snapshotDirectory, iterationBudget, timeBudget,
+            widening, iterationOrder, streamingEquations, environmentLimit);
+  }
+
+  @Override
+  public String toString() {
+    return "AnalysisOptions{" +
+            "parallelism=" + parallelism +
+            ", snapshotDirectory=" + snapshotDirectory +
+            ", iterationBudget=" + iterationBudget +
+            ", timeBudget=" + timeBudget +
+            ", widening=" + widening +
+            ", iterationOrder=" + iterationOrder +
+            ", streamingEquations=" + streamingEquations +
+            ", environmentLimit=" + environmentLimit +
+            '}';
+  }
+}
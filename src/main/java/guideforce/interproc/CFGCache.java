@@ -7,20 +7,27 @@ import soot.toolkits.graph.BriefUnitGraph;
 import soot.toolkits.graph.ExceptionalUnitGraph;
 import soot.util.NumberedString;
 import guideforce.MockInfo;
+import guideforce.intraproc.CompiledBody;
 
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
 /**
  * Cache to avoid repeated construction of control flow graphs.
+ * <p>
+ * Besides the bodies of methods, it keeps their compiled control flow, which is computed
+ * once per body and used by all intraprocedural analyses of the body. Neither depends on the
+ * policy, so one cache can be shared by all analyses in a scene.
  */
-class CFGCache {
+public class CFGCache {
     private final Map<SootMethodRef, Body> bodies;
+    private final Map<Body, CompiledBody> compiledBodies = new IdentityHashMap<>();
     private final MockInfo typeMap;
 
     private final Logger logger = LoggerFactory.getLogger(CFGCache.class);
 
-    CFGCache(MockInfo typeMap) {
+    public CFGCache(MockInfo typeMap) {
         bodies = new HashMap<>();
         this.typeMap = typeMap;
     }
@@ -46,6 +53,18 @@ class CFGCache {
         return body;
     }
 
+    MockInfo getTypeMap() {
+        return typeMap;
+    }
+
+    /**
+     * Returns the compiled control flow of {@code body}, which must have been returned
+     * by {@link #getOrCreate(SootMethodRef)}.
+     */
+    CompiledBody compile(Body body) {
+        return compiledBodies.computeIfAbsent(body, CompiledBody::new);
+    }
+
     @Override
     public String toString() {
         return "CFGCache{" +
@@ -4,7 +4,9 @@ import soot.SootMethod;
 import soot.jimple.Stmt;
 
 import javax.annotation.concurrent.Immutable;
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Objects;
 
 @Immutable
@@ -17,6 +19,11 @@ public final class CallingContext {
     this.callString = new LinkedList<>();
   }
 
+  CallingContext(int k, List<Location> callString) {
+    this.k = k;
+    this.callString = new LinkedList<>(callString);
+  }
+
   CallingContext(CallingContext ctx) {
     Objects.requireNonNull(ctx);
     this.k = ctx.k;
@@ -34,6 +41,14 @@ public final class CallingContext {
     return ctx;
   }
 
+  int getMaxDepth() {
+    return k;
+  }
+
+  List<Location> getCallString() {
+    return Collections.unmodifiableList(callString);
+  }
+
   public String toString() {
     StringBuilder str = new StringBuilder();
     for (Location p : callString) {
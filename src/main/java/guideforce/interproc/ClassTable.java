@@ -3,7 +3,9 @@ package guideforce.interproc;
 // TODO: check defaultTypeAndEffects
 
 import guideforce.MockInfo;
+import guideforce.intraproc.CompiledBody;
 import guideforce.policy.AbstractDomain;
+import guideforce.policy.AbstractDomain.Finitary;
 import guideforce.policy.AbstractDomain.Infinitary;
 import guideforce.policy.Intrinsic;
 import guideforce.policy.Policy;
@@ -18,6 +20,7 @@ import soot.*;
 import soot.toolkits.graph.ExceptionalUnitGraph;
 
 import java.util.*;
+import java.util.function.BinaryOperator;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -34,6 +37,11 @@ import java.util.function.Supplier;
  * <li> Entries in the method table without a body contain a conservative approximation and need
  * not be analysed.
  * </ul>
+ * <p>
+ * All accesses to the tables are synchronized, so that the analyses of several methods may
+ * share one instance concurrently. Soot is not thread-safe, so methods that resolve methods,
+ * build bodies or query the class hierarchy also hold the lock of the {@link Scene}. This
+ * lock is always taken after the lock of the class table.
  */
 public final class ClassTable {
   private final Policy policy;
@@ -43,6 +51,25 @@ public final class ClassTable {
   private final TypePool typePool;
   private final CFGCache cfgCache;
   private final MockInfo typeMap;
+  private final SummaryCache summaries;
+  // Entries that have been initialised with a cached summary.
+  private final Set<MethodTable.Key> summarised = new HashSet<>();
+  // Keys of method entries that have been widened because they have not converged in time
+  private final Set<MethodTable.Key> widened = new HashSet<>();
+
+  // If set, receives the key of every entry that the current thread reads from the tables.
+  private final ThreadLocal<Consumer<Object>> readObserver = new ThreadLocal<>();
+  // If set, receives the key of every entry that the current thread writes.
+  private final ThreadLocal<Consumer<Object>> writeObserver = new ThreadLocal<>();
+
+  // Number of times an entry has been added or has grown. Only ever increases.
+  private long version;
+  // Version at which each entry has last been added or has grown
+  private final Map<Object, Long> changedAt = new HashMap<>();
+  // Version at which entries have last been removed or restored without recording changes
+  private long resetAt;
+  // Keys of the entries that have been added or have grown since the last call to pollChanges.
+  private final Set<Object> changes = new LinkedHashSet<>();
 
   private final Logger logger = LoggerFactory.getLogger(ClassTable.class);
 
@@ -54,22 +81,194 @@ public final class ClassTable {
     this.typeMap = new MockInfo();
     this.cfgCache = new CFGCache(this.typeMap);
     this.typePool = new TypePool(this.cfgCache, maxContextDepth, entryPoint.makeRef());
+    this.summaries = null;
+  }
+
+  /**
+   * Creates tables that share bodies and method summaries with other analyses in the same
+   * scene. Entries with a valid summary in {@code summaries} are initialised with it and
+   * have no body to be analysed.
+   */
+  ClassTable(Policy policy, int maxContextDepth, SootMethod entryPoint, SummaryCache summaries) {
+    this.policy = policy;
+    this.mTable = new MethodTable();
+    this.fTable = new FieldTable();
+    this.arrayTable = new ArrayTable();
+    this.typeMap = summaries.getTypeMap();
+    this.cfgCache = summaries.getCfgCache();
+    this.typePool = new TypePool(this.cfgCache, maxContextDepth, entryPoint.makeRef());
+    this.summaries = summaries;
   }
 
   public ClassTable(ClassTable state) {
-    this.policy = state.policy;
-    this.mTable = new MethodTable(state.mTable);
-    this.fTable = new FieldTable(state.fTable);
-    this.arrayTable = new ArrayTable(state.arrayTable);
-    this.typePool = state.typePool;
-    this.cfgCache = state.cfgCache;
-    this.typeMap = new MockInfo();
+    synchronized (state) {
+      this.policy = state.policy;
+      this.mTable = new MethodTable(state.mTable);
+      this.fTable = new FieldTable(state.fTable);
+      this.arrayTable = new ArrayTable(state.arrayTable);
+      this.typePool = state.typePool;
+      this.cfgCache = state.cfgCache;
+      this.typeMap = state.typeMap;
+      this.summaries = state.summaries;
+      this.summarised.addAll(state.summarised);
+      this.widened.addAll(state.widened);
+      this.version = state.version;
+      this.changedAt.putAll(state.changedAt);
+      this.resetAt = state.resetAt;
+      this.changes.addAll(state.changes);
+    }
   }
 
   public TypePool getTypePool() {
     return typePool;
   }
 
+  /**
+   * Sets a consumer that receives the key of every table entry that is read,
+   * e.g. to record the dependencies of a method analysis.
+   * Only reads by the calling thread are observed.
+   * Passing {@code null} stops the observation.
+   */
+  public void observeReads(Consumer<Object> observer) {
+    if (observer == null) {
+      readObserver.remove();
+    } else {
+      readObserver.set(observer);
+    }
+  }
+
+  private void read(Object key) {
+    Consumer<Object> observer = readObserver.get();
+    if (observer != null) {
+      observer.accept(key);
+    }
+  }
+
+  /**
+   * Runs {@code computation} and adds the keys of the table entries that it reads and writes
+   * to {@code reads} and {@code writes}. The observers of the calling thread receive the keys
+   * as well.
+   */
+  public <T> T recordAccesses(Supplier<T> computation, Set<Object> reads, Set<Object> writes) {
+    Consumer<Object> readBy = readObserver.get();
+    Consumer<Object> writtenBy = writeObserver.get();
+    Consumer<Object> recordRead = reads::add;
+    Consumer<Object> recordWrite = writes::add;
+    readObserver.set(readBy == null ? recordRead : recordRead.andThen(readBy));
+    writeObserver.set(writtenBy == null ? recordWrite : recordWrite.andThen(writtenBy));
+    try {
+      return computation.get();
+    } finally {
+      observeReads(readBy);
+      observeWrites(writtenBy);
+    }
+  }
+
+  /**
+   * Passes the keys {@code reads} and {@code writes} to the observers of the calling thread,
+   * as if it read and wrote these entries again.
+   */
+  public void replayAccesses(Collection<Object> reads, Collection<Object> writes) {
+    Consumer<Object> readBy = readObserver.get();
+    if (readBy != null) {
+      reads.forEach(readBy);
+    }
+    Consumer<Object> writtenBy = writeObserver.get();
+    if (writtenBy != null) {
+      writes.forEach(writtenBy);
+    }
+  }
+
+  /**
+   * Sets a consumer that receives the key of every table entry that the calling thread
+   * writes, whether or not the entry changes. Writes to the method table include the entries
+   * of related classes that are joined to maintain the subtyping invariant.
+   * Passing {@code null} stops the observation.
+   */
+  void observeWrites(Consumer<Object> observer) {
+    if (observer == null) {
+      writeObserver.remove();
+    } else {
+      writeObserver.set(observer);
+    }
+  }
+
+  private void written(Object key) {
+    Consumer<Object> observer = writeObserver.get();
+    if (observer != null) {
+      observer.accept(key);
+    }
+  }
+
+  /**
+   * Returns a counter that is increased whenever an entry of the method, field or array
+   * table is added or grows. If the counter has not changed between two points in time,
+   * then the tables have not changed either.
+   */
+  public synchronized long getVersion() {
+    return version;
+  }
+
+  /**
+   * Returns true if none of the entries {@code keys} has been added or has grown since the
+   * tables had the version {@code version}, see {@link #getVersion()}.
+   */
+  public synchronized boolean unchangedSince(Collection<Object> keys, long version) {
+    if (resetAt > version) {
+      return false;
+    }
+    for (Object key : keys) {
+      Long at = changedAt.get(key);
+      if (at != null && at > version) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the keys of all entries that have been added or have grown since the last
+   * call of this method and resets the set of changes.
+   * The returned keys are instances of {@code MethodTable.Key}, {@code FieldTable.Key}
+   * and {@code ArrayTable.Key}.
+   */
+  synchronized Set<Object> pollChanges() {
+    Set<Object> result = new LinkedHashSet<>(changes);
+    changes.clear();
+    return result;
+  }
+
+  private void changed(Object key) {
+    version++;
+    changedAt.put(key, version);
+    changes.add(key);
+  }
+
+  /**
+   * Replaces the entry {@code key} of {@code table}, if there is one, by its join with
+   * {@code value}. The change is only recorded if the entry really grows.
+   */
+  private <K, V> void joinEntry(Map<K, V> table, K key, V value, BinaryOperator<V> join) {
+    V old = table.get(key);
+    if (old == null) {
+      return;
+    }
+    V joined = join.apply(old, value);
+    if (!joined.equals(old)) {
+      table.put(key, joined);
+      changed(key);
+    }
+  }
+
+  private <K, V> boolean putEntryIfAbsent(Map<K, V> table, K key, Supplier<V> value) {
+    if (!table.containsKey(key)) {
+      table.put(key, value.get());
+      changed(key);
+      return true;
+    }
+    return false;
+  }
+
   /**
    * Gives access to the method table, e.g. for iteration.
    * The returned table cannot be modified.
@@ -78,6 +277,61 @@ public final class ClassTable {
     return Collections.unmodifiableMap(mTable);
   }
 
+  /**
+   * Gives access to the field table. The returned table cannot be modified.
+   */
+  Map<FieldTable.Key, Regions> getFieldTable() {
+    return Collections.unmodifiableMap(fTable);
+  }
+
+  /**
+   * Gives access to the array table. The returned table cannot be modified.
+   */
+  Map<ArrayTable.Key, Regions> getArrayTable() {
+    return Collections.unmodifiableMap(arrayTable);
+  }
+
+  /**
+   * Adds entries from a previous analysis of the same entry point, e.g. to resume from its
+   * fixpoint. The entries are not recorded as changes. Entries for subclasses that are
+   * missing from {@code methods} are added as by {@link #ensurePresent(MethodTable.Key)}.
+   *
+   * @param methods    entries of the method table
+   * @param summarised keys of method entries that have been initialised with a cached summary
+   * @param fields     entries of the field table
+   * @param arrays     entries of the array table
+   */
+  synchronized void restore(Map<MethodTable.Key, EffectType> methods,
+                            Set<MethodTable.Key> summarised,
+                            Map<FieldTable.Key, Regions> fields,
+                            Map<ArrayTable.Key, Regions> arrays) {
+    mTable.putAll(methods);
+    this.summarised.addAll(summarised);
+    fTable.putAll(fields);
+    arrayTable.putAll(arrays);
+    for (MethodTable.Key key : methods.keySet()) {
+      addSubclassEntries(key);
+    }
+    changes.clear();
+    version++;
+    resetAt = version;
+  }
+
+  /**
+   * Removes all entries, e.g. to start the analysis afresh.
+   */
+  synchronized void clear() {
+    mTable.clear();
+    fTable.clear();
+    arrayTable.clear();
+    summarised.clear();
+    widened.clear();
+    changes.clear();
+    changedAt.clear();
+    version++;
+    resetAt = version;
+  }
+
   private enum MethodKind {
     APPLICATION_METHOD,
     INTRINSIC,
@@ -126,13 +380,30 @@ public final class ClassTable {
 //    throw new RuntimeException("Unexpected kind of method " + key.getMethodRef());
   }
 
-  Body getBody(MethodTable.Key key) {
-    MethodKind kind = getKind(key);
-    if (kind == MethodKind.APPLICATION_METHOD || kind == MethodKind.MOCKED_LIBRARY_METHOD) {
-      return cfgCache.getOrCreate(key.getMethodRef());
-    } else {
+  synchronized Body getBody(MethodTable.Key key) {
+    // Entries with a cached summary are final.
+    if (summarised.contains(key)) {
       return null;
     }
+    synchronized (Scene.v()) {
+      MethodKind kind = getKind(key);
+      if (kind == MethodKind.APPLICATION_METHOD || kind == MethodKind.MOCKED_LIBRARY_METHOD) {
+        return cfgCache.getOrCreate(key.getMethodRef());
+      } else {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Returns the compiled control flow of the body of {@code key}, or {@code null} if the
+   * entry has no body to be analysed, see {@link #getBody(MethodTable.Key)}.
+   */
+  synchronized CompiledBody getCompiledBody(MethodTable.Key key) {
+    synchronized (Scene.v()) {
+      Body body = getBody(key);
+      return body == null ? null : cfgCache.compile(body);
+    }
   }
 
   /**
@@ -141,7 +412,8 @@ public final class ClassTable {
    * @param key entry key
    * @return Entry at {@code key} or {@code null} if none exists.
    */
-  public EffectType get(MethodTable.Key key) {
+  public synchronized EffectType get(MethodTable.Key key) {
+    read(key);
     return mTable.get(key);
   }
 
@@ -157,11 +429,12 @@ public final class ClassTable {
    * @param key entry key
    * @param te  types-and-effect to be joined
    */
-  public void joinIfPresent(MethodTable.Key key, EffectType te) {
+  public synchronized void joinIfPresent(MethodTable.Key key, EffectType te) {
     Objects.requireNonNull(key);
     Objects.requireNonNull(te);
 
-    mTable.computeIfPresent(key, (k, v) -> v.join(te));
+    written(key);
+    joinEntry(mTable, key, te, joinOf(key));
     // possible optimisation: if the join does not increase the entry, we can save the following
     // work
 
@@ -173,7 +446,10 @@ public final class ClassTable {
       SootMethodRef newRef = Scene.v().makeMethodRef(mr, m.getName(), m.getParameterTypes(),
               m.getReturnType(), m.isStatic());
       MethodTable.Key newKey = key.withMethodRef(newRef);
-      mTable.computeIfPresent(newKey, (k, v) -> v.join(te));
+      if (mTable.containsKey(newKey)) {
+        written(newKey);
+        joinEntry(mTable, newKey, te, joinOf(newKey));
+      }
     };
 
     // update entries of all classes that inherit the method
@@ -205,6 +481,62 @@ public final class ClassTable {
     }
   }
 
+  /**
+   * Widens the entry {@code key} to the conservative assumption for unknown methods, but with
+   * all possible effects: every region of its type and of its exceptional type, as well as the
+   * region of an unknown result, gets the top finitary effect. Every later join into the entry
+   * is widened in the same way, so that the entry can only grow by new regions. Entries of
+   * superclasses are joined with the widened entry as usual.
+   *
+   * @return {@code true} if the entry exists and had not been widened before.
+   */
+  synchronized boolean widen(MethodTable.Key key) {
+    EffectType te = mTable.get(key);
+    if (te == null || !widened.add(key)) {
+      return false;
+    }
+    joinIfPresent(key, top(key, te));
+    return true;
+  }
+
+  /**
+   * Returns whether the entry {@code key} has been widened.
+   */
+  synchronized boolean isWidened(MethodTable.Key key) {
+    return widened.contains(key);
+  }
+
+  private BinaryOperator<EffectType> joinOf(MethodTable.Key key) {
+    if (!widened.contains(key)) {
+      return EffectType::join;
+    }
+    return (te1, te2) -> top(key, te1.join(te2));
+  }
+
+  private EffectType top(MethodTable.Key key, EffectType te) {
+    AbstractDomain abstractDomain = policy.getAbstractDomain();
+    Finitary all = abstractDomain.topFinitary();
+    Map<Region, Finitary> type = new HashMap<>();
+    for (Region r : te.getType().support()) {
+      type.put(r, all);
+    }
+    type.put(unknownResultRegion(key.getMethodRef()), all);
+    Map<Region, Finitary> exType = new HashMap<>();
+    for (Region r : te.getExceptionalType().support()) {
+      exType.put(r, all);
+    }
+    return new EffectType(new Monad<>(abstractDomain, type), new Monad<>(abstractDomain, exType),
+            te.getInfinitary());
+  }
+
+  /**
+   * The region of the result of an unknown method.
+   */
+  private static Region unknownResultRegion(SootMethodRef m) {
+    return (m.getReturnType() instanceof RefType) ? SpecialRegion.UNKNOWN_REGION :
+            SpecialRegion.BASETYPE_REGION;
+  }
+
   /**
    * Ensures that the method table has an entry for {@code key}.
    * If it does, then the method has no effect. Otherwise, the
@@ -214,11 +546,17 @@ public final class ClassTable {
    *
    * @param key entry key
    */
-  public void ensurePresent(MethodTable.Key key) {
+  public synchronized void ensurePresent(MethodTable.Key key) {
     Objects.requireNonNull(key);
     if (mTable.containsKey(key)) {
       return;
     }
+    synchronized (Scene.v()) {
+      addEntries(key);
+    }
+  }
+
+  private void addEntries(MethodTable.Key key) {
 
     // We need to ensure that any possible implementation is included.
     if (getKind(key) != MethodKind.OPAQUE_LIBRARY_METHOD) {
@@ -230,8 +568,19 @@ public final class ClassTable {
       }
     }
 
-    mTable.put(key, defaultTypeAndEffects(key));
+    // The resolved key may already be present. Its entry must not be reset to the default.
+    MethodTable.Key resolvedKey = key;
+    if (putEntryIfAbsent(mTable, resolvedKey, () -> initialTypeAndEffects(resolvedKey))) {
+      propagateSummary(resolvedKey);
+    }
 
+    addSubclassEntries(key);
+  }
+
+  /**
+   * Adds entries for the method of {@code key} at all subclasses in the type pool.
+   */
+  private void addSubclassEntries(MethodTable.Key key) {
     // If the method is a constructor, then we do not need to close under subtyping
     if (key.getMethodRef().getName().equals("<init>")) {
       return;
@@ -264,8 +613,42 @@ public final class ClassTable {
               mRef.getName(), mRef.getParameterTypes(), mRef.getReturnType(),
               mRef.isStatic());
       MethodTable.Key newKey = key.withMethodRef(newRef);
-      mTable.putIfAbsent(newKey, defaultTypeAndEffects(newKey));
+      if (putEntryIfAbsent(mTable, newKey, () -> initialTypeAndEffects(newKey))) {
+        propagateSummary(newKey);
+      }
+    }
+  }
+
+  /**
+   * Joins the summary of a new entry into the entries of the related classes, just as the
+   * analysis of the entry would have done.
+   */
+  private void propagateSummary(MethodTable.Key key) {
+    if (summarised.contains(key)) {
+      joinIfPresent(key, mTable.get(key));
+    }
+  }
+
+  /**
+   * Returns whether the entry {@code key} has been initialised with a cached summary.
+   */
+  synchronized boolean isSummarised(MethodTable.Key key) {
+    return summarised.contains(key);
+  }
+
+  /**
+   * The types-and-effect with which a new entry is initialised: the cached summary if
+   * there is a valid one, and the default types-and-effect otherwise.
+   */
+  private EffectType initialTypeAndEffects(MethodTable.Key key) {
+    if (summaries != null) {
+      EffectType summary = summaries.lookup(key, typePool);
+      if (summary != null) {
+        summarised.add(key);
+        return summary;
+      }
     }
+    return defaultTypeAndEffects(key);
   }
 
   /**
@@ -286,9 +669,7 @@ public final class ClassTable {
       AbstractDomain abstractDomain = policy.getAbstractDomain();
       Infinitary infinitary = abstractDomain.zeroInfinitary();
       Monad<Region> refType =
-              (key.getMethodRef().getReturnType() instanceof RefType) ?
-                      Monad.pure(abstractDomain, SpecialRegion.UNKNOWN_REGION) :
-                      Monad.pure(abstractDomain, SpecialRegion.BASETYPE_REGION);
+              Monad.pure(abstractDomain, unknownResultRegion(key.getMethodRef()));
       Monad<Region> exType = Monad.empty(abstractDomain);
       return new EffectType(refType, exType, infinitary);
     };
@@ -352,7 +733,8 @@ public final class ClassTable {
   /**
    * Returns a field entry.
    */
-  public Regions get(FieldTable.Key key) {
+  public synchronized Regions get(FieldTable.Key key) {
+    read(key);
     Regions refinedType = fTable.get(key);
 
     if (refinedType == null) {
@@ -377,8 +759,9 @@ public final class ClassTable {
    * @param key entry key
    * @param typ types to be inserted
    */
-  public void putIfAbsent(FieldTable.Key key, Regions typ) {
-    fTable.putIfAbsent(key, typ);
+  public synchronized void putIfAbsent(FieldTable.Key key, Regions typ) {
+    written(key);
+    putEntryIfAbsent(fTable, key, () -> typ);
   }
 
   /**
@@ -388,15 +771,16 @@ public final class ClassTable {
    * @param key entry key
    * @param typ types to be joined
    */
-  public void joinIfPresent(FieldTable.Key key, Regions typ) {
-    fTable.computeIfPresent(key, (k1, v) -> v.join(typ));
+  public synchronized void joinIfPresent(FieldTable.Key key, Regions typ) {
+    written(key);
+    joinEntry(fTable, key, typ, Regions::join);
   }
 
   /**
    * Returns an array entry.
    */
-  public Regions get(ArrayTable.Key key, ArrayType arrayType) {
-
+  public synchronized Regions get(ArrayTable.Key key, ArrayType arrayType) {
+    read(key);
     Regions refinedType = arrayTable.get(key);
 
     if (refinedType == null) {
@@ -421,8 +805,9 @@ public final class ClassTable {
    * @param key entry key
    * @param typ types to be inserted
    */
-  public void putIfAbsent(ArrayTable.Key key, Regions typ) {
-    arrayTable.putIfAbsent(key, typ);
+  public synchronized void putIfAbsent(ArrayTable.Key key, Regions typ) {
+    written(key);
+    putEntryIfAbsent(arrayTable, key, () -> typ);
   }
 
   /**
@@ -432,23 +817,8 @@ public final class ClassTable {
    * @param key entry key
    * @param typ types to be joined
    */
-  public void joinIfPresent(ArrayTable.Key key, Regions typ) {
-    arrayTable.computeIfPresent(key, (k1, v) -> v.join(typ));
-  }
-
-  @Override
-  public boolean equals(Object o) {
-    if (this == o) return true;
-    if (o == null || getClass() != o.getClass()) return false;
-    ClassTable that = (ClassTable) o;
-    return mTable.equals(that.mTable) &&
-            fTable.equals(that.fTable) &&
-            arrayTable.equals(that.arrayTable) &&
-            typePool.equals(that.typePool);
-  }
-
-  @Override
-  public int hashCode() {
-    return Objects.hash(mTable, fTable, arrayTable, typePool);
+  public synchronized void joinIfPresent(ArrayTable.Key key, Regions typ) {
+    written(key);
+    joinEntry(arrayTable, key, typ, Regions::join);
   }
-}
\ No newline at end of file
+}
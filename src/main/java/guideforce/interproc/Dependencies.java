@@ -0,0 +1,113 @@
+package guideforce.interproc;
+
+import java.util.*;
+
+/**
+ * Records which table entries the analysis of each method table entry has read, and which
+ * entries it has written.
+ * <p>
+ * Table entries are identified by their keys, i.e. by instances of {@code MethodTable.Key},
+ * {@code FieldTable.Key} and {@code ArrayTable.Key}. If an entry grows, then only the
+ * methods that have read it need to be analysed again. If an entry has to be reset, e.g.
+ * because the code of a method has changed, then its writers must contribute to it again.
+ * <p>
+ * The analysis of a method writes its own entry in the method table, the entries of the
+ * related classes into which it is joined, and the field and array entries it assigns.
+ */
+final class Dependencies {
+  private final Map<Object, Set<MethodTable.Key>> readers = new HashMap<>();
+  private final Map<MethodTable.Key, Set<Object>> reads = new HashMap<>();
+  private final Map<Object, Set<MethodTable.Key>> writers = new HashMap<>();
+  private final Map<MethodTable.Key, Set<Object>> writes = new HashMap<>();
+
+  /**
+   * Forgets all reads and writes recorded for {@code key}, e.g. before it is analysed again.
+   */
+  void clear(MethodTable.Key key) {
+    forget(key, reads, readers);
+    forget(key, writes, writers);
+  }
+
+  /**
+   * Forgets everything that has been recorded.
+   */
+  void clearAll() {
+    readers.clear();
+    reads.clear();
+    writers.clear();
+    writes.clear();
+  }
+
+  private static void forget(MethodTable.Key key, Map<MethodTable.Key, Set<Object>> forward,
+                             Map<Object, Set<MethodTable.Key>> backward) {
+    Set<Object> entries = forward.remove(key);
+    if (entries == null) {
+      return;
+    }
+    for (Object entry : entries) {
+      Set<MethodTable.Key> keys = backward.get(entry);
+      keys.remove(key);
+      if (keys.isEmpty()) {
+        backward.remove(entry);
+      }
+    }
+  }
+
+  /**
+   * Records that the analysis of {@code reader} has read the table entry {@code entry}.
+   */
+  void addRead(MethodTable.Key reader, Object entry) {
+    reads.computeIfAbsent(reader, k -> new HashSet<>()).add(entry);
+    readers.computeIfAbsent(entry, k -> new LinkedHashSet<>()).add(reader);
+  }
+
+  /**
+   * Records that the analysis of {@code writer} has written the table entry {@code entry}.
+   */
+  void addWrite(MethodTable.Key writer, Object entry) {
+    writes.computeIfAbsent(writer, k -> new HashSet<>()).add(entry);
+    writers.computeIfAbsent(entry, k -> new LinkedHashSet<>()).add(writer);
+  }
+
+  /**
+   * Returns the table entries that the analysis of {@code writer} has written.
+   */
+  Set<Object> writesOf(MethodTable.Key writer) {
+    return Collections.unmodifiableSet(writes.getOrDefault(writer, Collections.emptySet()));
+  }
+
+  /**
+   * Returns the method table entries whose analysis has written {@code entry}.
+   */
+  Set<MethodTable.Key> writersOf(Object entry) {
+    return Collections.unmodifiableSet(writers.getOrDefault(entry, Collections.emptySet()));
+  }
+
+  /**
+   * Returns the method table entries whose analysis has read {@code entry}.
+   */
+  Set<MethodTable.Key> readersOf(Object entry) {
+    return Collections.unmodifiableSet(readers.getOrDefault(entry, Collections.emptySet()));
+  }
+
+  /**
+   * Returns the table entries that the analysis of {@code reader} has read.
+   */
+  Set<Object> readsOf(MethodTable.Key reader) {
+    return Collections.unmodifiableSet(reads.getOrDefault(reader, Collections.emptySet()));
+  }
+
+  /**
+   * Returns the method table entries that the analysis of {@code reader} has read, i.e. the
+   * callees of {@code reader} in the call graph between method table entries.
+   */
+  List<MethodTable.Key> calleesOf(MethodTable.Key reader) {
+    List<MethodTable.Key> callees = new ArrayList<>();
+    for (Object entry : reads.getOrDefault(reader, Collections.emptySet())) {
+      if (entry instanceof MethodTable.Key) {
+        callees.add((MethodTable.Key) entry);
+      }
+    }
+    return callees;
+  }
+}
@@ -0,0 +1,485 @@
+package guideforce.interproc;
+
+import guideforce.intraproc.EffectTerm;
+import guideforce.intraproc.MethodVariable;
+import guideforce.intraproc.Variable;
+import guideforce.policy.Policy;
+import guideforce.types.Regions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Unit;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * The fixpoint of the finitary analysis of one entry point, stored in a file so that a later
+ * analysis of the same entry point can resume from it after some classes have changed.
+ * <p>
+ * A snapshot contains the entries of the method, field and array tables, the table entries
+ * that the analysis of each method table entry has read and written, and the infinitary effect
+ * terms of the analysed entries. It is only loaded for the same entry point, context depth,
+ * abstract domain and type pool. Classes whose class file has changed since the snapshot was
+ * written are recognised by digests of their class files.
+ * <p>
+ * Since table entries only grow during the analysis, an entry that may have received a
+ * contribution from changed code cannot be kept. When a snapshot is loaded, the following
+ * entries are therefore invalidated: the entries that refer to changed classes, the entries
+ * written by the analysis of an invalidated method table entry, and, transitively, the
+ * method table entries whose analysis has read an invalidated entry. The other writers of
+ * an invalidated entry must contribute to it again and are analysed again, as are the
+ * entries whose infinitary effect term cannot be stored. All remaining entries are restored
+ * unchanged.
+ */
+final class FixpointSnapshot {
+  private static final int MAGIC = 0x47464650; // "GFFP"
+  private static final int FORMAT_VERSION = 1;
+
+  private static final int METHOD_ENTRY = 0;
+  private static final int FIELD_ENTRY = 1;
+  private static final int ARRAY_ENTRY = 2;
+
+  private static final Logger logger = LoggerFactory.getLogger(FixpointSnapshot.class);
+
+  private final Map<MethodTable.Key, EffectType> methods = new HashMap<>();
+  private final Set<MethodTable.Key> summarised = new HashSet<>();
+  private final Map<FieldTable.Key, Regions> fields = new HashMap<>();
+  private final Map<ArrayTable.Key, Regions> arrays = new HashMap<>();
+  private final Map<MethodTable.Key, Set<Object>> reads = new HashMap<>();
+  private final Map<MethodTable.Key, Set<Object>> writes = new HashMap<>();
+  private final Map<MethodTable.Key, EffectTerm<Variable>> terms = new HashMap<>();
+  private final Set<MethodTable.Key> reanalyse = new LinkedHashSet<>();
+
+  private FixpointSnapshot() {
+  }
+
+  /**
+   * Returns the file for the snapshot of an entry point in {@code directory}.
+   */
+  static Path file(Path directory, MethodTable.Key entryPointKey) {
+    byte[] description = description(entryPointKey).getBytes(StandardCharsets.UTF_8);
+    long digest = SummaryCodec.digest(description);
+    return directory.resolve(String.format("%016x.fixpoint", digest));
+  }
+
+  private static String description(MethodTable.Key entryPointKey) {
+    return entryPointKey.getMethodRef().getSignature() + "@"
+            + entryPointKey.getCallingContext().getMaxDepth();
+  }
+
+  /**
+   * Writes a snapshot of the finitary fixpoint of an entry point.
+   *
+   * @param state        copy of the tables at the end of the finitary analysis
+   * @param dependencies reads and writes of the analysed entries
+   * @param terms        infinitary effect terms of the analysed entries
+   */
+  static void save(Path file, Policy policy, MethodTable.Key entryPointKey, ClassTable state,
+                   Dependencies dependencies, Map<MethodTable.Key, EffectTerm<Variable>> terms)
+          throws IOException {
+    Map<MethodTable.Key, EffectType> methods = state.getMethodTable();
+    Map<FieldTable.Key, Regions> fields = state.getFieldTable();
+    Map<ArrayTable.Key, Regions> arrays = state.getArrayTable();
+    SummaryCodec.StringTable strings = new SummaryCodec.StringTable();
+    Set<SootClass> classes = new HashSet<>();
+
+    // The entries are numbered, so that dependencies can refer to them. Entries that have
+    // been read or written without being present in a table are numbered as well.
+    Map<Object, Integer> ids = new LinkedHashMap<>();
+    for (Object key : methods.keySet()) {
+      ids.put(key, ids.size());
+    }
+    for (Object key : fields.keySet()) {
+      ids.put(key, ids.size());
+    }
+    for (Object key : arrays.keySet()) {
+      ids.put(key, ids.size());
+    }
+    for (MethodTable.Key key : terms.keySet()) {
+      for (Object entry : dependencies.readsOf(key)) {
+        ids.putIfAbsent(entry, ids.size());
+      }
+      for (Object entry : dependencies.writesOf(key)) {
+        ids.putIfAbsent(entry, ids.size());
+      }
+    }
+
+    List<byte[]> entryBlocks = new ArrayList<>();
+    for (Object entry : ids.keySet()) {
+      SummaryCodec.Encoder encoder = new SummaryCodec.Encoder(strings);
+      if (entry instanceof MethodTable.Key) {
+        MethodTable.Key key = (MethodTable.Key) entry;
+        encoder.writeInt(METHOD_ENTRY);
+        encoder.writeKey(key);
+        EffectType te = methods.get(key);
+        encoder.writeInt(te == null ? 0 : 1);
+        if (te != null) {
+          encoder.writeEffectType(te);
+          encoder.writeInt(state.isSummarised(key) ? 1 : 0);
+        }
+      } else if (entry instanceof FieldTable.Key) {
+        FieldTable.Key key = (FieldTable.Key) entry;
+        encoder.writeInt(FIELD_ENTRY);
+        encoder.writeRegion(key.getRegion());
+        encoder.writeField(key.getField());
+        Regions regions = fields.get(key);
+        encoder.writeInt(regions == null ? 0 : 1);
+        if (regions != null) {
+          encoder.writeRegions(regions);
+        }
+      } else {
+        ArrayTable.Key key = (ArrayTable.Key) entry;
+        encoder.writeInt(ARRAY_ENTRY);
+        encoder.writeRegion(key.getRegion());
+        Regions regions = arrays.get(key);
+        encoder.writeInt(regions == null ? 0 : 1);
+        if (regions != null) {
+          encoder.writeRegions(regions);
+        }
+      }
+      entryBlocks.add(encoder.toByteArray());
+      classes.addAll(encoder.getClasses());
+    }
+
+    List<byte[]> recordBlocks = new ArrayList<>();
+    for (Map.Entry<MethodTable.Key, EffectTerm<Variable>> record : terms.entrySet()) {
+      MethodTable.Key key = record.getKey();
+      SummaryCodec.Encoder encoder = new SummaryCodec.Encoder(strings);
+      encoder.writeInt(ids.get(key));
+      writeIds(encoder, dependencies.readsOf(key), ids);
+      writeIds(encoder, dependencies.writesOf(key), ids);
+      // The body may belong to a mock class rather than to the class of the method.
+      encoder.writeClass(state.getBody(key).getMethod().getDeclaringClass());
+      // Terms that depend on statements of other methods cannot be restored, so that the
+      // method must be analysed again.
+      boolean restorable = true;
+      for (Variable x : record.getValue().getCoefficients().keySet()) {
+        restorable &= x instanceof MethodVariable;
+      }
+      encoder.writeInt(restorable ? 1 : 0);
+      if (restorable) {
+        encoder.writeEffectTerm(record.getValue());
+      }
+      recordBlocks.add(encoder.toByteArray());
+      classes.addAll(encoder.getClasses());
+    }
+
+    SummaryCodec.ClassFiles classFiles = new SummaryCodec.ClassFiles();
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeLong(SummaryCodec.domainFingerprint(policy));
+      out.writeLong(SummaryCodec.typePoolFingerprint(state.getTypePool()));
+      out.writeUTF(description(entryPointKey));
+      out.writeInt(classes.size());
+      for (SootClass c : classes) {
+        // Classes without a class file, e.g. phantom classes, are written as changed.
+        Long digest = classFiles.digest(c.getName());
+        out.writeUTF(c.getName());
+        out.writeLong(digest == null ? 0 : digest);
+      }
+      strings.write(out);
+      writeBlocks(out, entryBlocks);
+      writeBlocks(out, recordBlocks);
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private static void writeIds(SummaryCodec.Encoder encoder, Set<Object> entries,
+                               Map<Object, Integer> ids) throws IOException {
+    encoder.writeInt(entries.size());
+    for (Object entry : entries) {
+      encoder.writeInt(ids.get(entry));
+    }
+  }
+
+  private static void writeBlocks(DataOutputStream out, List<byte[]> blocks)
+          throws IOException {
+    out.writeInt(blocks.size());
+    for (byte[] block : blocks) {
+      out.writeInt(block.length);
+      out.write(block);
+    }
+  }
+
+  private static List<byte[]> readBlocks(DataInputStream in) throws IOException {
+    int n = in.readInt();
+    List<byte[]> blocks = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      byte[] block = new byte[in.readInt()];
+      in.readFully(block);
+      blocks.add(block);
+    }
+    return blocks;
+  }
+
+  /**
+   * Reads the snapshot of an entry point and invalidates the entries that are affected by
+   * changed classes.
+   *
+   * @param summaries cache of the analysis, which must provide the summarised entries
+   * @return The snapshot or {@code null} if it cannot be used for the analysis.
+   */
+  static FixpointSnapshot load(Path file, Policy policy, MethodTable.Key entryPointKey,
+                               TypePool typePool, SummaryCache summaries) throws IOException {
+    try (DataInputStream in = new DataInputStream(
+            new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+        throw new IOException("not a fixpoint snapshot: " + file);
+      }
+      if (in.readLong() != SummaryCodec.domainFingerprint(policy)) {
+        logger.info("Ignoring snapshot " + file + " computed for a different domain");
+        return null;
+      }
+      if (in.readLong() != SummaryCodec.typePoolFingerprint(typePool)) {
+        logger.info("Ignoring snapshot " + file + " computed for a different type pool");
+        return null;
+      }
+      if (!in.readUTF().equals(description(entryPointKey))) {
+        logger.info("Ignoring snapshot " + file + " computed for a different entry point");
+        return null;
+      }
+
+      SummaryCodec.ClassFiles classFiles = new SummaryCodec.ClassFiles();
+      Set<String> changedClasses = new HashSet<>();
+      int n = in.readInt();
+      for (int i = 0; i < n; i++) {
+        String className = in.readUTF();
+        long expected = in.readLong();
+        Long digest = classFiles.digest(className);
+        if (digest == null || digest != expected) {
+          changedClasses.add(className);
+        }
+      }
+      logger.debug("Classes changed since snapshot " + file + ": " + changedClasses);
+
+      SummaryCodec.StringTable strings = SummaryCodec.StringTable.read(in);
+      List<byte[]> entryBlocks = readBlocks(in);
+      List<byte[]> recordBlocks = readBlocks(in);
+
+      FixpointSnapshot snapshot = new FixpointSnapshot();
+      snapshot.decode(policy, typePool, summaries, strings, changedClasses, entryBlocks,
+              recordBlocks);
+      return snapshot;
+    }
+  }
+
+  private void decode(Policy policy, TypePool typePool, SummaryCache summaries,
+                      SummaryCodec.StringTable strings, Set<String> changedClasses,
+                      List<byte[]> entryBlocks, List<byte[]> recordBlocks) throws IOException {
+    Map<SootMethod, List<Unit>> units = new HashMap<>();
+    int n = entryBlocks.size();
+    Object[] entries = new Object[n];
+    Object[] values = new Object[n];
+    boolean[] summarisedEntries = new boolean[n];
+    Deque<Integer> toInvalidate = new ArrayDeque<>();
+    Deque<Integer> toDrop = new ArrayDeque<>();
+
+    for (int i = 0; i < n; i++) {
+      SummaryCodec.Decoder decoder = new SummaryCodec.Decoder(entryBlocks.get(i), strings,
+              policy, units, changedClasses);
+      int kind = decoder.readInt();
+      try {
+        if (kind == METHOD_ENTRY) {
+          MethodTable.Key key = decoder.readKey();
+          entries[i] = key;
+          if (decoder.readInt() != 0) {
+            values[i] = decoder.readEffectType();
+            summarisedEntries[i] = decoder.readInt() != 0;
+            if (summarisedEntries[i]
+                    && (summaries == null || summaries.lookup(key, typePool) == null)) {
+              throw new SummaryCodec.UnresolvedException("summary of " + key);
+            }
+          }
+        } else if (kind == FIELD_ENTRY) {
+          entries[i] = new FieldTable.Key(decoder.readRegion(), decoder.readField());
+          values[i] = decoder.readInt() != 0 ? decoder.readRegions() : null;
+        } else if (kind == ARRAY_ENTRY) {
+          entries[i] = new ArrayTable.Key(decoder.readRegion());
+          values[i] = decoder.readInt() != 0 ? decoder.readRegions() : null;
+        } else {
+          throw new IOException("invalid table entry " + kind);
+        }
+      } catch (SummaryCodec.UnresolvedException e) {
+        logger.debug("Invalidating table entry: cannot resolve " + e.getMessage());
+        entries[i] = null;
+        // The analysis of a method must be repeated if its own entry cannot be restored.
+        (kind == METHOD_ENTRY ? toInvalidate : toDrop).add(i);
+      }
+    }
+
+    // Dependencies between the entries, by number
+    List<Set<Integer>> readers = new ArrayList<>(n);
+    List<Set<Integer>> writers = new ArrayList<>(n);
+    List<int[]> writesOf = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      readers.add(new HashSet<>());
+      writers.add(new HashSet<>());
+      writesOf.add(new int[0]);
+    }
+    Map<Integer, int[]> recordReads = new HashMap<>();
+    // Method entries to be analysed again, although their own entry remains valid
+    Set<Integer> toRepeat = new LinkedHashSet<>();
+    Map<Integer, EffectTerm<Variable>> recordTerms = new HashMap<>();
+    for (byte[] block : recordBlocks) {
+      SummaryCodec.Decoder decoder = new SummaryCodec.Decoder(block, strings, policy, units,
+              changedClasses);
+      int id = decoder.readInt();
+      int[] r = readIds(decoder);
+      int[] w = readIds(decoder);
+      for (int e : r) {
+        readers.get(e).add(id);
+      }
+      for (int e : w) {
+        writers.get(e).add(id);
+      }
+      writesOf.set(id, w);
+      recordReads.put(id, r);
+      try {
+        decoder.readClass();
+        if (decoder.readInt() != 0) {
+          recordTerms.put(id, decoder.readEffectTerm());
+        } else {
+          toRepeat.add(id);
+        }
+      } catch (SummaryCodec.UnresolvedException e) {
+        logger.debug("Invalidating analysis result: cannot resolve " + e.getMessage());
+        toInvalidate.add(id);
+      }
+    }
+
+    // An invalidated method entry is dropped together with all entries its analysis has
+    // written. A dropped entry invalidates its readers and requires its writers to
+    // contribute again.
+    boolean[] invalid = new boolean[n];
+    boolean[] dropped = new boolean[n];
+    while (!toInvalidate.isEmpty() || !toDrop.isEmpty()) {
+      if (!toInvalidate.isEmpty()) {
+        int k = toInvalidate.pop();
+        if (!invalid[k]) {
+          invalid[k] = true;
+          toDrop.add(k);
+          for (int e : writesOf.get(k)) {
+            toDrop.add(e);
+          }
+        }
+      } else {
+        int e = toDrop.pop();
+        if (!dropped[e]) {
+          dropped[e] = true;
+          toInvalidate.addAll(readers.get(e));
+          toRepeat.addAll(writers.get(e));
+        }
+      }
+    }
+
+    for (int i = 0; i < n; i++) {
+      if (dropped[i] || values[i] == null) {
+        continue;
+      }
+      if (entries[i] instanceof MethodTable.Key) {
+        methods.put((MethodTable.Key) entries[i], (EffectType) values[i]);
+        if (summarisedEntries[i]) {
+          summarised.add((MethodTable.Key) entries[i]);
+        }
+      } else if (entries[i] instanceof FieldTable.Key) {
+        fields.put((FieldTable.Key) entries[i], (Regions) values[i]);
+      } else {
+        arrays.put((ArrayTable.Key) entries[i], (Regions) values[i]);
+      }
+    }
+    for (int id : toRepeat) {
+      if (!invalid[id]) {
+        reanalyse.add((MethodTable.Key) entries[id]);
+      }
+    }
+    for (Map.Entry<Integer, EffectTerm<Variable>> record : recordTerms.entrySet()) {
+      int id = record.getKey();
+      if (invalid[id] || toRepeat.contains(id)) {
+        continue;
+      }
+      MethodTable.Key key = (MethodTable.Key) entries[id];
+      terms.put(key, record.getValue());
+      reads.put(key, resolve(recordReads.get(id), entries));
+      writes.put(key, resolve(writesOf.get(id), entries));
+    }
+
+    logger.debug("Restoring " + terms.size() + " of " + recordBlocks.size()
+            + " analysis results, " + reanalyse.size() + " to be analysed again");
+  }
+
+  private static int[] readIds(SummaryCodec.Decoder decoder) throws IOException {
+    int[] ids = new int[decoder.readInt()];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = decoder.readInt();
+    }
+    return ids;
+  }
+
+  private static Set<Object> resolve(int[] ids, Object[] entries) {
+    Set<Object> result = new HashSet<>();
+    for (int id : ids) {
+      result.add(entries[id]);
+    }
+    return result;
+  }
+
+  /**
+   * Entries of the method table that are still valid.
+   */
+  Map<MethodTable.Key, EffectType> getMethods() {
+    return methods;
+  }
+
+  /**
+   * Keys of the valid method table entries that have been initialised with a cached summary.
+   */
+  Set<MethodTable.Key> getSummarised() {
+    return summarised;
+  }
+
+  Map<FieldTable.Key, Regions> getFields() {
+    return fields;
+  }
+
+  Map<ArrayTable.Key, Regions> getArrays() {
+    return arrays;
+  }
+
+  /**
+   * Infinitary effect terms of the method table entries whose analysis is still valid.
+   */
+  Map<MethodTable.Key, EffectTerm<Variable>> getTerms() {
+    return terms;
+  }
+
+  /**
+   * Returns the table entries that the analysis of a valid entry has read.
+   */
+  Set<Object> readsOf(MethodTable.Key key) {
+    return reads.get(key);
+  }
+
+  /**
+   * Returns the table entries that the analysis of a valid entry has written.
+   */
+  Set<Object> writesOf(MethodTable.Key key) {
+    return writes.get(key);
+  }
+
+  /**
+   * Method table entries that must be analysed again because they have contributed to an
+   * invalidated entry.
+   */
+  Set<MethodTable.Key> getReanalyse() {
+    return reanalyse;
+  }
+}
@@ -13,7 +13,6 @@ import org.slf4j.LoggerFactory;
 import soot.*;
 import soot.jimple.*;
 import soot.tagkit.LineNumberTag;
-import soot.toolkits.graph.BriefUnitGraph;
 import soot.toolkits.graph.UnitGraph;
 import soot.util.cfgcmd.CFGGraphType;
 import soot.util.cfgcmd.CFGToDotGraph;
@@ -21,8 +20,13 @@ import soot.util.dot.DotGraph;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 public final class InterProcAnalysis {
@@ -36,15 +40,64 @@ public final class InterProcAnalysis {
   private final MethodTable.Key entryPointKey;
 
   private final Map<MethodTable.Key, FinitaryEffectAnalysis> finitaryResults = new HashMap<>();
+  // Entries restored from a snapshot whose analysis is still valid, with their infinitary
+  // effect terms. They are only analysed again if an entry they have read changes.
+  private final Map<MethodTable.Key, EffectTerm<Variable>> restored = new HashMap<>();
+  // Infinitary effect terms of all analysed entries, for the snapshot
+  private final Map<MethodTable.Key, EffectTerm<Variable>> infinitaryTerms = new HashMap<>();
+  private final Dependencies dependencies = new Dependencies();
+  // Entries that have changed since the last analysis of each entry that has read them.
+  // The next analysis of the entry starts from the previous result and only processes the
+  // units that have read one of them.
+  private final Map<MethodTable.Key, Set<Object>> changedReads = new HashMap<>();
+  // Number of times each entry has been analysed, for reporting entries that do not converge
+  private final Map<MethodTable.Key, Integer> analysisCounts = new HashMap<>();
+  // Entries widened when the budget was exhausted, with their number of analyses until then
+  private final Map<MethodTable.Key, Integer> widened = new LinkedHashMap<>();
+  // Value of System.nanoTime() at which the time budget is exhausted
+  private long deadline;
+  private final Set<MethodTable.Key> pending = new LinkedHashSet<>();
+  private final AnalysisOptions options;
+  private final SummaryCache summaries;
+  // Pool for the concurrent analysis of method table entries, if the options allow for it.
+  private ForkJoinPool pool;
   private final EquationSystem infinitaryResults = new EquationSystem();
+  private final AnalysisMetrics metrics;
 
   private final List<FinitaryEffectAnalysis.UnitAndEffect> problematicPath = new LinkedList<>();
 
   private final Logger logger = LoggerFactory.getLogger(InterProcAnalysis.class);
 
   public InterProcAnalysis(Policy policy, int maxContextDepth, SootMethod entryPoint) {
+    this(policy, maxContextDepth, entryPoint, AnalysisOptions.DEFAULT);
+  }
+
+  public InterProcAnalysis(Policy policy, int maxContextDepth, SootMethod entryPoint,
+                           AnalysisOptions options) {
+    this(policy, maxContextDepth, entryPoint, options, null);
+  }
+
+  /**
+   * Creates an analysis that shares bodies and method summaries with other analyses through
+   * {@code summaries}. Once the analysis has converged, the summaries of its library and mock
+   * methods are added to the cache.
+   *
+   * @param summaries cache for the policy or {@code null} if nothing is shared
+   */
+  public InterProcAnalysis(Policy policy, int maxContextDepth, SootMethod entryPoint,
+                           AnalysisOptions options, SummaryCache summaries) {
+    if (summaries != null && summaries.getPolicy() != policy) {
+      throw new IllegalArgumentException("summary cache belongs to a different policy");
+    }
     this.policy = policy;
-    this.state = new ClassTable(policy, maxContextDepth, entryPoint);
+    this.options = options;
+    this.summaries = summaries;
+    this.metrics = new AnalysisMetrics(entryPoint.getSignature(),
+            options.getIterationOrder());
+    long start = System.nanoTime();
+    this.state = summaries == null ? new ClassTable(policy, maxContextDepth, entryPoint) :
+            new ClassTable(policy, maxContextDepth, entryPoint, summaries);
+    metrics.recordPhase(AnalysisMetrics.TYPE_POOL, System.nanoTime() - start);
 
     Region entryRegion = entryPoint.isStatic() ? SpecialRegion.STATIC_REGION :
             SpecialRegion.ENTRYPOINT_REGION;
@@ -74,15 +127,81 @@ public final class InterProcAnalysis {
     return new EffectType(te.getType(), te.getExceptionalType(), solved);
   }
 
+  /**
+   * Returns the measurements of this analysis, e.g. the time of each phase.
+   */
+  public AnalysisMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Returns the entries that have been widened because they were still changing when the
+   * budget of the finitary analysis was exhausted, with the number of times each of them had
+   * been analysed until then. The types and effects of these entries are conservative.
+   */
+  public Map<MethodTable.Key, Integer> getWidenedEntries() {
+    return Collections.unmodifiableMap(widened);
+  }
+
+  /**
+   * Runs the analysis from the entry point.
+   * <p>
+   * If the finitary analysis does not converge within the budget, i.e. within
+   * {@code maximumIteration} iterations and the time budget of the options, then it gives up,
+   * unless the options allow for widening. In that case, the entries that are still changing
+   * are widened to a conservative approximation with all effects and the analysis goes on.
+   * The widened entries are available from {@link #getWidenedEntries()}.
+   *
+   * @param maximumIteration Upper bound on the number of rounds and on the number of
+   *                         iterations for each component, see {@link #doFinitaryAnalysis}.
+   * @return {@code true} if the analysis has converged.
+   */
   public boolean doAnalysis(int maximumIteration) {
+    if (options.getTimeBudget() != null) {
+      deadline = System.nanoTime() + options.getTimeBudget().toNanos();
+    }
+    Path snapshotFile = options.getSnapshotDirectory() == null ? null :
+            FixpointSnapshot.file(options.getSnapshotDirectory(), entryPointKey);
+    boolean resumed = snapshotFile != null && Files.exists(snapshotFile) && resume(snapshotFile);
+
+    long start = System.nanoTime();
     boolean converged = doFinitaryAnalysis(maximumIteration);
+    if (converged && resumed && !isLive()) {
+      // Entries that only changed code has reached would spoil the result.
+      logger.info("Snapshot contains entries that are no longer reachable, analysing afresh");
+      restart();
+      converged = doFinitaryAnalysis(maximumIteration);
+    }
+    metrics.recordPhase(AnalysisMetrics.FINITARY, System.nanoTime() - start);
     if (!converged) {
       return false;
     }
 
+    // The infinitary analysis may still join into the types of entries, so the summaries
+    // take the types that the callers have seen in the finitary analysis.
+    Map<MethodTable.Key, EffectType> shared =
+            summaries == null ? Collections.emptyMap() : collectSummaries();
+    ClassTable finitaryState = snapshotFile == null ? null : new ClassTable(state);
+
     doInfinitaryAnalysis();
 
+    if (summaries != null) {
+      storeSummaries(shared);
+    }
+    if (snapshotFile != null && !widened.isEmpty()) {
+      // The widened entries depend on the budget and must not be reused.
+      logger.info("Not saving snapshot " + snapshotFile + " with widened entries");
+    } else if (snapshotFile != null) {
+      try {
+        FixpointSnapshot.save(snapshotFile, policy, entryPointKey, finitaryState, dependencies,
+                infinitaryTerms);
+      } catch (IOException e) {
+        logger.warn("Cannot save snapshot " + snapshotFile + ": " + e.getMessage());
+      }
+    }
+
     // If the program may not adhere to the guideline, try to find a problematic path.
+    start = System.nanoTime();
     if (COUNTEREXAMPLE_REPORT) {
       if (!state.get(entryPointKey).getType().getAggregateFinitary().accepted()) {
         FinitaryEffectAnalysis fea = new FinitaryEffectAnalysis(finitaryResults.get(entryPointKey));
@@ -100,6 +219,10 @@ public final class InterProcAnalysis {
         problematicPath.clear();
       }
     }
+    metrics.recordPhase(AnalysisMetrics.COUNTEREXAMPLE, System.nanoTime() - start);
+    if (logger.isDebugEnabled()) {
+      logger.debug("Metrics: " + metrics.toJson());
+    }
 
     logger.info("======== Analysis result: \n");
     logger.info(analysisResult());
@@ -108,53 +231,502 @@ public final class InterProcAnalysis {
   }
 
 
+  /**
+   * Restores the tables and the valid analysis results from the snapshot of a previous
+   * analysis of the entry point. The entries affected by changed classes, and the entry
+   * point itself, are left to be analysed.
+   *
+   * @return {@code true} if the snapshot has been used.
+   */
+  private boolean resume(Path snapshotFile) {
+    FixpointSnapshot snapshot;
+    try {
+      snapshot = FixpointSnapshot.load(snapshotFile, policy, entryPointKey, state.getTypePool(),
+              summaries);
+    } catch (IOException e) {
+      logger.warn("Cannot load snapshot " + snapshotFile + ": " + e.getMessage());
+      return false;
+    }
+    if (snapshot == null) {
+      return false;
+    }
+
+    state.restore(snapshot.getMethods(), snapshot.getSummarised(), snapshot.getFields(),
+            snapshot.getArrays());
+    for (Map.Entry<MethodTable.Key, EffectTerm<Variable>> entry :
+            snapshot.getTerms().entrySet()) {
+      MethodTable.Key key = entry.getKey();
+      restored.put(key, entry.getValue());
+      for (Object read : snapshot.readsOf(key)) {
+        dependencies.addRead(key, read);
+      }
+      for (Object write : snapshot.writesOf(key)) {
+        dependencies.addWrite(key, write);
+      }
+    }
+    // Invalidated entries are added again when their callers are analysed, but the entries
+    // that are analysed again in order to contribute to other entries must exist already.
+    for (MethodTable.Key key : snapshot.getReanalyse()) {
+      state.ensurePresent(key);
+    }
+    logger.info("Resuming from snapshot " + snapshotFile + " with " + restored.size()
+            + " of " + state.getMethodTable().size() + " entries analysed");
+    return true;
+  }
+
+  /**
+   * Discards all entries, e.g. those restored from a snapshot, so that the analysis starts
+   * afresh.
+   */
+  private void restart() {
+    state.clear();
+    finitaryResults.clear();
+    changedReads.clear();
+    restored.clear();
+    analysisCounts.clear();
+    widened.clear();
+    dependencies.clearAll();
+    pending.clear();
+    state.ensurePresent(entryPointKey);
+  }
+
+  /**
+   * Checks whether all entries of the method table are reachable from the entry point, i.e.
+   * whether they would also have been added by an analysis from scratch. Reachable are the
+   * entries read by the analysis of a reachable entry, and the entries of overriding and of
+   * overridden methods of reachable entries.
+   */
+  private boolean isLive() {
+    Set<MethodTable.Key> reachable = new HashSet<>();
+    Deque<MethodTable.Key> todo = new ArrayDeque<>();
+    todo.add(entryPointKey);
+    while (!todo.isEmpty()) {
+      MethodTable.Key k = todo.pop();
+      if (!reachable.add(k)) {
+        continue;
+      }
+      todo.addAll(dependencies.calleesOf(k));
+      SootMethodRef m = k.getMethodRef();
+      if (m.getName().equals("<init>")) {
+        continue;
+      }
+      Set<SootClass> related = new HashSet<>(
+              SummaryCache.subclassesInPool(m.getDeclaringClass(), state.getTypePool()));
+      Deque<SootClass> supertypes = new ArrayDeque<>();
+      supertypes.add(m.getDeclaringClass());
+      while (!supertypes.isEmpty()) {
+        SootClass c = supertypes.pop();
+        if (related.add(c) || c == m.getDeclaringClass()) {
+          supertypes.addAll(c.getInterfaces());
+          if (c.hasSuperclass()) {
+            supertypes.add(c.getSuperclass());
+          }
+        }
+      }
+      for (SootClass d : related) {
+        SootMethodRef relatedRef = Scene.v().makeMethodRef(d, m.getName(),
+                m.getParameterTypes(), m.getReturnType(), m.isStatic());
+        MethodTable.Key relatedKey = k.withMethodRef(relatedRef);
+        if (state.getMethodTable().containsKey(relatedKey)) {
+          todo.add(relatedKey);
+        }
+      }
+    }
+    for (MethodTable.Key key : state.getMethodTable().keySet()) {
+      if (!reachable.contains(key)) {
+        logger.debug("Unreachable entry " + key);
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Computes the finitary types and effects of all entries in the method table.
+   * <p>
+   * An entry needs to be analysed if it is new or if it has read an entry of the method,
+   * field or array table that has changed since it was last analysed. The entries are
+   * scheduled bottom-up: in each round, the strongly connected components of the call graph
+   * between method table entries are solved to a local fixpoint in reverse topological order,
+   * so that callees are usually final before their callers are analysed. Entries that are
+   * discovered while analysing a caller are solved right away, before the caller is analysed
+   * again. Another round is needed only if an entry of an already solved component has
+   * changed, e.g. because of a field or a recursive call that was discovered late.
+   * <p>
+   * If the options allow for parallelism, then the components of one level of the call graph
+   * do not depend on each other and are solved together, analysing their pending entries
+   * concurrently.
+   *
+   * @param maximumIteration Upper bound on the number of rounds and on the number of
+   *                         iterations for each component.
+   * @return {@code true} if the analysis has converged.
+   */
   private boolean doFinitaryAnalysis(int maximumIteration) {
     // Main.mainLog.info("[InterProcAnalysis] initial mTable:\n" + mTable);
-    int iteration = 0;
-
-    while (true) {
-      ClassTable oldState = new ClassTable(state);
-
-      logger.trace("======== Iteration: " + iteration + "\n");
-      logger.trace("At the beginning of iteration, old tables: \n" + oldState);
-
-      // we go through each entry in the method table
-      for (MethodTable.Key key : oldState.getMethodTable().keySet()) {
-        Body body = state.getBody(key);
-        if (body == null) { // that is, the method has no body
-          // Methods without a body already have their effect correctly initialized in
-          // the {@code ClassTable} when their entry is added to the method table.
-          // The logic for this is in {@code ClassTable.getDefaultTypeAndEffect}.
-          // We may consider moving it here.
-          continue;
+    for (MethodTable.Key key : state.getMethodTable().keySet()) {
+      if (!restored.containsKey(key)) {
+        pending.add(key);
+      }
+    }
+    // The result for the entry point is needed for the report.
+    pending.add(entryPointKey);
+    state.pollChanges();
+
+    if (options.getParallelism() > 1) {
+      // The hierarchy is built lazily by Soot and must exist before it is shared.
+      Scene.v().getOrMakeFastHierarchy();
+      Scene.v().getActiveHierarchy();
+      pool = new ForkJoinPool(options.getParallelism());
+    }
+
+    try {
+      int iteration = 0;
+      while (!pending.isEmpty()) {
+        iteration = checkBudget(iteration, maximumIteration, new ArrayList<>(pending));
+        if (iteration < 0) {
+          return false;
         }
 
-        // Methods may be ruled out statically by the region
-        if (key.getRegion().impossible(key.getMethodRef())) {
+        metrics.startRound();
+        List<List<MethodTable.Key>> components = StronglyConnectedComponents.reverseTopological(
+                state.getMethodTable().keySet(), dependencies::calleesOf);
+
+        logger.trace("======== Iteration: " + iteration + "\n");
+        logger.trace("Entries to be analysed: " + pending.size() + " in " + components.size()
+                + " components\n");
+
+        if (pool == null) {
+          for (List<MethodTable.Key> component : components) {
+            if (!solveComponent(component, maximumIteration)) {
+              return false;
+            }
+          }
+        } else {
+          for (List<MethodTable.Key> level :
+                  StronglyConnectedComponents.levels(components, dependencies::calleesOf)) {
+            if (!solveConcurrently(level, maximumIteration)) {
+              return false;
+            }
+          }
+        }
+        metrics.endRound(state);
+      }
+      return true;
+    } finally {
+      metrics.endRound(state);
+      if (pool != null) {
+        pool.shutdown();
+        pool = null;
+      }
+    }
+  }
+
+  /**
+   * Analyses the pending entries of {@code component} one after the other until none of
+   * them is pending. Entries that are discovered on the way are solved in the same way right
+   * away, before the next entry of the component is analysed. The components that are being
+   * solved are kept on an explicit stack, so that long chains of discovered entries do not
+   * overflow the stack of the analysing thread.
+   *
+   * @return {@code false} if a component has not converged within
+   * {@code maximumIteration} iterations.
+   */
+  private boolean solveComponent(List<MethodTable.Key> component, int maximumIteration) {
+    Deque<Solving> stack = new ArrayDeque<>();
+    stack.push(new Solving(component));
+    while (!stack.isEmpty()) {
+      Solving solving = stack.peek();
+      if (!solving.todo.hasNext()) {
+        List<MethodTable.Key> todo = pendingAmong(solving.keys);
+        if (todo.isEmpty()) {
+          stack.pop();
           continue;
         }
+        solving.iteration = checkBudget(solving.iteration, maximumIteration, todo);
+        if (solving.iteration < 0) {
+          return false;
+        }
+        solving.todo = todo.iterator();
+        continue;
+      }
+
+      MethodTable.Key key = solving.todo.next();
+      if (!pending.remove(key)) {
+        continue;
+      }
+      record(analyseMethod(key));
+      List<MethodTable.Key> discovered = scheduleChanges();
+      // The first discovered entry is solved first
+      for (int i = discovered.size() - 1; i >= 0; i--) {
+        stack.push(new Solving(Collections.singletonList(discovered.get(i))));
+      }
+    }
+    return true;
+  }
 
-        logger.trace("==== Analyzing method entry: " + key + "\n");
+  /**
+   * Analyses the pending entries of {@code keys} concurrently until none of them is pending.
+   * Entries that are discovered on the way are solved in the same way before the next
+   * iteration, using an explicit stack as in {@link #solveComponent}.
+   *
+   * @return {@code false} if the entries have not converged within
+   * {@code maximumIteration} iterations.
+   */
+  private boolean solveConcurrently(List<MethodTable.Key> keys, int maximumIteration) {
+    Deque<Solving> stack = new ArrayDeque<>();
+    stack.push(new Solving(keys));
+    while (!stack.isEmpty()) {
+      Solving solving = stack.peek();
+      List<MethodTable.Key> todo = pendingAmong(solving.keys);
+      if (todo.isEmpty()) {
+        stack.pop();
+        continue;
+      }
+      solving.iteration = checkBudget(solving.iteration, maximumIteration, todo);
+      if (solving.iteration < 0) {
+        return false;
+      }
 
-        BriefUnitGraph unitGraph = new BriefUnitGraph(body);
-        FinitaryEffectAnalysis intra = new FinitaryEffectAnalysis(policy, state, key, unitGraph);
-        finitaryResults.put(key, intra);
+      pending.removeAll(todo);
+      for (MethodAnalysis analysis : analyseConcurrently(todo)) {
+        record(analysis);
+      }
+      List<MethodTable.Key> discovered = scheduleChanges();
+      if (!discovered.isEmpty()) {
+        stack.push(new Solving(discovered));
+      }
+    }
+    return true;
+  }
 
-        logger.trace("==== Analysis result:\n");
-        logger.trace(intra.annotatedMethod());
+  /**
+   * Entries that are solved together, with the number of iterations over them so far and the
+   * entries of the current iteration that remain to be analysed.
+   */
+  private static final class Solving {
+    private final List<MethodTable.Key> keys;
+    private int iteration;
+    private Iterator<MethodTable.Key> todo = Collections.emptyIterator();
 
+    Solving(List<MethodTable.Key> keys) {
+      this.keys = keys;
+    }
+  }
+
+  /**
+   * Checks the budget before iteration {@code iteration} over the pending entries
+   * {@code todo}. If the budget is exhausted and the options allow for it, the entries
+   * {@code todo} are widened, so that they can only change by new regions, and the count of
+   * iterations starts again. Once there are no more entries to widen, the analysis goes on
+   * regardless of the budget: widened entries and the entries of the field and array tables
+   * can only grow by new regions, of which there are finitely many, so it converges.
+   *
+   * @return The number of the next iteration or -1 if the analysis gives up, which it only
+   * does if the options do not allow for widening.
+   */
+  private int checkBudget(int iteration, int maximumIteration, List<MethodTable.Key> todo) {
+    boolean outOfTime = options.getTimeBudget() != null && System.nanoTime() - deadline > 0;
+    if (iteration <= maximumIteration && !outOfTime) {
+      return iteration + 1;
+    }
+    if (options.isWidening()) {
+      return widen(todo) ? 1 : iteration + 1;
+    }
+    logger.info("The finitary analysis has not converged "
+            + (outOfTime ? "within " + options.getTimeBudget() : "after " + iteration
+            + " iterations") + ", entries still changing:" + describeCounts(todo));
+    return -1;
+  }
+
+  /**
+   * Widens the entries {@code keys} and schedules their readers.
+   *
+   * @return {@code true} if an entry has been widened that had not been widened before.
+   */
+  private boolean widen(List<MethodTable.Key> keys) {
+    List<MethodTable.Key> newlyWidened = new ArrayList<>();
+    for (MethodTable.Key key : keys) {
+      if (state.widen(key)) {
+        widened.put(key, analysisCounts.getOrDefault(key, 0));
+        newlyWidened.add(key);
+      }
+    }
+    if (newlyWidened.isEmpty()) {
+      return false;
+    }
+    logger.info("Budget exhausted, widening entries that are still changing:"
+            + describeCounts(newlyWidened));
+    scheduleChanges();
+    return true;
+  }
+
+  private String describeCounts(List<MethodTable.Key> keys) {
+    StringBuilder buffer = new StringBuilder();
+    for (MethodTable.Key key : keys) {
+      buffer.append("\n  ").append(key).append(" (analysed ")
+              .append(analysisCounts.getOrDefault(key, 0)).append(" times)");
+    }
+    return buffer.toString();
+  }
+
+  private List<MethodTable.Key> pendingAmong(List<MethodTable.Key> keys) {
+    List<MethodTable.Key> result = new ArrayList<>();
+    for (MethodTable.Key key : keys) {
+      if (pending.contains(key)) {
+        result.add(key);
       }
+    }
+    return result;
+  }
 
-      if (state.equals(oldState)) {
-        return true;
+  /**
+   * Marks the readers of all changed table entries as pending.
+   *
+   * @return The new entries of the method table, which are also marked as pending.
+   */
+  private List<MethodTable.Key> scheduleChanges() {
+    List<MethodTable.Key> discovered = new ArrayList<>();
+    for (Object entry : state.pollChanges()) {
+      if (entry instanceof MethodTable.Key && !isAnalysed((MethodTable.Key) entry)
+              && pending.add((MethodTable.Key) entry)) {
+        discovered.add((MethodTable.Key) entry);
       }
-      if (iteration++ >= maximumIteration) {
-        return false;
+      for (MethodTable.Key reader : dependencies.readersOf(entry)) {
+        pending.add(reader);
+        changedReads.computeIfAbsent(reader, k -> new HashSet<>()).add(entry);
       }
     }
+    return discovered;
+  }
+
+  private boolean isAnalysed(MethodTable.Key key) {
+    return finitaryResults.containsKey(key) || restored.containsKey(key);
+  }
+
+  private List<MethodAnalysis> analyseConcurrently(List<MethodTable.Key> keys) {
+    if (keys.size() == 1) {
+      return Collections.singletonList(analyseMethod(keys.get(0)));
+    }
+
+    List<Callable<MethodAnalysis>> tasks = new ArrayList<>();
+    for (MethodTable.Key key : keys) {
+      tasks.add(() -> analyseMethod(key));
+    }
+    List<MethodAnalysis> results = new ArrayList<>();
+    for (Future<MethodAnalysis> future : pool.invokeAll(tasks)) {
+      try {
+        results.add(future.get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new RuntimeException(cause);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Runs the intraprocedural analysis for the method table entry {@code key} and collects
+   * the table entries that it reads. This method only reads the shared state of the analysis
+   * and may be called concurrently.
+   *
+   * @return The result of the analysis or {@code null} if the entry need not be analysed.
+   */
+  private MethodAnalysis analyseMethod(MethodTable.Key key) {
+    CompiledBody body = state.getCompiledBody(key);
+    if (body == null) { // that is, the method has no body
+      // Methods without a body already have their effect correctly initialized in
+      // the {@code ClassTable} when their entry is added to the method table.
+      // The logic for this is in {@code ClassTable.getDefaultTypeAndEffect}.
+      // We may consider moving it here.
+      return null;
+    }
+
+    // Methods may be ruled out statically by the region
+    if (key.getRegion().impossible(key.getMethodRef())) {
+      return null;
+    }
+
+    logger.trace("==== Analyzing method entry: " + key + "\n");
+
+    // Without a record of the changed entries, e.g. in a new round, the entry is analysed
+    // afresh.
+    FinitaryEffectAnalysis previous = null;
+    Set<Object> changed = changedReads.get(key);
+    if (changed != null) {
+      previous = finitaryResults.get(key);
+    }
+
+    Set<Object> writes = new HashSet<>();
+    if (previous != null) {
+      // The units that are not processed again write the same entries as before.
+      writes.addAll(dependencies.writesOf(key));
+    }
+    state.observeWrites(writes::add);
+    try {
+      long start = System.nanoTime();
+      FinitaryEffectAnalysis intra = new FinitaryEffectAnalysis(policy, state, key, body, options,
+              previous, changed);
+      return new MethodAnalysis(key, intra, intra.getReads(), writes, System.nanoTime() - start);
+    } finally {
+      state.observeWrites(null);
+    }
+  }
+
+  /**
+   * Stores the result of an intraprocedural analysis and the entries it has read.
+   */
+  private void record(MethodAnalysis analysis) {
+    if (analysis == null) {
+      return;
+    }
+    MethodTable.Key key = analysis.key;
+    finitaryResults.put(key, analysis.result);
+    changedReads.remove(key);
+    analysisCounts.merge(key, 1, Integer::sum);
+    metrics.methodAnalysed(key, analysis.nanos, analysis.result.getFlowComputations());
+    metrics.environmentsJoined(key, analysis.result.getJoinedUnits());
+    dependencies.clear(key);
+    for (Object entry : analysis.reads) {
+      dependencies.addRead(key, entry);
+    }
+    for (Object entry : analysis.writes) {
+      dependencies.addWrite(key, entry);
+    }
+
+    if (logger.isTraceEnabled()) {
+      logger.trace("==== Analysis result:\n");
+      logger.trace(analysis.result.annotatedMethod());
+    }
+  }
+
+  private static final class MethodAnalysis {
+    private final MethodTable.Key key;
+    private final FinitaryEffectAnalysis result;
+    private final Set<Object> reads;
+    private final Set<Object> writes;
+    private final long nanos;
+
+    MethodAnalysis(MethodTable.Key key, FinitaryEffectAnalysis result, Set<Object> reads,
+                   Set<Object> writes, long nanos) {
+      this.key = key;
+      this.result = result;
+      this.reads = reads;
+      this.writes = writes;
+      this.nanos = nanos;
+    }
   }
 
   private void doInfinitaryAnalysis() {
+    long start = System.nanoTime();
 
     for (MethodTable.Key key : state.getMethodTable().keySet()) {
 
@@ -169,13 +741,30 @@ public final class InterProcAnalysis {
         continue;
       }
 
-      BriefUnitGraph unitGraph = new BriefUnitGraph(state.getBody(key));
+      EffectTerm<Variable> term;
       FinitaryEffectAnalysis intra = finitaryResults.get(key);
-      InfinitaryEffectAnalysis ia =
-              new InfinitaryEffectAnalysis(policy.getAbstractDomain(), key, unitGraph, intra);
-      EffectType te = state.get(key);
-      EffectType te1 = new EffectType(te.getType(), te.getExceptionalType(), ia.getResult());
-      state.joinIfPresent(key, te1);
+      if (state.isWidened(key)) {
+        term = new EffectTerm<>(policy.getAbstractDomain().topInfinitary());
+      } else if (intra != null) {
+        InfinitaryEffectAnalysis ia = new InfinitaryEffectAnalysis(policy.getAbstractDomain(),
+                key, intra.getCompiledBody(), intra);
+        term = ia.getResult();
+      } else {
+        // The entry has been restored from a snapshot and has not changed since.
+        term = restored.get(key);
+        if (term == null) {
+          throw new IllegalStateException("entry has not been analysed: " + key);
+        }
+      }
+      infinitaryTerms.put(key, term);
+    }
+
+    // The terms are joined into the table only now, so that the joins do not invalidate the
+    // cached transfer functions of the methods analysed after them.
+    for (Map.Entry<MethodTable.Key, EffectTerm<Variable>> entry : infinitaryTerms.entrySet()) {
+      EffectType te = state.get(entry.getKey());
+      EffectType te1 = new EffectType(te.getType(), te.getExceptionalType(), entry.getValue());
+      state.joinIfPresent(entry.getKey(), te1);
     }
 
     for (MethodTable.Key key : state.getMethodTable().keySet()) {
@@ -185,13 +774,103 @@ public final class InterProcAnalysis {
 
     logger.trace("==== Infinitary equations:\n");
     logger.trace(infinitaryResults.toString());
+    metrics.recordPhase(AnalysisMetrics.INFINITARY_EQUATIONS, System.nanoTime() - start);
 
+    start = System.nanoTime();
     infinitaryResults.solve();
+    metrics.recordPhase(AnalysisMetrics.SOLVE, System.nanoTime() - start);
 
     logger.trace("==== Infinitary solution:\n");
     logger.trace(infinitaryResults.toString());
   }
 
+  /**
+   * Returns the entries of the finitary analysis that do not depend on the entry point.
+   * These are the entries of library and mock methods whose analysis, and the analysis of
+   * all entries that contributed to them, neither read nor write fields or arrays.
+   * Contributors are the callees and the entries of overriding methods, which are joined
+   * into the entries of the methods they override.
+   */
+  private Map<MethodTable.Key, EffectType> collectSummaries() {
+    Map<MethodTable.Key, EffectType> shared = new HashMap<>();
+    Set<MethodTable.Key> analysed = new HashSet<>(finitaryResults.keySet());
+    analysed.addAll(restored.keySet());
+    for (MethodTable.Key key : analysed) {
+      if (isIndependentOfEntryPoint(key, new HashSet<>())) {
+        shared.put(key, state.get(key));
+      }
+    }
+    return shared;
+  }
+
+  /**
+   * Adds the entries collected by {@link #collectSummaries()} to the summary cache, with
+   * their solved infinitary effects.
+   */
+  private void storeSummaries(Map<MethodTable.Key, EffectType> shared) {
+    for (Map.Entry<MethodTable.Key, EffectType> entry : shared.entrySet()) {
+      MethodTable.Key key = entry.getKey();
+      EffectType te = entry.getValue();
+      Set<SootClass> classes = new HashSet<>();
+      isIndependentOfEntryPoint(key, classes);
+      AbstractDomain.Infinitary solved =
+              infinitaryResults.get(new MethodVariable(key)).getRightHandSide().getConstantTerm();
+      summaries.put(key, new EffectType(te.getType(), te.getExceptionalType(), solved), classes,
+              state.getTypePool());
+    }
+  }
+
+  /**
+   * Checks whether the entry {@code key} and all its contributors are entries of library or
+   * mock methods that neither read nor write fields or arrays. Collects the declaring classes
+   * of all of them in {@code classes}.
+   */
+  private boolean isIndependentOfEntryPoint(MethodTable.Key key, Set<SootClass> classes) {
+    Set<MethodTable.Key> visited = new HashSet<>();
+    Deque<MethodTable.Key> todo = new ArrayDeque<>();
+    todo.add(key);
+    while (!todo.isEmpty()) {
+      MethodTable.Key k = todo.pop();
+      if (!visited.add(k)) {
+        continue;
+      }
+      SootMethodRef m = k.getMethodRef();
+      SootClass c = m.getDeclaringClass();
+      if (!summaries.isShared(c) || state.isWidened(k)) {
+        return false;
+      }
+      classes.add(c);
+      if (state.isSummarised(k)) {
+        // The contributors of a cached summary have been checked when it was stored.
+        classes.addAll(summaries.contributingClasses(k));
+        continue;
+      }
+      for (Object entry : dependencies.writesOf(k)) {
+        if (!(entry instanceof MethodTable.Key)) {
+          return false;
+        }
+      }
+      for (Object entry : dependencies.readsOf(k)) {
+        if (!(entry instanceof MethodTable.Key)) {
+          return false;
+        }
+        todo.add((MethodTable.Key) entry);
+      }
+      if (m.getName().equals("<init>")) {
+        continue;
+      }
+      for (SootClass d : SummaryCache.subclassesInPool(c, state.getTypePool())) {
+        SootMethodRef overriding = Scene.v().makeMethodRef(d, m.getName(),
+                m.getParameterTypes(), m.getReturnType(), m.isStatic());
+        MethodTable.Key overridingKey = k.withMethodRef(overriding);
+        if (state.getMethodTable().containsKey(overridingKey)) {
+          todo.add(overridingKey);
+        }
+      }
+    }
+    return true;
+  }
+
   String drawUnitGraph(UnitGraph unitGraph) {
     CFGToDotGraph drawer = new CFGToDotGraph();
     DotGraph canvas = CFGGraphType.ALT_COMPLETE_UNIT_GRAPH.drawGraph(drawer, unitGraph,
@@ -220,7 +899,7 @@ public final class InterProcAnalysis {
     }
 
     EffectType effectType = state.get(entryPointKey);
-    BriefUnitGraph unitGraph = new BriefUnitGraph(state.getBody(entryPointKey));
+    UnitGraph unitGraph = intra.getCompiledBody().getGraph();
 
     StringBuilder buffer = new StringBuilder();
 
@@ -283,6 +962,10 @@ public final class InterProcAnalysis {
     } else {
       buffer.append("* This mehtod may NOT follow the given guideline.\n");
     }
+    if (!widened.isEmpty()) {
+      buffer.append("* ").append(widened.size()).append(" method entries have been widened, ")
+              .append("as they had not converged within the budget.\n");
+    }
 
 
     // Types of all the related methods
@@ -308,6 +991,10 @@ public final class InterProcAnalysis {
       buffer.append("\n  nonterminating effect: ");
       buffer.append(infinitaryResults.get(new MethodVariable(methodEntry.getKey())).getRightHandSide());
       buffer.append("\n");
+      if (widened.containsKey(methodEntry.getKey())) {
+        buffer.append("  widened after ").append(widened.get(methodEntry.getKey()))
+                .append(" analyses\n");
+      }
       buffer.append("\n");
 
       // Print the typing contexts of the method if it has a body
@@ -319,7 +1006,7 @@ public final class InterProcAnalysis {
         String name = methodEntry.getKey().getMethodRef().resolve().getName();
         buffer.append("  Typing contexts in the body of " + name + "\n");
         buffer.append("  " + dashedLine(name.length() + 31));
-        BriefUnitGraph ug = new BriefUnitGraph(b);
+        UnitGraph ug = intra2.getCompiledBody().getGraph();
         for (Unit u : ug) {
           buffer.append("  ").append(u).append("\n");
           buffer.append("  // - context: ");
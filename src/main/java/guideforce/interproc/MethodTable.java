@@ -4,7 +4,7 @@ import guideforce.regions.Region;
 import soot.SootMethodRef;
 
 import javax.annotation.concurrent.Immutable;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -15,8 +15,10 @@ import java.util.Objects;
  * <p>
  * This class is meant purely for data representation.
  * It does not enforce any well-formedness invariants.
+ * The entries are kept in the order in which they were added, so that the order in which
+ * the analysis schedules them does not depend on hash codes.
  */
-public final class MethodTable extends HashMap<MethodTable.Key, EffectType> {
+public final class MethodTable extends LinkedHashMap<MethodTable.Key, EffectType> {
 
   MethodTable() {
     super();
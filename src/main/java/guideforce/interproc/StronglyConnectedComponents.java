@@ -0,0 +1,140 @@
+package guideforce.interproc;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Computes the strongly connected components of a directed graph with Tarjan's algorithm.
+ */
+final class StronglyConnectedComponents {
+
+  private StronglyConnectedComponents() {
+  }
+
+  /**
+   * Returns the strongly connected components of the graph with the given nodes in reverse
+   * topological order, i.e. each component comes after all components that are reachable
+   * from it. Successors that are not among {@code nodes} are ignored.
+   * <p>
+   * The search starts from the nodes in the order in which they appear in {@code nodes}, so
+   * that the result only depends on this order and not on hash codes. The nodes of each
+   * component are listed in the order in which they appear in {@code nodes}.
+   *
+   * @param nodes      nodes of the graph
+   * @param successors successor function of the graph
+   * @param <N>        type of nodes
+   * @return list of components, callees before callers for a call graph
+   */
+  static <N> List<List<N>> reverseTopological(Collection<N> nodes,
+                                              Function<N, ? extends Collection<N>> successors) {
+    Map<N, Integer> order = new HashMap<>();
+    for (N n : nodes) {
+      order.putIfAbsent(n, order.size());
+    }
+
+    Map<N, Integer> index = new HashMap<>();
+    Map<N, Integer> lowLink = new HashMap<>();
+    Set<N> onStack = new HashSet<>();
+    Deque<N> stack = new ArrayDeque<>();
+    List<List<N>> components = new ArrayList<>();
+
+    // Explicit call stack to avoid deep recursion on long call chains.
+    Deque<Frame<N>> calls = new ArrayDeque<>();
+    for (N root : nodes) {
+      if (index.containsKey(root)) {
+        continue;
+      }
+      calls.push(visit(root, index, lowLink, onStack, stack, successors));
+      while (!calls.isEmpty()) {
+        Frame<N> frame = calls.peek();
+        if (frame.successors.hasNext()) {
+          N w = frame.successors.next();
+          if (!order.containsKey(w)) {
+            continue;
+          }
+          if (!index.containsKey(w)) {
+            calls.push(visit(w, index, lowLink, onStack, stack, successors));
+          } else if (onStack.contains(w)) {
+            lowLink.put(frame.node, Math.min(lowLink.get(frame.node), index.get(w)));
+          }
+          continue;
+        }
+
+        calls.pop();
+        N v = frame.node;
+        if (!calls.isEmpty()) {
+          N u = calls.peek().node;
+          lowLink.put(u, Math.min(lowLink.get(u), lowLink.get(v)));
+        }
+        if (lowLink.get(v).equals(index.get(v))) {
+          List<N> component = new ArrayList<>();
+          N w;
+          do {
+            w = stack.pop();
+            onStack.remove(w);
+            component.add(w);
+          } while (!w.equals(v));
+          component.sort(Comparator.comparing(order::get));
+          components.add(component);
+        }
+      }
+    }
+    return components;
+  }
+
+  /**
+   * Groups components, given in reverse topological order, into levels. The components of
+   * level 0 have no successors outside of themselves, and the components of level i+1 only
+   * have successors in levels up to i. Hence the components of one level do not depend on
+   * each other.
+   *
+   * @param components components as returned by {@link #reverseTopological}
+   * @param successors successor function of the graph
+   * @param <N>        type of nodes
+   * @return list of levels, each given by the list of its nodes
+   */
+  static <N> List<List<N>> levels(List<List<N>> components,
+                                  Function<N, ? extends Collection<N>> successors) {
+    Map<N, Integer> componentLevel = new HashMap<>();
+    List<List<N>> levels = new ArrayList<>();
+    for (List<N> component : components) {
+      int level = 0;
+      for (N v : component) {
+        for (N w : successors.apply(v)) {
+          Integer l = componentLevel.get(w);
+          if (l != null) {
+            level = Math.max(level, l + 1);
+          }
+        }
+      }
+      for (N v : component) {
+        componentLevel.put(v, level);
+      }
+      while (levels.size() <= level) {
+        levels.add(new ArrayList<>());
+      }
+      levels.get(level).addAll(component);
+    }
+    return levels;
+  }
+
+  private static <N> Frame<N> visit(N v, Map<N, Integer> index, Map<N, Integer> lowLink,
+                                    Set<N> onStack, Deque<N> stack,
+                                    Function<N, ? extends Collection<N>> successors) {
+    index.put(v, index.size());
+    lowLink.put(v, index.get(v));
+    stack.push(v);
+    onStack.add(v);
+    return new Frame<>(v, new ArrayList<>(successors.apply(v)).iterator());
+  }
+
+  private static final class Frame<N> {
+    private final N node;
+    private final Iterator<N> successors;
+
+    Frame(N node, Iterator<N> successors) {
+      this.node = node;
+      this.successors = successors;
+    }
+  }
+}
@@ -0,0 +1,304 @@
+package guideforce.interproc;
+
+import guideforce.MockInfo;
+import guideforce.policy.Policy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import soot.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Resources that can be shared by the analyses of several entry points in the same scene.
+ * <p>
+ * Besides the bodies of methods and the information about mock classes, this cache keeps the
+ * final types and effects of method table entries whose analysis does not depend on the
+ * entry point, i.e. of library and mock methods that neither read nor write fields or arrays
+ * and only call such methods. A method table entry with a cached summary need not be analysed again.
+ * <p>
+ * The summary of an entry also depends on the subclasses that are in the type pool, because
+ * the entries of overriding methods are joined into it. A summary is therefore only used if the
+ * type pool of the new analysis contains the same subclasses for all classes whose methods
+ * contributed to it.
+ * <p>
+ * The summaries are specific to the policy of the cache. They can be saved to a binary file
+ * and loaded in a later run. A summary is stored together with a digest of the class files of
+ * all classes it refers to, and it is only loaded if these classes are unchanged. A file is
+ * only loaded if it has been written for an abstract domain with the same fingerprint.
+ */
+public final class SummaryCache {
+  private final Policy policy;
+  private final MockInfo typeMap;
+  private final CFGCache cfgCache;
+  private final Map<MethodTable.Key, Summary> summaries = new HashMap<>();
+
+  private static final int MAGIC = 0x47465343; // "GFSC"
+  private static final int FORMAT_VERSION = 1;
+
+  private final SummaryCodec.ClassFiles classFiles = new SummaryCodec.ClassFiles();
+
+  private final Logger logger = LoggerFactory.getLogger(SummaryCache.class);
+
+  /**
+   * Creates an empty cache for the current scene.
+   */
+  public SummaryCache(Policy policy) {
+    this(policy, new CFGCache(new MockInfo()));
+  }
+
+  /**
+   * Creates an empty cache for the current scene that takes the bodies and the information
+   * about mock classes from {@code cfgCache}, which other caches, e.g. for other policies,
+   * may share.
+   */
+  public SummaryCache(Policy policy, CFGCache cfgCache) {
+    this.policy = Objects.requireNonNull(policy);
+    this.cfgCache = Objects.requireNonNull(cfgCache);
+    this.typeMap = cfgCache.getTypeMap();
+  }
+
+  public Policy getPolicy() {
+    return policy;
+  }
+
+  MockInfo getTypeMap() {
+    return typeMap;
+  }
+
+  CFGCache getCfgCache() {
+    return cfgCache;
+  }
+
+  /**
+   * Number of cached summaries.
+   */
+  public int size() {
+    return summaries.size();
+  }
+
+  /**
+   * Returns the cached types and effects of {@code key}, if there are any that are valid
+   * for {@code typePool}.
+   *
+   * @return Types and effects with a solved infinitary effect or {@code null}.
+   */
+  EffectType lookup(MethodTable.Key key, TypePool typePool) {
+    Summary summary = summaries.get(key);
+    if (summary == null) {
+      return null;
+    }
+    for (Map.Entry<SootClass, Set<SootClass>> entry : summary.subclassesInPool.entrySet()) {
+      if (!subclassesInPool(entry.getKey(), typePool).equals(entry.getValue())) {
+        return null;
+      }
+    }
+    return summary.effectType;
+  }
+
+  /**
+   * Stores a summary for {@code key}.
+   *
+   * @param key        method table entry
+   * @param effectType final types and effects, with a solved infinitary effect
+   * @param classes    declaring classes of all entries that contributed to the summary
+   * @param typePool   type pool of the analysis that computed the summary
+   */
+  void put(MethodTable.Key key, EffectType effectType, Set<SootClass> classes,
+           TypePool typePool) {
+    Map<SootClass, Set<SootClass>> subclassesInPool = new HashMap<>();
+    for (SootClass c : classes) {
+      subclassesInPool.put(c, subclassesInPool(c, typePool));
+    }
+    summaries.put(key, new Summary(effectType, subclassesInPool));
+  }
+
+  /**
+   * Returns the declaring classes of all entries that contributed to the summary of
+   * {@code key}.
+   */
+  Set<SootClass> contributingClasses(MethodTable.Key key) {
+    Summary summary = summaries.get(key);
+    return summary == null ? Collections.emptySet() :
+            Collections.unmodifiableSet(summary.subclassesInPool.keySet());
+  }
+
+  /**
+   * Returns whether summaries of methods of class {@code c} may be shared between entry
+   * points, i.e. whether {@code c} is a library class or a mock class.
+   */
+  boolean isShared(SootClass c) {
+    return c.isLibraryClass() || c.getName().startsWith("mockup.")
+            || typeMap.isMockClass(c.getName());
+  }
+
+  /**
+   * Returns the proper subclasses of {@code c}, or the implementers and subinterfaces if
+   * {@code c} is an interface, that are in the type pool.
+   */
+  static Set<SootClass> subclassesInPool(SootClass c, TypePool typePool) {
+    Hierarchy h = Scene.v().getActiveHierarchy();
+    List<SootClass> all = new ArrayList<>();
+    if (c.isInterface()) {
+      all.addAll(h.getImplementersOf(c));
+      all.addAll(h.getSubinterfacesOf(c));
+    } else {
+      all.addAll(h.getSubclassesOf(c));
+    }
+    Set<SootClass> result = new HashSet<>();
+    for (SootClass d : all) {
+      if (typePool.contains(d.getType())) {
+        result.add(d);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Writes all summaries to {@code file}. Summaries that refer to classes without a class
+   * file are skipped.
+   *
+   * @return The number of summaries written.
+   */
+  public int save(Path file) throws IOException {
+    SummaryCodec.StringTable strings = new SummaryCodec.StringTable();
+    List<byte[]> blocks = new ArrayList<>();
+    for (Map.Entry<MethodTable.Key, Summary> entry : summaries.entrySet()) {
+      try {
+        blocks.add(encode(entry.getKey(), entry.getValue(), strings));
+      } catch (IOException e) {
+        logger.debug("Not saving summary of " + entry.getKey() + ": " + e.getMessage());
+      }
+    }
+
+    try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(file)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeLong(SummaryCodec.domainFingerprint(policy));
+      strings.write(out);
+      out.writeInt(blocks.size());
+      for (byte[] block : blocks) {
+        out.writeInt(block.length);
+        out.write(block);
+      }
+    }
+    return blocks.size();
+  }
+
+  private byte[] encode(MethodTable.Key key, Summary summary, SummaryCodec.StringTable strings)
+          throws IOException {
+    SummaryCodec.Encoder encoder = new SummaryCodec.Encoder(strings);
+    encoder.writeKey(key);
+    encoder.writeEffectType(summary.effectType);
+    encoder.writeInt(summary.subclassesInPool.size());
+    for (Map.Entry<SootClass, Set<SootClass>> entry : summary.subclassesInPool.entrySet()) {
+      encoder.writeClass(entry.getKey());
+      encoder.writeInt(entry.getValue().size());
+      for (SootClass d : entry.getValue()) {
+        encoder.writeClass(d);
+      }
+    }
+
+    // The digests are written last, so that they cover all classes the summary refers to.
+    Set<SootClass> classes = new HashSet<>(encoder.getClasses());
+    encoder.writeInt(classes.size());
+    for (SootClass c : classes) {
+      Long digest = classDigest(c.getName());
+      if (digest == null) {
+        throw new IOException("no class file for " + c.getName());
+      }
+      encoder.writeString(c.getName());
+      encoder.writeLong(digest);
+    }
+    return encoder.toByteArray();
+  }
+
+  /**
+   * Adds the summaries from {@code file} that are valid in the current scene, i.e. whose
+   * classes and methods exist and whose class files are unchanged. Nothing is loaded if the
+   * file has been written for a different abstract domain.
+   *
+   * @return The number of summaries loaded.
+   */
+  public int load(Path file) throws IOException {
+    try (DataInputStream in = new DataInputStream(
+            new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+        throw new IOException("not a summary file: " + file);
+      }
+      if (in.readLong() != SummaryCodec.domainFingerprint(policy)) {
+        logger.info("Ignoring summaries in " + file + " computed for a different domain");
+        return 0;
+      }
+      SummaryCodec.StringTable strings = SummaryCodec.StringTable.read(in);
+      Map<SootMethod, List<Unit>> units = new HashMap<>();
+      int loaded = 0;
+      int n = in.readInt();
+      for (int i = 0; i < n; i++) {
+        byte[] block = new byte[in.readInt()];
+        in.readFully(block);
+        try {
+          SummaryCodec.Decoder decoder = new SummaryCodec.Decoder(block, strings, policy, units);
+          if (decode(decoder)) {
+            loaded++;
+          }
+        } catch (SummaryCodec.UnresolvedException e) {
+          logger.debug("Not loading summary: cannot resolve " + e.getMessage());
+        }
+      }
+      return loaded;
+    }
+  }
+
+  private boolean decode(SummaryCodec.Decoder decoder) throws IOException {
+    MethodTable.Key key = decoder.readKey();
+    EffectType effectType = decoder.readEffectType();
+    Map<SootClass, Set<SootClass>> subclassesInPool = new HashMap<>();
+    int n = decoder.readInt();
+    for (int i = 0; i < n; i++) {
+      SootClass c = decoder.readClass();
+      Set<SootClass> subclasses = new HashSet<>();
+      int m = decoder.readInt();
+      for (int j = 0; j < m; j++) {
+        subclasses.add(decoder.readClass());
+      }
+      subclassesInPool.put(c, subclasses);
+    }
+    int k = decoder.readInt();
+    for (int i = 0; i < k; i++) {
+      String className = decoder.readString();
+      long digest = decoder.readLong();
+      if (!Objects.equals(classDigest(className), digest)) {
+        return false;
+      }
+    }
+    summaries.put(key, new Summary(effectType, subclassesInPool));
+    return true;
+  }
+
+  /**
+   * Returns a digest of the class file of the named class on the Soot classpath, or
+   * {@code null} if there is none.
+   */
+  private Long classDigest(String className) {
+    try {
+      return classFiles.digest(className);
+    } catch (IOException e) {
+      logger.warn("Cannot read class file of " + className + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  private static final class Summary {
+    private final EffectType effectType;
+    private final Map<SootClass, Set<SootClass>> subclassesInPool;
+
+    Summary(EffectType effectType, Map<SootClass, Set<SootClass>> subclassesInPool) {
+      this.effectType = effectType;
+      this.subclassesInPool = subclassesInPool;
+    }
+  }
+}
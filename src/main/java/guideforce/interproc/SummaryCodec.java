@@ -0,0 +1,611 @@
+package guideforce.interproc;
+
+import guideforce.intraproc.EffectTerm;
+import guideforce.intraproc.MethodVariable;
+import guideforce.intraproc.Variable;
+import guideforce.policy.AbstractDomain;
+import guideforce.policy.AbstractDomain.Finitary;
+import guideforce.policy.AbstractDomain.Infinitary;
+import guideforce.policy.Policy;
+import guideforce.regions.*;
+import guideforce.types.Monad;
+import guideforce.types.Regions;
+import soot.*;
+import soot.jimple.Stmt;
+
+import java.io.*;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Binary encoding of table keys and entries, as used by the summary file of
+ * {@link SummaryCache} and by {@link FixpointSnapshot}.
+ * <p>
+ * Soot objects are encoded by name: classes by their name, methods by their signature and
+ * statements by their index in the body of their method. Strings are encoded as indices into a
+ * {@link StringTable} that is shared by all values in a file.
+ */
+final class SummaryCodec {
+
+  private static final int SPECIAL_REGION = 0;
+  private static final int ALLOCATION_SITE_REGION = 1;
+  private static final int MONOID_REGION = 2;
+  private static final int INPUT_REGION = 3;
+  private static final int EXCEPTION_REGION = 4;
+
+  private SummaryCodec() {
+  }
+
+  /**
+   * Signals that an encoded value cannot be resolved in the current scene, e.g. because
+   * a class or method no longer exists.
+   */
+  static final class UnresolvedException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    UnresolvedException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * Computes a fingerprint of the abstract domain of a policy. Summaries can only be exchanged
+   * between analyses whose domains have the same fingerprint.
+   */
+  static long domainFingerprint(Policy policy) {
+    AbstractDomain domain = policy.getAbstractDomain();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeUTF(policy.getClass().getName());
+      List<Integer> elements = new ArrayList<>(domain.getAllMonoidElements());
+      Collections.sort(elements);
+      out.writeInt(domain.neutral());
+      for (int x : elements) {
+        out.writeInt(x);
+        out.writeUTF(domain.monoidElementToString(x));
+        for (int y : elements) {
+          out.writeInt(domain.multiply(x, y));
+        }
+      }
+      for (int x : domain.getAcceptedFinitary().elements()) {
+        out.writeInt(x);
+      }
+      for (int[] tuple : domain.getAcceptedInfinitary().tuples()) {
+        out.writeInt(tuple[0]);
+        out.writeInt(tuple[1]);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return digest(bytes.toByteArray());
+  }
+
+  /**
+   * Computes a fingerprint of the classes in a type pool.
+   */
+  static long typePoolFingerprint(TypePool typePool) {
+    List<String> names = new ArrayList<>();
+    for (RefType t : typePool.getTypes()) {
+      names.add(t.getClassName());
+    }
+    Collections.sort(names);
+    return digest(String.join("\n", names).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Returns the first eight bytes of the SHA-256 digest of {@code data}.
+   */
+  static long digest(byte[] data) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(data);
+      long result = 0;
+      for (int i = 0; i < 8; i++) {
+        result = (result << 8) | (hash[i] & 0xff);
+      }
+      return result;
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Digests of the class files on the Soot classpath, computed on demand.
+   */
+  static final class ClassFiles {
+    // Classes without a class file are mapped to null.
+    private final Map<String, Long> digests = new HashMap<>();
+    private ClassLoader loader;
+
+    /**
+     * Returns a digest of the class file of the named class, or {@code null} if there is
+     * none.
+     */
+    Long digest(String className) throws IOException {
+      if (digests.containsKey(className)) {
+        return digests.get(className);
+      }
+      if (loader == null) {
+        List<URL> urls = new ArrayList<>();
+        for (String path : Scene.v().getSootClassPath().split(File.pathSeparator)) {
+          try {
+            urls.add(new File(path).toURI().toURL());
+          } catch (MalformedURLException e) {
+            // do nothing
+          }
+        }
+        // null parent in order to see only the classes on the Soot classpath
+        loader = new URLClassLoader(urls.toArray(new URL[0]), null);
+      }
+      Long digest = null;
+      try (InputStream in = loader.getResourceAsStream(className.replace('.', '/') + ".class")) {
+        if (in != null) {
+          ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+          byte[] buffer = new byte[8192];
+          int n;
+          while ((n = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, n);
+          }
+          digest = SummaryCodec.digest(bytes.toByteArray());
+        }
+      }
+      digests.put(className, digest);
+      return digest;
+    }
+  }
+
+  /**
+   * Strings of a file, each stored once.
+   */
+  static final class StringTable {
+    private final Map<String, Integer> indices = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    int indexOf(String s) {
+      Integer index = indices.get(s);
+      if (index == null) {
+        index = strings.size();
+        strings.add(s);
+        indices.put(s, index);
+      }
+      return index;
+    }
+
+    String get(int index) throws IOException {
+      if (index < 0 || index >= strings.size()) {
+        throw new IOException("invalid string index " + index);
+      }
+      return strings.get(index);
+    }
+
+    void write(DataOutput out) throws IOException {
+      out.writeInt(strings.size());
+      for (String s : strings) {
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+      }
+    }
+
+    static StringTable read(DataInput in) throws IOException {
+      StringTable table = new StringTable();
+      int n = in.readInt();
+      for (int i = 0; i < n; i++) {
+        byte[] utf8 = new byte[in.readInt()];
+        in.readFully(utf8);
+        table.indexOf(new String(utf8, StandardCharsets.UTF_8));
+      }
+      return table;
+    }
+  }
+
+  /**
+   * Encodes values into a byte array. The encoder records all classes that the encoded
+   * values refer to.
+   */
+  static final class Encoder {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private final StringTable strings;
+    private final Set<SootClass> classes = new HashSet<>();
+
+    Encoder(StringTable strings) {
+      this.strings = strings;
+    }
+
+    byte[] toByteArray() {
+      return bytes.toByteArray();
+    }
+
+    /**
+     * Classes whose names have been written or whose methods are referred to.
+     */
+    Set<SootClass> getClasses() {
+      return classes;
+    }
+
+    void writeInt(int x) throws IOException {
+      out.writeInt(x);
+    }
+
+    void writeLong(long x) throws IOException {
+      out.writeLong(x);
+    }
+
+    void writeString(String s) throws IOException {
+      out.writeInt(strings.indexOf(s));
+    }
+
+    void writeClass(SootClass c) throws IOException {
+      classes.add(c);
+      writeString(c.getName());
+    }
+
+    void writeKey(MethodTable.Key key) throws IOException {
+      writeMethodRef(key.getMethodRef());
+      writeCallingContext(key.getCallingContext());
+      writeRegion(key.getRegion());
+      writeInt(key.getArgumentTypes().size());
+      for (Region r : key.getArgumentTypes()) {
+        writeRegion(r);
+      }
+    }
+
+    /**
+     * Writes types-and-effects whose infinitary effect must already be solved.
+     */
+    void writeEffectType(EffectType te) throws IOException {
+      EffectTerm<Variable> infinitary = te.getInfinitary();
+      if (!infinitary.getCoefficients().isEmpty()) {
+        throw new IOException("infinitary effect is not solved: " + infinitary);
+      }
+      writeMonad(te.getType());
+      writeMonad(te.getExceptionalType());
+      writeInfinitary(infinitary.getConstantTerm());
+    }
+
+    void writeField(SootField f) throws IOException {
+      writeClass(f.getDeclaringClass());
+      writeString(f.getName());
+      writeString(f.getType().toString());
+    }
+
+    void writeRegions(Regions regions) throws IOException {
+      writeInt(regions.toSet().size());
+      for (Region r : regions.toSet()) {
+        writeRegion(r);
+      }
+    }
+
+    /**
+     * Writes an effect term whose variables are method variables.
+     */
+    void writeEffectTerm(EffectTerm<Variable> term) throws IOException {
+      writeInt(term.getCoefficients().size());
+      for (Map.Entry<Variable, Finitary> entry : term.getCoefficients().entrySet()) {
+        if (!(entry.getKey() instanceof MethodVariable)) {
+          throw new IOException("cannot encode variable " + entry.getKey());
+        }
+        writeKey(((MethodVariable) entry.getKey()).getKey());
+        writeFinitary(entry.getValue());
+      }
+      writeInfinitary(term.getConstantTerm());
+    }
+
+    private void writeMethodRef(SootMethodRef m) throws IOException {
+      writeClass(m.getDeclaringClass());
+      writeString(m.getName());
+      writeInt(m.getParameterTypes().size());
+      for (Type t : m.getParameterTypes()) {
+        writeString(t.toString());
+      }
+      writeString(m.getReturnType().toString());
+      out.writeBoolean(m.isStatic());
+    }
+
+    private void writeCallingContext(CallingContext ctx) throws IOException {
+      writeInt(ctx.getMaxDepth());
+      writeInt(ctx.getCallString().size());
+      for (Location location : ctx.getCallString()) {
+        writeLocation(location);
+      }
+    }
+
+    private void writeLocation(Location location) throws IOException {
+      SootMethod method = location.getMethod();
+      classes.add(method.getDeclaringClass());
+      writeString(method.getSignature());
+      int index = 0;
+      for (Unit u : method.getActiveBody().getUnits()) {
+        if (u == location.getStmt()) {
+          writeInt(index);
+          return;
+        }
+        index++;
+      }
+      throw new IOException("statement not in body of " + method);
+    }
+
+    void writeRegion(Region r) throws IOException {
+      if (r instanceof SpecialRegion) {
+        writeInt(SPECIAL_REGION);
+        writeInt(((SpecialRegion) r).ordinal());
+      } else if (r instanceof AllocationSiteRegion) {
+        AllocationSiteRegion a = (AllocationSiteRegion) r;
+        writeInt(ALLOCATION_SITE_REGION);
+        writeOptionalClass(a.getSootClass());
+        writeCallingContext(a.getCallingContext());
+        writeLocation(a.getLocation());
+      } else if (r instanceof MonoidRegion) {
+        writeInt(MONOID_REGION);
+        writeInt(((MonoidRegion) r).getValue());
+      } else if (r instanceof InputRegion) {
+        writeInt(INPUT_REGION);
+        writeInt(((InputRegion) r).getId());
+      } else if (r instanceof ExceptionRegion) {
+        writeInt(EXCEPTION_REGION);
+        writeOptionalClass(((ExceptionRegion) r).getSootClass());
+      } else {
+        throw new IOException("cannot encode region " + r);
+      }
+    }
+
+    private void writeOptionalClass(SootClass c) throws IOException {
+      out.writeBoolean(c != null);
+      if (c != null) {
+        writeClass(c);
+      }
+    }
+
+    private void writeMonad(Monad<Region> m) throws IOException {
+      writeInt(m.support().size());
+      for (Region r : m.support()) {
+        writeRegion(r);
+        writeFinitary(m.get(r));
+      }
+    }
+
+    private void writeFinitary(Finitary f) throws IOException {
+      int[] elements = f.elements();
+      writeInt(elements.length);
+      for (int x : elements) {
+        writeInt(x);
+      }
+    }
+
+    private void writeInfinitary(Infinitary i) throws IOException {
+      int[][] tuples = i.tuples();
+      writeInt(tuples.length);
+      for (int[] tuple : tuples) {
+        writeInt(tuple[0]);
+        writeInt(tuple[1]);
+      }
+    }
+  }
+
+  /**
+   * Decodes values written by an {@link Encoder} and resolves them in the current scene.
+   */
+  static final class Decoder {
+    private final DataInputStream in;
+    private final StringTable strings;
+    private final AbstractDomain domain;
+    private final Map<SootMethod, List<Unit>> units;
+    private final Set<String> changedClasses;
+
+    /**
+     * @param units cache for the statements of bodies, which may be shared by several decoders
+     */
+    Decoder(byte[] data, StringTable strings, Policy policy, Map<SootMethod, List<Unit>> units) {
+      this(data, strings, policy, units, Collections.emptySet());
+    }
+
+    /**
+     * Creates a decoder that does not resolve values referring to the given classes, e.g.
+     * because their code has changed since the values were encoded.
+     *
+     * @param changedClasses names of classes whose values must not be resolved
+     */
+    Decoder(byte[] data, StringTable strings, Policy policy, Map<SootMethod, List<Unit>> units,
+            Set<String> changedClasses) {
+      this.in = new DataInputStream(new ByteArrayInputStream(data));
+      this.strings = strings;
+      this.domain = policy.getAbstractDomain();
+      this.units = units;
+      this.changedClasses = changedClasses;
+    }
+
+    int readInt() throws IOException {
+      return in.readInt();
+    }
+
+    long readLong() throws IOException {
+      return in.readLong();
+    }
+
+    String readString() throws IOException {
+      return strings.get(in.readInt());
+    }
+
+    SootClass readClass() throws IOException {
+      String name = readString();
+      if (changedClasses.contains(name)) {
+        throw new UnresolvedException("changed class " + name);
+      }
+      SootClass c = Scene.v().getSootClassUnsafe(name, false);
+      if (c == null || c.isPhantom()) {
+        throw new UnresolvedException("class " + name);
+      }
+      return c;
+    }
+
+    SootField readField() throws IOException {
+      SootClass c = readClass();
+      String name = readString();
+      Type type = readType();
+      SootField f = c.getFieldUnsafe(name, type);
+      if (f == null) {
+        throw new UnresolvedException("field " + name + " of " + c);
+      }
+      return f;
+    }
+
+    Regions readRegions() throws IOException {
+      int n = readInt();
+      Set<Region> regions = new HashSet<>();
+      for (int i = 0; i < n; i++) {
+        regions.add(readRegion());
+      }
+      return Regions.fromSet(regions);
+    }
+
+    EffectTerm<Variable> readEffectTerm() throws IOException {
+      EffectTerm<Variable> term = new EffectTerm<>(domain);
+      int n = readInt();
+      for (int i = 0; i < n; i++) {
+        MethodTable.Key key = readKey();
+        term.addMonomial(new MethodVariable(key), readFinitary());
+      }
+      term.addConstant(readInfinitary());
+      return term;
+    }
+
+    MethodTable.Key readKey() throws IOException {
+      SootMethodRef method = readMethodRef();
+      CallingContext ctx = readCallingContext();
+      Region region = readRegion();
+      int n = readInt();
+      List<Region> argumentTypes = new LinkedList<>();
+      for (int i = 0; i < n; i++) {
+        argumentTypes.add(readRegion());
+      }
+      return new MethodTable.Key(method, ctx, region, argumentTypes);
+    }
+
+    EffectType readEffectType() throws IOException {
+      Monad<Region> type = readMonad();
+      Monad<Region> exceptionalType = readMonad();
+      Infinitary infinitary = readInfinitary();
+      return new EffectType(type, exceptionalType, infinitary);
+    }
+
+    private SootMethodRef readMethodRef() throws IOException {
+      SootClass c = readClass();
+      String name = readString();
+      int n = readInt();
+      List<Type> parameterTypes = new ArrayList<>();
+      for (int i = 0; i < n; i++) {
+        parameterTypes.add(readType());
+      }
+      Type returnType = readType();
+      boolean isStatic = in.readBoolean();
+      return Scene.v().makeMethodRef(c, name, parameterTypes, returnType, isStatic);
+    }
+
+    private Type readType() throws IOException {
+      String name = readString();
+      Type t = Scene.v().getTypeUnsafe(name, false);
+      if (t == null) {
+        throw new UnresolvedException("type " + name);
+      }
+      return t;
+    }
+
+    private CallingContext readCallingContext() throws IOException {
+      int k = readInt();
+      int n = readInt();
+      List<Location> callString = new ArrayList<>();
+      for (int i = 0; i < n; i++) {
+        callString.add(readLocation());
+      }
+      return new CallingContext(k, callString);
+    }
+
+    private Location readLocation() throws IOException {
+      String signature = readString();
+      int index = readInt();
+      SootMethod method = Scene.v().grabMethod(signature);
+      if (method == null || !method.isConcrete()) {
+        throw new UnresolvedException("method " + signature);
+      }
+      if (changedClasses.contains(method.getDeclaringClass().getName())) {
+        throw new UnresolvedException("changed class " + method.getDeclaringClass());
+      }
+      List<Unit> body = units.get(method);
+      if (body == null) {
+        try {
+          body = new ArrayList<>(method.retrieveActiveBody().getUnits());
+        } catch (RuntimeException e) {
+          throw new UnresolvedException("body of " + signature);
+        }
+        units.put(method, body);
+      }
+      if (index < 0 || index >= body.size()) {
+        throw new UnresolvedException("statement " + index + " in " + signature);
+      }
+      return new Location(method, (Stmt) body.get(index));
+    }
+
+    Region readRegion() throws IOException {
+      int tag = readInt();
+      switch (tag) {
+        case SPECIAL_REGION: {
+          int ordinal = readInt();
+          SpecialRegion[] values = SpecialRegion.values();
+          if (ordinal < 0 || ordinal >= values.length) {
+            throw new IOException("invalid special region " + ordinal);
+          }
+          return values[ordinal];
+        }
+        case ALLOCATION_SITE_REGION: {
+          SootClass c = readOptionalClass();
+          CallingContext ctx = readCallingContext();
+          Location location = readLocation();
+          return new AllocationSiteRegion(c, ctx, location);
+        }
+        case MONOID_REGION:
+          return new MonoidRegion(domain, readInt());
+        case INPUT_REGION:
+          return new InputRegion(readInt());
+        case EXCEPTION_REGION:
+          return new ExceptionRegion(readOptionalClass());
+        default:
+          throw new IOException("invalid region tag " + tag);
+      }
+    }
+
+    private SootClass readOptionalClass() throws IOException {
+      return in.readBoolean() ? readClass() : null;
+    }
+
+    private Monad<Region> readMonad() throws IOException {
+      int n = readInt();
+      Map<Region, Finitary> choices = new HashMap<>();
+      for (int i = 0; i < n; i++) {
+        Region r = readRegion();
+        choices.put(r, readFinitary());
+      }
+      return new Monad<>(domain, choices);
+    }
+
+    private Finitary readFinitary() throws IOException {
+      int[] elements = new int[readInt()];
+      for (int i = 0; i < elements.length; i++) {
+        elements[i] = readInt();
+      }
+      return domain.makeFinitary(elements);
+    }
+
+    private Infinitary readInfinitary() throws IOException {
+      int[][] tuples = new int[readInt()][];
+      for (int i = 0; i < tuples.length; i++) {
+        tuples[i] = new int[]{readInt(), readInt()};
+      }
+      return domain.makeInfinitary(tuples);
+    }
+  }
+}
@@ -3,7 +3,6 @@ package guideforce.interproc;
 import soot.*;
 import soot.jimple.*;
 import soot.toolkits.graph.BriefUnitGraph;
-import soot.toolkits.graph.ExceptionalUnitGraph;
 import soot.toolkits.graph.UnitGraph;
 import guideforce.MockInfo;
 
@@ -52,6 +51,13 @@ public final class TypePool {
     return pool.contains(atomic);
   }
 
+  /**
+   * Returns all types in the pool.
+   */
+  Set<RefType> getTypes() {
+    return Collections.unmodifiableSet(pool);
+  }
+
   private void initialize(CFGCache cfgCache, SootMethodRef topMethodRef) {
     int oldSize;
     do {
@@ -139,8 +145,7 @@ public final class TypePool {
       Body body = cfgCache.getOrCreate(methodRef);
       if (body != null) { // (method has a body)
         SootMethod m = body.getMethod();
-        ExceptionalUnitGraph unitGraph = new ExceptionalUnitGraph(body);
-        for (Unit u : unitGraph) {
+        for (Unit u : body.getUnits()) {
           assert (u instanceof Stmt);
           u.apply(new StmtVisitor(m, ctx, todo::addFirst));
         }
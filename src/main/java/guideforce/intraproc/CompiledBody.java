@@ -0,0 +1,247 @@
+package guideforce.intraproc;
+
+import soot.Body;
+import soot.Local;
+import soot.Trap;
+import soot.Unit;
+import soot.ValueBox;
+import soot.toolkits.graph.BriefUnitGraph;
+import soot.toolkits.graph.UnitGraph;
+
+import java.util.*;
+
+/**
+ * Control flow information of a method body that is computed once and shared by all analyses
+ * of the body: the unit graph, the pseudo-topological order of the units in which the
+ * finitary analysis iterates, the position of each unit in this order, the exception
+ * handlers that may catch the exceptions thrown by each unit and the locals that are live
+ * before each unit.
+ * <p>
+ * The units may also be ordered by another {@link IterationOrder}, which is computed when it
+ * is first needed. Instances may be used by several threads.
+ */
+public final class CompiledBody {
+  private final UnitGraph graph;
+  private final List<Unit> order;
+  private final Map<Unit, Integer> index;
+  private final List<List<ExceptionHandler>> handlers;
+  private final List<Set<Local>> liveLocals;
+  // Orders of the units other than the pseudo-topological one, with the positions of the units
+  private final Map<IterationOrder, List<Unit>> otherOrders = new EnumMap<>(IterationOrder.class);
+  private final Map<IterationOrder, Map<Unit, Integer>> otherIndices =
+          new EnumMap<>(IterationOrder.class);
+
+  public CompiledBody(Body body) {
+    this(new BriefUnitGraph(body));
+  }
+
+  public CompiledBody(UnitGraph graph) {
+    this.graph = graph;
+    this.order = Collections.unmodifiableList(
+            IterationOrder.PSEUDO_TOPOLOGICAL.<Unit>orderer().newList(graph, false));
+    this.index = positions(order);
+
+    int n = order.size();
+
+    // The handlers of each unit in the order of the body, as by TrapManager.getTrapsAt
+    List<List<ExceptionHandler>> handlers = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      handlers.add(new ArrayList<>(1));
+    }
+    Body body = graph.getBody();
+    for (Trap trap : body.getTraps()) {
+      ExceptionHandler handler = new ExceptionHandler(trap, graph);
+      Iterator<Unit> it = body.getUnits().iterator(trap.getBeginUnit(),
+              body.getUnits().getPredOf(trap.getEndUnit()));
+      while (it.hasNext()) {
+        Integer i = index.get(it.next());
+        if (i != null) {
+          handlers.get(i).add(handler);
+        }
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      List<ExceptionHandler> hs = handlers.get(i);
+      handlers.set(i, hs.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(hs));
+    }
+    this.handlers = handlers;
+    this.liveLocals = liveLocals();
+  }
+
+  /**
+   * Computes the locals that are live before each unit, i.e. that may be read on some path
+   * from the unit before they are written. An exception thrown by a unit goes to the
+   * successors of the handler unit with the environment before the unit, in which the local
+   * of the handler is set, just as in the analyses.
+   */
+  private List<Set<Local>> liveLocals() {
+    Body body = graph.getBody();
+    Map<Local, Integer> numbers = new IdentityHashMap<>();
+    List<Local> locals = new ArrayList<>(body.getLocals());
+    for (int k = 0; k < locals.size(); k++) {
+      numbers.put(locals.get(k), k);
+    }
+
+    int n = order.size();
+    BitSet[] uses = new BitSet[n];
+    BitSet[] defs = new BitSet[n];
+    BitSet[] live = new BitSet[n];
+    for (int i = 0; i < n; i++) {
+      Unit u = order.get(i);
+      uses[i] = localsOf(u.getUseBoxes(), numbers);
+      defs[i] = localsOf(u.getDefBoxes(), numbers);
+      live[i] = (BitSet) uses[i].clone();
+    }
+
+    // Iterate backwards until no live set grows
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int i = n - 1; i >= 0; i--) {
+        Unit u = order.get(i);
+        BitSet out = new BitSet();
+        for (Unit s : graph.getSuccsOf(u)) {
+          out.or(live[index.get(s)]);
+        }
+        out.andNot(defs[i]);
+        for (ExceptionHandler handler : handlers.get(i)) {
+          for (Unit v : handler.getSuccessors()) {
+            BitSet caught = (BitSet) live[index.get(v)].clone();
+            Integer l = numbers.get(handler.getLocal());
+            if (l != null) {
+              caught.clear(l);
+            }
+            out.or(caught);
+          }
+        }
+        out.or(uses[i]);
+        if (!out.equals(live[i])) {
+          live[i] = out;
+          changed = true;
+        }
+      }
+    }
+
+    List<Set<Local>> result = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      Set<Local> set = Collections.newSetFromMap(new IdentityHashMap<>());
+      for (int k = live[i].nextSetBit(0); k >= 0; k = live[i].nextSetBit(k + 1)) {
+        set.add(locals.get(k));
+      }
+      result.add(Collections.unmodifiableSet(set));
+    }
+    return result;
+  }
+
+  private static BitSet localsOf(List<ValueBox> boxes, Map<Local, Integer> numbers) {
+    BitSet result = new BitSet();
+    for (ValueBox box : boxes) {
+      if (box.getValue() instanceof Local) {
+        Integer k = numbers.get(box.getValue());
+        if (k != null) {
+          result.set(k);
+        }
+      }
+    }
+    return result;
+  }
+
+  public Body getBody() {
+    return graph.getBody();
+  }
+
+  public UnitGraph getGraph() {
+    return graph;
+  }
+
+  /**
+   * Returns the units in pseudo-topological order.
+   */
+  public List<Unit> getOrder() {
+    return order;
+  }
+
+  /**
+   * Returns the position of each unit in {@link #getOrder()}.
+   */
+  public Map<Unit, Integer> getIndex() {
+    return index;
+  }
+
+  /**
+   * Returns the units in the order {@code iterationOrder}.
+   */
+  public List<Unit> getOrder(IterationOrder iterationOrder) {
+    if (iterationOrder == IterationOrder.PSEUDO_TOPOLOGICAL) {
+      return order;
+    }
+    synchronized (otherOrders) {
+      return otherOrders.computeIfAbsent(iterationOrder, o -> {
+        List<Unit> units = Collections.unmodifiableList(o.<Unit>orderer().newList(graph, false));
+        otherIndices.put(o, positions(units));
+        return units;
+      });
+    }
+  }
+
+  /**
+   * Returns the position of each unit in {@link #getOrder(IterationOrder)}.
+   */
+  public Map<Unit, Integer> getIndex(IterationOrder iterationOrder) {
+    if (iterationOrder == IterationOrder.PSEUDO_TOPOLOGICAL) {
+      return index;
+    }
+    synchronized (otherOrders) {
+      getOrder(iterationOrder);
+      return otherIndices.get(iterationOrder);
+    }
+  }
+
+  private static Map<Unit, Integer> positions(List<Unit> units) {
+    int n = units.size();
+    Map<Unit, Integer> index = new IdentityHashMap<>(n * 2 + 1);
+    for (int i = 0; i < n; i++) {
+      index.put(units.get(i), i);
+    }
+    return Collections.unmodifiableMap(index);
+  }
+
+  public int indexOf(Unit u) {
+    return index.get(u);
+  }
+
+  public int size() {
+    return order.size();
+  }
+
+  public List<Unit> getSuccsOf(Unit u) {
+    return graph.getSuccsOf(u);
+  }
+
+  public List<Unit> getHeads() {
+    return graph.getHeads();
+  }
+
+  /**
+   * Returns the locals that are live before {@code u}.
+   */
+  public Set<Local> getLiveLocals(Unit u) {
+    return liveLocals.get(index.get(u));
+  }
+
+  /**
+   * Returns {@code env} without the locals that are dead before {@code u}. The environment
+   * itself is returned if all of its locals are live.
+   */
+  public Environment restrictToLive(Environment env, Unit u) {
+    return env.retainAll(getLiveLocals(u));
+  }
+
+  /**
+   * Returns the handlers of the traps that cover {@code u}, in the order in which the traps
+   * appear in the body.
+   */
+  public List<ExceptionHandler> getHandlersAt(Unit u) {
+    return handlers.get(index.get(u));
+  }
+}
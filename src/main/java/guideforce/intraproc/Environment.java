@@ -1,28 +1,219 @@
 package guideforce.intraproc;
 
 import guideforce.regions.Region;
+import guideforce.regions.UnionRegion;
 import soot.Local;
 
-import java.util.HashMap;
-import java.util.stream.Collectors;
+import javax.annotation.concurrent.Immutable;
+import java.util.*;
 
-public class Environment extends HashMap<Local, Region> {
+/**
+ * Immutable map from locals to the regions of their values.
+ * <p>
+ * The locals are kept in an array ordered by their number in the scene, with the regions in
+ * a parallel array. Updating the region of a local copies only the array of regions, and the
+ * hash code is computed once. The analyses intern environments, so that equal environments
+ * are mostly the same object.
+ */
+@Immutable
+public final class Environment {
 
-  public Environment() {
-    super();
+  public static final Environment EMPTY = new Environment(new Local[0], new Region[0]);
+
+  private final Local[] locals;
+  private final Region[] regions;
+  private final int hash;
+  // Whether some local is in a union region
+  private final boolean unions;
+
+  private Environment(Local[] locals, Region[] regions) {
+    this.locals = locals;
+    this.regions = regions;
+    int h = 0;
+    boolean u = false;
+    for (int i = 0; i < locals.length; i++) {
+      h = 31 * h + locals[i].getNumber();
+      h = 31 * h + Objects.hashCode(regions[i]);
+      u |= regions[i] instanceof UnionRegion;
+    }
+    this.hash = h;
+    this.unions = u;
+  }
+
+  /**
+   * Returns the region of {@code l} or {@code null} if the environment has none.
+   */
+  public Region get(Local l) {
+    int i = indexOf(l);
+    return i < 0 ? null : regions[i];
+  }
+
+  public boolean containsKey(Local l) {
+    return indexOf(l) >= 0;
+  }
+
+  /**
+   * Returns the environment that maps {@code l} to {@code r} and is the same as this one
+   * otherwise.
+   */
+  public Environment put(Local l, Region r) {
+    int i = indexOf(l);
+    if (i >= 0) {
+      if (Objects.equals(regions[i], r)) {
+        return this;
+      }
+      Region[] newRegions = regions.clone();
+      newRegions[i] = r;
+      return new Environment(locals, newRegions);
+    }
+    int at = -i - 1;
+    int n = locals.length;
+    Local[] newLocals = new Local[n + 1];
+    Region[] newRegions = new Region[n + 1];
+    System.arraycopy(locals, 0, newLocals, 0, at);
+    System.arraycopy(regions, 0, newRegions, 0, at);
+    newLocals[at] = l;
+    newRegions[at] = r;
+    System.arraycopy(locals, at, newLocals, at + 1, n - at);
+    System.arraycopy(regions, at, newRegions, at + 1, n - at);
+    return new Environment(newLocals, newRegions);
+  }
+
+  /**
+   * Returns the environment restricted to the locals in {@code keep}, or this environment if
+   * all of its locals are in {@code keep}.
+   */
+  public Environment retainAll(Set<Local> keep) {
+    int n = 0;
+    for (Local l : locals) {
+      if (keep.contains(l)) {
+        n++;
+      }
+    }
+    if (n == locals.length) {
+      return this;
+    }
+    Local[] newLocals = new Local[n];
+    Region[] newRegions = new Region[n];
+    int j = 0;
+    for (int i = 0; i < locals.length; i++) {
+      if (keep.contains(locals[i])) {
+        newLocals[j] = locals[i];
+        newRegions[j] = regions[i];
+        j++;
+      }
+    }
+    return new Environment(newLocals, newRegions);
+  }
+
+  public int size() {
+    return locals.length;
   }
 
-  public Environment(Environment env) {
-    super(env);
+  /**
+   * Returns the environment that maps each local to the union of its regions in this
+   * environment and in {@code other}.
+   */
+  public Environment join(Environment other) {
+    Environment result = this;
+    for (int i = 0; i < other.locals.length; i++) {
+      Local l = other.locals[i];
+      result = result.put(l, UnionRegion.of(get(l), other.regions[i]));
+    }
+    return result;
+  }
+
+  /**
+   * Returns true if some local is in a {@link UnionRegion}.
+   */
+  public boolean hasUnions() {
+    return unions;
+  }
+
+  /**
+   * Returns the environments in which each of {@code used} that is in a {@link UnionRegion}
+   * is in one of its members instead, and that are the same as this one otherwise.
+   */
+  public List<Environment> cases(Collection<Local> used) {
+    List<Environment> result = Collections.singletonList(this);
+    if (!unions) {
+      return result;
+    }
+    for (Local l : used) {
+      Region r = get(l);
+      if (!(r instanceof UnionRegion)) {
+        continue;
+      }
+      List<Environment> expanded = new ArrayList<>();
+      for (Environment env : result) {
+        if (env.get(l) instanceof UnionRegion) {
+          for (Region member : ((UnionRegion) r).getMembers()) {
+            expanded.add(env.put(l, member));
+          }
+        } else {
+          expanded.add(env);
+        }
+      }
+      result = expanded;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the position of {@code l} in {@link #locals} or, if it is not there,
+   * {@code -(insertion point) - 1}.
+   */
+  private int indexOf(Local l) {
+    int number = l.getNumber();
+    int low = 0;
+    int high = locals.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int midNumber = locals[mid].getNumber();
+      if (midNumber < number) {
+        low = mid + 1;
+      } else if (midNumber > number) {
+        high = mid - 1;
+      } else if (locals[mid] == l) {
+        return mid;
+      } else {
+        // Locals share a number only if they have not been numbered; search all of them.
+        for (int i = 0; i < locals.length; i++) {
+          if (locals[i] == l) {
+            return i;
+          }
+        }
+        return -mid - 1;
+      }
+    }
+    return -low - 1;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    Environment that = (Environment) o;
+    return hash == that.hash
+            && Arrays.equals(locals, that.locals)
+            && Arrays.equals(regions, that.regions);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
   }
 
   @Override
   public String toString() {
     StringBuilder builder = new StringBuilder();
     builder.append("(");
-    builder.append(entrySet().stream()
-            .map(entry -> entry.getKey() + ": " + entry.getValue())
-            .collect(Collectors.joining(", ")));
+    for (int i = 0; i < locals.length; i++) {
+      if (i > 0) {
+        builder.append(", ");
+      }
+      builder.append(locals[i]).append(": ").append(regions[i]);
+    }
     builder.append(")");
     return builder.toString();
   }
@@ -0,0 +1,90 @@
+package guideforce.intraproc;
+
+import guideforce.regions.AllocationSiteRegion;
+import guideforce.regions.ExceptionRegion;
+import guideforce.regions.Region;
+import soot.*;
+import soot.jimple.IdentityStmt;
+import soot.toolkits.graph.UnitGraph;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A trap of a method body together with the information that the analyses need to route
+ * exceptions to it: the local that receives the caught exception, the successors of the
+ * handler unit and a memo of which exception classes the trap catches.
+ */
+public final class ExceptionHandler {
+  private final Trap trap;
+  private final Local local;
+  private final List<Unit> successors;
+  private final Map<SootClass, Boolean> caught = new ConcurrentHashMap<>();
+
+  ExceptionHandler(Trap trap, UnitGraph graph) {
+    this.trap = trap;
+    Unit u = trap.getHandlerUnit();
+    assert (u instanceof IdentityStmt);
+    this.local = (Local) ((IdentityStmt) u).getLeftOp();
+    this.successors = graph.getSuccsOf(u);
+  }
+
+  public Trap getTrap() {
+    return trap;
+  }
+
+  /**
+   * Returns the local to which the handler assigns the caught exception.
+   */
+  public Local getLocal() {
+    return local;
+  }
+
+  /**
+   * Returns the successors of the handler unit.
+   */
+  public List<Unit> getSuccessors() {
+    return successors;
+  }
+
+  /**
+   * Returns true if the exception in region {@code r} is known to be caught by this handler.
+   */
+  public boolean catches(Region r) {
+    SootClass thrownException = exceptionClassOf(r);
+    return thrownException != null && catches(thrownException);
+  }
+
+  /**
+   * Returns true if the exception in region {@code r} may be caught by this handler.
+   * If the region does not carry the class of the exception, we assume that it may be
+   * caught by all handlers.
+   */
+  public boolean mayCatch(Region r) {
+    SootClass thrownException = exceptionClassOf(r);
+    return thrownException == null || catches(thrownException);
+  }
+
+  private boolean catches(SootClass thrownException) {
+    Boolean result = caught.get(thrownException);
+    if (result == null) {
+      // Soot is not thread-safe; concurrent analyses query it under the lock of the scene.
+      synchronized (Scene.v()) {
+        FastHierarchy h = Scene.v().getOrMakeFastHierarchy();
+        result = h.isSubclass(thrownException, trap.getException());
+      }
+      caught.put(thrownException, result);
+    }
+    return result;
+  }
+
+  private static SootClass exceptionClassOf(Region r) {
+    if (r instanceof AllocationSiteRegion) { // the AllocationSiteRegion carries the class information of the exception
+      return ((AllocationSiteRegion) r).getSootClass();
+    } else if (r instanceof ExceptionRegion) { // the region of the exception is specified for e.g. an intrinsic method
+      return ((ExceptionRegion) r).getSootClass();
+    }
+    return null;
+  }
+}
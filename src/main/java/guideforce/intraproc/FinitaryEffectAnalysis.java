@@ -5,8 +5,6 @@ import guideforce.policy.AbstractDomain;
 import guideforce.policy.AbstractDomain.Finitary;
 import guideforce.policy.Intrinsic;
 import guideforce.policy.Policy;
-import guideforce.regions.AllocationSiteRegion;
-import guideforce.regions.ExceptionRegion;
 import guideforce.regions.Region;
 import guideforce.regions.SpecialRegion;
 import guideforce.types.Monad;
@@ -17,7 +15,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import soot.*;
 import soot.jimple.*;
-import soot.toolkits.graph.BriefUnitGraph;
+import soot.toolkits.graph.Orderer;
 import soot.toolkits.graph.UnitGraph;
 
 import java.util.*;
@@ -34,20 +32,82 @@ public final class FinitaryEffectAnalysis extends ForwardFlowAnalysis<Unit, Fini
   private final SootMethod currentMethod;
 
   private final Body body;
+  private final CompiledBody compiled;
+  private final IterationOrder iterationOrder;
+  // Whether the equations of the infinitary analysis are built along with the transfer functions
+  private final boolean streamEquations;
+  // Number of environments before a unit above which they are joined into one, or 0
+  private final int environmentLimit;
+
+  // Units whose environments have exceeded the limit. Their flows have a single environment.
+  private final Set<Unit> joinedUnits = Collections.newSetFromMap(new IdentityHashMap<>());
+
+  // Interned environments, so that equal environments in the flows are mostly identical
+  private Map<Environment, Environment> environments = new HashMap<>();
+
+  // The table entries that the flow function of each unit has read
+  private final Map<Unit, Set<Object>> reads = new IdentityHashMap<>();
+
+  // Results of the transfer function of each statement in the environments it has been applied to
+  private Map<Unit, Map<Environment, Transfer>> transfers = new IdentityHashMap<>();
 
   private final Logger logger = LoggerFactory.getLogger(FinitaryEffectAnalysis.class);
 
   public FinitaryEffectAnalysis(Policy policy, ClassTable tables, MethodTable.Key currentKey,
                                 UnitGraph g) {
-    super(g);
+    this(policy, tables, currentKey, new CompiledBody(g));
+  }
+
+  public FinitaryEffectAnalysis(Policy policy, ClassTable tables, MethodTable.Key currentKey,
+                                CompiledBody compiled) {
+    this(policy, tables, currentKey, compiled, AnalysisOptions.DEFAULT, null,
+            Collections.emptySet());
+  }
+
+  /**
+   * Analyses the entry {@code currentKey} again after the table entries
+   * {@code changedEntries} have grown, starting from the flows of the {@code previous}
+   * analysis of the same entry. Only the units that have read one of the changed entries and
+   * the units whose flow changes in turn are processed again. As the flow functions are
+   * monotone in the tables, the result is the same as that of a fresh analysis.
+   * If {@code previous} is {@code null}, the entry is analysed afresh.
+   * The units are processed in the {@link AnalysisOptions#getIterationOrder() order} of
+   * {@code options}, which also determine whether the equations of the infinitary analysis
+   * are built whenever a transfer function is evaluated, see
+   * {@link #equationOf(Stmt, Environment)}, and how many environments are kept before each
+   * unit.
+   */
+  public FinitaryEffectAnalysis(Policy policy, ClassTable tables, MethodTable.Key currentKey,
+                                CompiledBody compiled, AnalysisOptions options,
+                                FinitaryEffectAnalysis previous, Set<Object> changedEntries) {
+    super(compiled.getGraph());
 
     this.tables = tables;
     this.policy = policy;
     this.currentKey = currentKey;
-    this.body = g.getBody();
+    this.compiled = compiled;
+    this.iterationOrder = options.getIterationOrder();
+    this.streamEquations = options.isStreamingEquations();
+    this.environmentLimit = options.getEnvironmentLimit();
+    this.body = compiled.getBody();
     this.currentMethod = body.getMethod();
 
-    doAnalysis();
+    if (previous == null || previous.compiled != compiled) {
+      doAnalysis();
+    } else {
+      List<Unit> changed = new ArrayList<>();
+      for (Map.Entry<Unit, Set<Object>> entry : previous.reads.entrySet()) {
+        reads.put(entry.getKey(), new HashSet<>(entry.getValue()));
+        if (!Collections.disjoint(entry.getValue(), changedEntries)) {
+          changed.add(entry.getKey());
+        }
+      }
+      // The environments of the previous flows stay identical to the new ones.
+      environments = previous.environments;
+      transfers = previous.transfers;
+      joinedUnits.addAll(previous.joinedUnits);
+      doAnalysis(previous.unitToBeforeFlow, changed);
+    }
   }
 
   public FinitaryEffectAnalysis(FinitaryEffectAnalysis fea) {
@@ -56,7 +116,56 @@ public final class FinitaryEffectAnalysis extends ForwardFlowAnalysis<Unit, Fini
     this.policy = fea.policy;
     this.currentKey = fea.currentKey;
     this.body = fea.body;
+    this.compiled = fea.compiled;
+    this.iterationOrder = fea.iterationOrder;
+    this.streamEquations = fea.streamEquations;
+    this.environmentLimit = fea.environmentLimit;
+    this.joinedUnits.addAll(fea.joinedUnits);
     this.currentMethod = fea.currentMethod;
+    this.environments = new HashMap<>(fea.environments);
+    for (Map.Entry<Unit, Map<Environment, Transfer>> entry : fea.transfers.entrySet()) {
+      Map<Environment, Transfer> cached = new HashMap<>();
+      entry.getValue().forEach((env, transfer) -> cached.put(env, new Transfer(transfer)));
+      this.transfers.put(entry.getKey(), cached);
+    }
+  }
+
+  @Override
+  protected Orderer<Unit> constructOrderer() {
+    return iterationOrder.orderer();
+  }
+
+  @Override
+  protected List<Unit> orderedNodes() {
+    return compiled.getOrder(iterationOrder);
+  }
+
+  @Override
+  protected Map<Unit, Integer> nodeIndex(List<Unit> orderedNodes) {
+    return compiled.getIndex(iterationOrder);
+  }
+
+  public CompiledBody getCompiledBody() {
+    return compiled;
+  }
+
+  MethodTable.Key getCurrentKey() {
+    return currentKey;
+  }
+
+  AbstractDomain getAbstractDomain() {
+    return policy.getAbstractDomain();
+  }
+
+  /**
+   * Returns the keys of the table entries that the analysis has read.
+   */
+  public Set<Object> getReads() {
+    Set<Object> result = new HashSet<>();
+    for (Set<Object> unitReads : reads.values()) {
+      result.addAll(unitReads);
+    }
+    return result;
   }
 
   @Override
@@ -64,6 +173,39 @@ public final class FinitaryEffectAnalysis extends ForwardFlowAnalysis<Unit, Fini
     FinitaryEffectFlow.merge(in1, in2, out);
   }
 
+  @Override
+  protected boolean mergeInto(FinitaryEffectFlow in, FinitaryEffectFlow out) {
+    return FinitaryEffectFlow.mergeInto(in, out);
+  }
+
+  /**
+   * Merges as {@link #mergeInto(FinitaryEffectFlow, FinitaryEffectFlow)}, but joins the
+   * environments before {@code target} into one once there are more than the limit. From
+   * then on, the flow before {@code target} always has a single environment.
+   */
+  @Override
+  protected boolean mergeInto(Unit target, FinitaryEffectFlow in, FinitaryEffectFlow out) {
+    if (joinedUnits.contains(target)) {
+      return FinitaryEffectFlow.mergeIntoJoined(in, out);
+    }
+    boolean changed = FinitaryEffectFlow.mergeInto(in, out);
+    if (changed && environmentLimit > 0 && out.get().support().size() > environmentLimit) {
+      logger.debug("joining {} environments before {} in {}", out.get().support().size(), target,
+              currentMethod);
+      joinedUnits.add(target);
+      FinitaryEffectFlow.mergeIntoJoined(out, out);
+    }
+    return changed;
+  }
+
+  /**
+   * Returns the units before which the environments have been joined, because there were
+   * more than the limit.
+   */
+  public Set<Unit> getJoinedUnits() {
+    return Collections.unmodifiableSet(joinedUnits);
+  }
+
   @Override
   protected void copy(FinitaryEffectFlow from, FinitaryEffectFlow to) {
     FinitaryEffectFlow.copy(from, to);
@@ -80,10 +222,29 @@ public final class FinitaryEffectAnalysis extends ForwardFlowAnalysis<Unit, Fini
   }
 
   /**
-   * Computes the flow through the whole unit.
+   * Computes the flow through the whole unit and records the table entries that it reads.
    */
   @Override
-  protected Map<Unit,FinitaryEffectFlow> flowThrough(FinitaryEffectFlow in, Unit d) {
+  protected void flowThrough(FinitaryEffectFlow in, Unit d, FlowSink<Unit, FinitaryEffectFlow> outs) {
+    tables.observeReads(reads.computeIfAbsent(d, u -> new HashSet<>())::add);
+    try {
+      flowThroughUnit(in, d, outs);
+    } finally {
+      tables.observeReads(null);
+    }
+  }
+
+  /**
+   * Returns the flow through the unit. The returned map specifies the successors of the unit
+   * and the flow that goes to each of them.
+   */
+  private Map<Unit,FinitaryEffectFlow> flowThrough(FinitaryEffectFlow in, Unit d) {
+    Map<Unit,FinitaryEffectFlow> outs = new HashMap<>();
+    flowThrough(in, d, outs::put);
+    return outs;
+  }
+
+  private void flowThroughUnit(FinitaryEffectFlow in, Unit d, FlowSink<Unit, FinitaryEffectFlow> outs) {
     logger.trace("analyzing unit: {}", d);
     logger.trace("in: {}", in);
 
@@ -108,60 +269,34 @@ public final class FinitaryEffectAnalysis extends ForwardFlowAnalysis<Unit, Fini
 //      }
 //    }
 
-    Map<Unit,FinitaryEffectFlow> outs = new HashMap<>();
-
     // out flow for each normal successor of d
     // TODO: if d would definitely throw an exception, how can we ignore the normal successors?
     for (Unit u : graph.getSuccsOf(d)) {
       logger.trace("out: {}\n", out);
-      outs.put(u,out);
+      outs.flowTo(u, restrictToLive(out, u));
 //      System.out.println("- out to " + u);
 //      System.out.println("    " + out);
     }
 
-    List<Trap> traps = TrapManager.getTrapsAt(d,body);
-
-    FastHierarchy h = Scene.v().getOrMakeFastHierarchy();
-
     // Check if the exceptions of d may be caught
-    for (Trap trap : traps) {
-      // Get the exception class and variable of the handler
-      SootClass caughtException = trap.getException();
-      Unit u = trap.getHandlerUnit();
-      assert (u instanceof IdentityStmt);
-      Local l = (Local) ((IdentityStmt) u).getLeftOp();
+    for (ExceptionHandler handler : compiled.getHandlersAt(d)) {
+      Local l = handler.getLocal();
       for (Region r : exRet.support()) {
         Finitary eff = exRet.get(r);
-        boolean isCaught = false;
-        boolean canRemove = false;
-        if (r instanceof AllocationSiteRegion) { // the AllocationSiteRegion carries the class information of the exception
-          SootClass thrownException = ((AllocationSiteRegion) r).getSootClass();
-          if (h.isSubclass(thrownException, caughtException)) {
-            isCaught = true;
-            canRemove = true;
-          }
-        } else if (r instanceof ExceptionRegion) { // the region of the exception is specified for e.g. an intrinsic method
-          SootClass thrownException = ((ExceptionRegion) r).getSootClass();
-          if (h.isSubclass(thrownException, caughtException)) {
-            isCaught = true;
-            canRemove = true;
-          }
-        } else { // We don't know the exception class, and thus assume that it is caught by all traps.
-          // TODO: Is this assumption ok?
-          isCaught = true;
-        }
+        // We don't know the class of some exceptions, and thus assume that they are caught by all traps.
+        // TODO: Is this assumption ok?
+        boolean isCaught = handler.mayCatch(r);
+        boolean canRemove = handler.catches(r);
         if (isCaught) { // The thrown exception of d may be caught
           // Extend the out flow with the exception variable
           Map<Environment, Finitary> choices = new HashMap<>();
           for (Environment env : in.get().support()) {
-            Environment env1 = new Environment(env);
-            env1.put(l, r);
-            choices.put(env1, eff);
+            choices.put(intern(env.put(l, r)), eff);
           }
           FinitaryEffectFlow exOut = new FinitaryEffectFlow(policy.getAbstractDomain(), new Monad<>(policy.getAbstractDomain(), choices));
           logger.trace("out: {}\n", exOut);
-          for (Unit v : graph.getSuccsOf(u)) {
-            outs.put(v, exOut);
+          for (Unit v : handler.getSuccessors()) {
+            outs.flowTo(v, restrictToLive(exOut, v));
 //            System.out.println("- out to " + v);
 //            System.out.println("    " + exOut);
           }
@@ -175,8 +310,36 @@ public final class FinitaryEffectAnalysis extends ForwardFlowAnalysis<Unit, Fini
     tables.ensurePresent(currentKey);
     tables.joinIfPresent(currentKey,
             new EffectType(ret, exRet, policy.getAbstractDomain().zeroInfinitary()));
+  }
 
-    return outs;
+  /**
+   * Drops the locals that are dead before {@code u} from the environments of {@code flow}.
+   * Environments that only differ in dead locals become one, with the join of their effects.
+   */
+  private FinitaryEffectFlow restrictToLive(FinitaryEffectFlow flow, Unit u) {
+    Map<Environment, Finitary> choices = flow.get().getChoices();
+    boolean allLive = true;
+    for (Environment env : choices.keySet()) {
+      if (compiled.restrictToLive(env, u) != env) {
+        allLive = false;
+        break;
+      }
+    }
+    if (allLive) {
+      return flow;
+    }
+    Map<Environment, Finitary> restricted = new HashMap<>();
+    for (Map.Entry<Environment, Finitary> entry : choices.entrySet()) {
+      restricted.merge(intern(compiled.restrictToLive(entry.getKey(), u)), entry.getValue(),
+              Finitary::join);
+    }
+    return new FinitaryEffectFlow(policy.getAbstractDomain(),
+            new Monad<>(policy.getAbstractDomain(), restricted));
+  }
+
+  private Environment intern(Environment env) {
+    Environment interned = environments.putIfAbsent(env, env);
+    return interned == null ? env : interned;
   }
 
   public Function<Environment, Monad<Environment>> abstractedStmt(Stmt stmt) {
@@ -195,12 +358,122 @@ public final class FinitaryEffectAnalysis extends ForwardFlowAnalysis<Unit, Fini
 //    };
 //  }
 
+  /**
+   * Returns the transfer function of {@code stmt}, which maps an environment to the
+   * environments after the statement, its return value and the exceptions that it throws.
+   * <p>
+   * The results are cached with the table entries that their evaluation has read. A cached
+   * result is reused as long as none of these entries has changed, also by the infinitary
+   * analysis and the counterexample search. The reads and writes of the evaluation are passed
+   * to the observers of the tables again when its result is reused.
+   */
   public Function<Environment, Triple<Monad<Environment>, Monad<Region>, Monad<Region>>> abstractedStmtTriple(Stmt stmt) {
+    Map<Environment, Transfer> cached = transfers.computeIfAbsent(stmt, s -> new HashMap<>());
     return env -> {
+      List<Environment> cases = casesOf(stmt, env);
+      if (cases.size() == 1) {
+        return transfer(cached, stmt, env).result;
+      }
+      // The statement uses locals in union regions: join the results for all their members.
+      AbstractDomain domain = policy.getAbstractDomain();
+      Monad<Environment> result = Monad.empty(domain);
+      Monad<Region> ret = Monad.empty(domain);
+      Monad<Region> exRet = Monad.empty(domain);
+      for (Environment c : cases) {
+        Triple<Monad<Environment>, Monad<Region>, Monad<Region>> triple = transfer(cached, stmt, c).result;
+        result = result.join(triple.getFirst());
+        ret = ret.join(triple.getSecond());
+        exRet = exRet.join(triple.getThird());
+      }
+      return new Triple<>(result, ret, exRet);
+    };
+  }
+
+  /**
+   * Returns the environments in which the locals that {@code stmt} uses are not in union
+   * regions and whose transfer functions together give that of {@code env}.
+   */
+  private static List<Environment> casesOf(Stmt stmt, Environment env) {
+    if (!env.hasUnions()) {
+      return Collections.singletonList(env);
+    }
+    List<Local> used = new ArrayList<>();
+    for (ValueBox box : stmt.getUseBoxes()) {
+      if (box.getValue() instanceof Local) {
+        used.add((Local) box.getValue());
+      }
+    }
+    return env.cases(used);
+  }
+
+  /**
+   * Returns the right-hand side of the equation of the infinitary analysis for {@code stmt}
+   * in the environment {@code env}. The equation is cached with the result of the transfer
+   * function, and a copy is returned, since solving an equation system modifies its terms.
+   */
+  EffectTerm<Variable> equationOf(Stmt stmt, Environment env) {
+    List<Environment> cases = casesOf(stmt, env);
+    if (cases.size() > 1) {
+      EffectTerm<Variable> sum = new EffectTerm<>(policy.getAbstractDomain());
+      for (Environment c : cases) {
+        sum.add(equationOf(stmt, c));
+      }
+      return sum;
+    }
+    Transfer transfer = transfer(transfers.computeIfAbsent(stmt, s -> new HashMap<>()), stmt, env);
+    if (transfer.equation == null) {
+      transfer.equation = InfinitaryEffectAnalysis.rightHandSide(this, stmt, env, transfer.result);
+    }
+    return transfer.equation.copy();
+  }
+
+  private Transfer transfer(Map<Environment, Transfer> cached, Stmt stmt, Environment env) {
+    Transfer transfer = cached.get(env);
+    long version = tables.getVersion();
+    if (transfer != null
+            && (transfer.version == version || tables.unchangedSince(transfer.reads, transfer.version))) {
+      transfer.version = version;
+      tables.replayAccesses(transfer.reads, transfer.writes);
+      return transfer;
+    }
+    Transfer result = new Transfer(version);
+    tables.recordAccesses(() -> {
       FlowThroughStmtVisitor visitor = new FlowThroughStmtVisitor(env);
       stmt.apply(visitor);
-      return new Triple<>(visitor.getResult(), visitor.getReturn(), visitor.getExceptionalReturn());
-    };
+      result.result = new Triple<>(visitor.getResult(), visitor.getReturn(), visitor.getExceptionalReturn());
+      if (streamEquations) {
+        result.equation = InfinitaryEffectAnalysis.rightHandSide(this, stmt, env, result.result);
+      }
+      return result;
+    }, result.reads, result.writes);
+    cached.put(env, result);
+    return result;
+  }
+
+  /**
+   * A cached result of a transfer function together with the table entries that its
+   * evaluation has read and written. It is valid if none of the entries that have been read
+   * has changed since the tables had the given version.
+   */
+  private static final class Transfer {
+    private final Set<Object> reads = new HashSet<>();
+    private final Set<Object> writes = new HashSet<>();
+    private Triple<Monad<Environment>, Monad<Region>, Monad<Region>> result;
+    // Right-hand side of the equation of the infinitary analysis, once it has been built
+    private EffectTerm<Variable> equation;
+    private long version;
+
+    Transfer(long version) {
+      this.version = version;
+    }
+
+    Transfer(Transfer transfer) {
+      this.reads.addAll(transfer.reads);
+      this.writes.addAll(transfer.writes);
+      this.result = transfer.result;
+      this.equation = transfer.equation;
+      this.version = transfer.version;
+    }
   }
 
 //  public Function<Environment, Monad<Region>> abstractedStmtExceptionalReturn(Stmt stmt) {
@@ -239,14 +512,18 @@ public final class FinitaryEffectAnalysis extends ForwardFlowAnalysis<Unit, Fini
     if (c1.getName().equals("java.lang.Object") || (c2.getName().equals("java.lang.Object")))
       return true;
 
-    FastHierarchy h = Scene.v().getOrMakeFastHierarchy();
-    if (c1.isInterface() && h.getAllImplementersOfInterface(c1).contains(c2)) {
-      return true;
-    }
-    if (c2.isInterface()) {
-      return h.getAllImplementersOfInterface(c2).contains(c1);
-    } else {
-      return h.isSubclass(c1, c2) || h.isSubclass(c2, c1);
+    // The implementers of interfaces are cached lazily and Soot is not thread-safe, so
+    // concurrent analyses query it under the lock of the scene.
+    synchronized (Scene.v()) {
+      FastHierarchy h = Scene.v().getOrMakeFastHierarchy();
+      if (c1.isInterface() && h.getAllImplementersOfInterface(c1).contains(c2)) {
+        return true;
+      }
+      if (c2.isInterface()) {
+        return h.getAllImplementersOfInterface(c2).contains(c1);
+      } else {
+        return h.isSubclass(c1, c2) || h.isSubclass(c2, c1);
+      }
     }
   }
 
@@ -310,11 +587,7 @@ public final class FinitaryEffectAnalysis extends ForwardFlowAnalysis<Unit, Fini
 
     private void execPut(Local l, Monad<Region> rt) {
       out = out.then(env ->
-              rt.then(r -> {
-                Environment env1 = new Environment(env);
-                env1.put(l, r);
-                return Monad.pure(domain, env1);
-              })
+              rt.then(r -> Monad.pure(domain, intern(env.put(l, r))))
       );
     }
 
@@ -475,7 +748,7 @@ public final class FinitaryEffectAnalysis extends ForwardFlowAnalysis<Unit, Fini
     public void caseReturnStmt(ReturnStmt stmt) {
       Value v = stmt.getOp();
       if (v instanceof Local) {
-        execReturn(env.get(v));
+        execReturn(env.get((Local) v));
       } else {
         assert (v instanceof Constant);
         execReturn(SpecialRegion.BASETYPE_REGION);
@@ -522,7 +795,7 @@ public final class FinitaryEffectAnalysis extends ForwardFlowAnalysis<Unit, Fini
     public void caseThrowStmt(ThrowStmt stmt) {
       Value v = stmt.getOp();
       if (v instanceof Local) {
-        exRet = out.map(env -> env.get(v));
+        exRet = out.map(env -> env.get((Local) v));
       } else {
         assert (v instanceof Constant);
         // TODO: throw a constant exception?
@@ -778,13 +1051,10 @@ public final class FinitaryEffectAnalysis extends ForwardFlowAnalysis<Unit, Fini
 
     @Override
     public void caseCaughtExceptionRef(CaughtExceptionRef v) {
-      if (env.containsKey(v)) {
-        Region r = env.get(v);
-        setType(Monad.pure(policy.getAbstractDomain(), r));
-      } else {
-        // TODO: double check
-        setType(Monad.empty(policy.getAbstractDomain()));
-      }
+      // Environments only map locals. The region of a caught exception is put into the
+      // local of the handler when the exception is thrown.
+      // TODO: double check
+      setType(Monad.empty(policy.getAbstractDomain()));
 //      Region r = env.getOrDefault(v , SpecialRegion.EXCEPTION_REGION);
 //      setType(Monad.pure(policy.getAbstractDomain(), r));
     }
@@ -855,8 +1125,7 @@ public final class FinitaryEffectAnalysis extends ForwardFlowAnalysis<Unit, Fini
   }
 
   public boolean searchCounterExample (List<UnitAndEffect> path) {
-    BriefUnitGraph g = new BriefUnitGraph(body);
-    for (Unit u : g.getHeads()) {
+    for (Unit u : compiled.getHeads()) {
       return search(entryInitialFlow(), u, path);
     }
     return false;
@@ -906,8 +1175,7 @@ public final class FinitaryEffectAnalysis extends ForwardFlowAnalysis<Unit, Fini
 
 
   public boolean searchCounterExampleInf (List<UnitAndEffect> path) {
-    BriefUnitGraph g = new BriefUnitGraph(body);
-    for (Unit u : g.getHeads()) {
+    for (Unit u : compiled.getHeads()) {
       return searchInf(entryInitialFlow(), u, path);
     }
     return false;
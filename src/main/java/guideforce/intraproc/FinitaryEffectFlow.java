@@ -5,6 +5,8 @@ import guideforce.regions.Region;
 import guideforce.types.Monad;
 import soot.Local;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -25,7 +27,7 @@ public final class FinitaryEffectFlow {
 
   static FinitaryEffectFlow singleton(AbstractDomain abstractDomain) {
     FinitaryEffectFlow result = new FinitaryEffectFlow(abstractDomain);
-    result.e = Monad.pure(result.domain, new Environment());
+    result.e = Monad.pure(result.domain, Environment.EMPTY);
     return result;
   }
 
@@ -43,6 +45,45 @@ public final class FinitaryEffectFlow {
     out.e = in1.e.join(in2.e);
   }
 
+  /**
+   * Joins {@code in} into {@code out}.
+   *
+   * @return whether {@code out} has changed.
+   */
+  static boolean mergeInto(FinitaryEffectFlow in, FinitaryEffectFlow out) {
+    if (in.e.isIncludedIn(out.e)) {
+      return false;
+    }
+    out.e = in.e.join(out.e);
+    return true;
+  }
+
+  /**
+   * Joins {@code in} into {@code out} and then all environments of {@code out} into one, see
+   * {@link Environment#join(Environment)}, whose effect is the join of their effects.
+   *
+   * @return whether {@code out} has changed.
+   */
+  static boolean mergeIntoJoined(FinitaryEffectFlow in, FinitaryEffectFlow out) {
+    Environment env = null;
+    AbstractDomain.Finitary effect = null;
+    for (Monad<Environment> m : Arrays.asList(in.e, out.e)) {
+      for (Map.Entry<Environment, AbstractDomain.Finitary> entry : m.getChoices().entrySet()) {
+        env = env == null ? entry.getKey() : env.join(entry.getKey());
+        effect = effect == null ? entry.getValue() : effect.join(entry.getValue());
+      }
+    }
+    if (env == null) {
+      return false;
+    }
+    Monad<Environment> joined = new Monad<>(out.domain, Collections.singletonMap(env, effect));
+    if (joined.equals(out.e)) {
+      return false;
+    }
+    out.e = joined;
+    return true;
+  }
+
   public void append(Function<Environment, Monad<Environment>> f) {
     this.e = this.e.then(f);
   }
@@ -14,6 +14,9 @@ public abstract class ForwardFlowAnalysis<N, A> {
   /** The graph being analysed. */
   protected DirectedGraph<N> graph;
 
+  /** Number of flow computations of the last run of {@link #doAnalysis()}. */
+  private int flowComputations;
+
   /**
    * Construct the analysis from a DirectedGraph representation of a Body.
    */
@@ -51,28 +54,100 @@ public abstract class ForwardFlowAnalysis<N, A> {
    */
   protected abstract void merge(A in1, A in2, A out);
 
+  /**
+   * Merges the flow <code>in</code> into the flow <code>out</code>, which is changed in place.
+   * The default implementation uses {@link #merge} and {@link #copy}.
+   *
+   * @return whether <code>out</code> has changed
+   */
+  protected boolean mergeInto(A in, A out) {
+    A merged = newInitialFlow();
+    merge(in, out, merged);
+    if (out.equals(merged)) {
+      return false;
+    }
+    copy(merged, out);
+    return true;
+  }
+
+  /**
+   * Merges the flow <code>in</code> into the IN set <code>out</code> of the node
+   * <code>target</code>. The default implementation ignores the node.
+   *
+   * @return whether <code>out</code> has changed
+   */
+  protected boolean mergeInto(N target, A in, A out) {
+    return mergeInto(in, out);
+  }
+
+  /**
+   * Returns the nodes in the order of the fixed-point iteration. The default implementation
+   * uses the orderer of {@link #constructOrderer()}.
+   */
+  protected List<N> orderedNodes() {
+    return constructOrderer().newList(graph, false);
+  }
+
+  /**
+   * Returns the position of each node in {@code orderedNodes}, as returned by
+   * {@link #orderedNodes()}.
+   */
+  protected Map<N, Integer> nodeIndex(List<N> orderedNodes) {
+    Map<N, Integer> index = new IdentityHashMap<N, Integer>(orderedNodes.size() * 2 + 1);
+    int i = 0;
+    for (N s : orderedNodes) {
+      index.put(s, i++);
+    }
+    return index;
+  }
+
   protected void doAnalysis() {
-    List<N> orderedUnits = constructOrderer().newList(graph, false);
+    List<N> orderedUnits = orderedNodes();
 
     final int n = orderedUnits.size();
     BitSet work = new BitSet(n);
     work.set(0, n);
 
-    final Map<N, Integer> index = new IdentityHashMap<N, Integer>(n * 2 + 1);
-    {
-      int i = 0;
-      for (N s : orderedUnits) {
-        index.put(s, i++);
-
-        // Set initial Flows
-        unitToBeforeFlow.put(s, newInitialFlow());
-      }
+    for (N s : orderedUnits) {
+      // Set initial Flows
+      unitToBeforeFlow.put(s, newInitialFlow());
     }
 
     for (N s : graph.getHeads()) {
       unitToBeforeFlow.put(s, entryInitialFlow());
     }
 
+    iterate(orderedUnits, nodeIndex(orderedUnits), work);
+  }
+
+  /**
+   * Computes the fixed point starting from the IN sets {@code previousFlows} of an earlier
+   * analysis of the same graph, which must be below the fixed point. Only the nodes in
+   * {@code changedNodes}, whose flow functions may have grown since, and the nodes whose
+   * IN sets change on the way are processed.
+   */
+  protected void doAnalysis(Map<N, A> previousFlows, Collection<N> changedNodes) {
+    List<N> orderedUnits = orderedNodes();
+    Map<N, Integer> index = nodeIndex(orderedUnits);
+
+    BitSet work = new BitSet(orderedUnits.size());
+    for (N s : changedNodes) {
+      work.set(index.get(s));
+    }
+    // The flows are merged in place and must not be shared with the earlier analysis.
+    for (Map.Entry<N, A> entry : previousFlows.entrySet()) {
+      A flow = newInitialFlow();
+      copy(entry.getValue(), flow);
+      unitToBeforeFlow.put(entry.getKey(), flow);
+    }
+
+    iterate(orderedUnits, index, work);
+  }
+
+  private void iterate(List<N> orderedUnits, Map<N, Integer> index, BitSet work) {
+    final int n = orderedUnits.size();
+    Successors successors = new Successors(index, n);
+
     int numComputations = 0;
 
     // Perform fixed point flow analysis
@@ -83,19 +158,15 @@ public abstract class ForwardFlowAnalysis<N, A> {
 
         // Compute the out-flows of s
         A beforeFlow = unitToBeforeFlow.get(s);
-        Map<N, A> afterFlows = flowThrough(beforeFlow, s);
-
-        // If the out-flow is changed, merge it into unitToBeforeFlow
-        for (Map.Entry<N, A> entry : afterFlows.entrySet()) {
-          N to = entry.getKey();
-          A afterFlow = entry.getValue();
-          A previousFlow = unitToBeforeFlow.get(to);
-          A mergedFlow = newInitialFlow();
-          merge(afterFlow,previousFlow,mergedFlow);
-          boolean hasChanged = !previousFlow.equals(mergedFlow);
-          if (hasChanged) {
-            unitToBeforeFlow.put(to,mergedFlow);
-            int j = index.get(to);
+        successors.clear();
+        flowThrough(beforeFlow, s, successors);
+
+        // Merge the out-flows into the in-flows of the successors
+        for (int k = 0; k < successors.count; k++) {
+          int j = successors.targets[k];
+          A afterFlow = successors.take(j);
+          N target = orderedUnits.get(j);
+          if (mergeInto(target, afterFlow, unitToBeforeFlow.get(target))) {
             work.set(j);
             i = Math.min(i, j - 1);
           }
@@ -104,10 +175,18 @@ public abstract class ForwardFlowAnalysis<N, A> {
       }
     }
 
+    flowComputations = numComputations;
     Timers.v().totalFlowNodes += n;
     Timers.v().totalFlowComputations += numComputations;
   }
 
+  /**
+   * Returns how often {@link #flowThrough} has been called to compute the fixed point.
+   */
+  public int getFlowComputations() {
+    return flowComputations;
+  }
+
   /** Accessor function returning value of IN set for s. */
   public A getFlowBefore(N s) {
     A a = unitToBeforeFlow.get(s);
@@ -128,9 +207,57 @@ public abstract class ForwardFlowAnalysis<N, A> {
   }
 
   /**
-   * Returns the flow through a node. The returned map specifies the target nodes of the
-   * flows and the flow that goes to that node.
+   * Computes the flow through a node and passes the flow to each of its normal and
+   * exceptional successors to <code>out</code>.
    */
-  protected abstract Map<N, A> flowThrough(A in, N node);
+  protected abstract void flowThrough(A in, N node, FlowSink<N, A> out);
+
+  /**
+   * Receives the flows out of a node. If a node passes more than one flow to the same
+   * target, the last one replaces the earlier ones.
+   */
+  protected interface FlowSink<N, A> {
+    void flowTo(N target, A flow);
+  }
+
+  /**
+   * The out-flows of the node being processed, in slots indexed by the position of the
+   * target in the iteration order. The slots are reused for all nodes.
+   */
+  private final class Successors implements FlowSink<N, A> {
+    private final Map<N, Integer> index;
+    private final Object[] flows;
+    private final int[] targets;
+    private int count;
+
+    Successors(Map<N, Integer> index, int n) {
+      this.index = index;
+      this.flows = new Object[n];
+      this.targets = new int[n];
+    }
+
+    @Override
+    public void flowTo(N target, A flow) {
+      int j = index.get(target);
+      if (flows[j] == null) {
+        targets[count++] = j;
+      }
+      flows[j] = flow;
+    }
+
+    @SuppressWarnings("unchecked")
+    A take(int j) {
+      A flow = (A) flows[j];
+      flows[j] = null;
+      return flow;
+    }
+
+    void clear() {
+      for (int k = 0; k < count; k++) {
+        flows[targets[k]] = null;
+      }
+      count = 0;
+    }
+  }
 
 }
@@ -3,8 +3,6 @@ package guideforce.intraproc;
 import guideforce.interproc.CallingContext;
 import guideforce.interproc.MethodTable;
 import guideforce.policy.AbstractDomain;
-import guideforce.regions.AllocationSiteRegion;
-import guideforce.regions.ExceptionRegion;
 import guideforce.regions.Region;
 import guideforce.regions.SpecialRegion;
 import guideforce.types.Monad;
@@ -14,23 +12,24 @@ import soot.jimple.*;
 import soot.toolkits.graph.UnitGraph;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 
 public class InfinitaryEffectAnalysis {
-  private final AbstractDomain abstractDomain;
-  private final MethodTable.Key currentKey;
-  private final UnitGraph graph;
+  private final CompiledBody graph;
   private final FinitaryEffectAnalysis analysis;
   private final EquationSystem equations;
 
   public InfinitaryEffectAnalysis(AbstractDomain abstractDomain, MethodTable.Key currentKey,
                                   UnitGraph graph,
                                   FinitaryEffectAnalysis analysis) {
-    this.abstractDomain = abstractDomain;
-    this.currentKey = currentKey;
+    this(abstractDomain, currentKey, new CompiledBody(graph), analysis);
+  }
+
+  public InfinitaryEffectAnalysis(AbstractDomain abstractDomain, MethodTable.Key currentKey,
+                                  CompiledBody graph,
+                                  FinitaryEffectAnalysis analysis) {
     this.graph = graph;
     this.analysis = analysis;
 
@@ -42,61 +41,75 @@ public class InfinitaryEffectAnalysis {
 
   public EffectTerm<Variable> getResult() {
     Unit entry = graph.getBody().getUnits().getFirst();
-    Map<Local, Region> env = Collections.emptyMap();
-    UnitVariable<Map<Local, Region>> var = new UnitVariable<>(entry, env);
+    Variable var = joinedVariable(new UnitVariable<>(entry, Environment.EMPTY));
     return equations.get(var).getRightHandSide();
   }
 
   private void buildEquations() {
-    for (Unit d : graph) {
-      analysis.getFlowBefore(d).get().stream()
-              .map(Monad.Entry::getKey)
-              .forEach(env -> buildEquation((Stmt) d, env));
+    boolean joined = !analysis.getJoinedUnits().isEmpty();
+    for (Unit d : graph.getBody().getUnits()) {
+      for (Environment env : analysis.getFlowBefore(d).get().support()) {
+        EffectTerm<Variable> term = analysis.equationOf((Stmt) d, env);
+        equations.put(new UnitVariable<>(d, env), joined ? toJoinedVariables(term) : term);
+      }
+    }
+  }
+
+  /**
+   * Replaces the variables of the units before which the finitary analysis has joined the
+   * environments by the variable of the joined environment, which covers them.
+   */
+  private EffectTerm<Variable> toJoinedVariables(EffectTerm<Variable> term) {
+    EffectTerm<Variable> result = new EffectTerm<>(term.getConstantTerm());
+    for (Map.Entry<Variable, AbstractDomain.Finitary> entry : term.getCoefficients().entrySet()) {
+      result.addMonomial(joinedVariable(entry.getKey()), entry.getValue());
     }
+    return result;
   }
 
-  private void buildEquation(Stmt d, Environment env) {
+  private Variable joinedVariable(Variable x) {
+    if (x instanceof UnitVariable) {
+      Unit u = ((UnitVariable<?>) x).getUnit();
+      if (analysis.getJoinedUnits().contains(u)) {
+        Environment env = analysis.getFlowBefore(u).get().support().iterator().next();
+        return new UnitVariable<>(u, env);
+      }
+    }
+    return x;
+  }
+
+  /**
+   * Returns the right-hand side of the equation for the statement {@code d} in the
+   * environment {@code env}, where {@code triple} is the result of the transfer function of
+   * {@code d} in {@code env}.
+   */
+  static EffectTerm<Variable> rightHandSide(FinitaryEffectAnalysis analysis, Stmt d,
+                                            Environment env,
+                                            Triple<Monad<Environment>, Monad<Region>, Monad<Region>> triple) {
+    AbstractDomain abstractDomain = analysis.getAbstractDomain();
+    CompiledBody graph = analysis.getCompiledBody();
     EffectTerm<Variable> out = new EffectTerm<>(abstractDomain);
 
-    Triple<Monad<Environment>, Monad<Region>, Monad<Region>> triple = analysis.abstractedStmtTriple(d).apply(env);
     triple.getFirst().stream().forEach(entry -> {
       // put all terms from successor nodes
       for (Unit succ : graph.getSuccsOf(d)) {
-        out.addMonomial(new UnitVariable<>(succ, entry.getKey()), entry.getEffect());
+        out.addMonomial(new UnitVariable<>(succ, graph.restrictToLive(entry.getKey(), succ)),
+                entry.getEffect());
       }
       // put all terms from exception handler nodes
-      List<Trap> traps = TrapManager.getTrapsAt(d,graph.getBody());
-      FastHierarchy h = Scene.v().getOrMakeFastHierarchy();
       // Check if the exceptions of d may be caught
-      for (Trap trap : traps) {
-        // Get the exception class and variable of the handler
-        SootClass caughtException = trap.getException();
-        Unit u = trap.getHandlerUnit();
-        assert (u instanceof IdentityStmt);
+      for (ExceptionHandler handler : graph.getHandlersAt(d)) {
         Monad<Region> exRet = triple.getThird();
-        Local l = (Local) ((IdentityStmt) u).getLeftOp();
+        Local l = handler.getLocal();
         for (Map.Entry<Region, AbstractDomain.Finitary> en : exRet.getChoices().entrySet()) {
           Region r = en.getKey();
-          boolean isCaught = false;
-          if (r instanceof AllocationSiteRegion) { // the AllocationSiteRegion carries the class information of the exception
-            SootClass thrownException = ((AllocationSiteRegion) r).getSootClass();
-            if (h.isSubclass(thrownException, caughtException)) {
-              isCaught = true;
-            }
-          } else if (r instanceof ExceptionRegion) { // the region of the exception is specified for e.g. an intrinsic method
-            SootClass thrownException = ((ExceptionRegion) r).getSootClass();
-            if (h.isSubclass(thrownException, caughtException)) {
-              isCaught = true;
-            }
-          } else { // We don't know the exception class, and thus assume that it is caught by all traps.
-            // TODO: Is this assumption ok?
-            isCaught = true;
-          }
+          // We don't know the class of some exceptions, and thus assume that they are caught by all traps.
+          // TODO: Is this assumption ok?
+          boolean isCaught = handler.mayCatch(r);
           if (isCaught) { // The thrown exception of d may be caught
-            Environment env1 = new Environment(entry.getKey());
-            env1.put(l, r);
-            for (Unit v : graph.getSuccsOf(u)) {
-              out.addMonomial(new UnitVariable<>(v, env1), en.getValue());
+            Environment env1 = entry.getKey().put(l, r);
+            for (Unit v : handler.getSuccessors()) {
+              out.addMonomial(new UnitVariable<>(v, graph.restrictToLive(env1, v)), en.getValue());
             }
           }
         }
@@ -105,13 +118,14 @@ public class InfinitaryEffectAnalysis {
 
     // put all possible terms from method calls
     if (d.containsInvokeExpr()) {
-      out.add(invokeTerm(d, env, d.getInvokeExpr()));
+      out.add(invokeTerm(analysis, d, env, d.getInvokeExpr()));
     }
-
-    equations.put(new UnitVariable<>(d, env), out);
+    return out;
   }
 
-  private EffectTerm<Variable> invokeTerm(Stmt stmt, Environment env, InvokeExpr e) {
+  private static EffectTerm<Variable> invokeTerm(FinitaryEffectAnalysis analysis, Stmt stmt,
+                                                 Environment env, InvokeExpr e) {
+    AbstractDomain abstractDomain = analysis.getAbstractDomain();
     EffectTerm<Variable> p = new EffectTerm<>(abstractDomain);
 
     // region of method
@@ -125,7 +139,8 @@ public class InfinitaryEffectAnalysis {
     Monad<List<Region>> argsType = Monad.sequence(abstractDomain, argTypes);
 
     // add variables for each invoked method
-    CallingContext newCtx = currentKey.getCallingContext().push(graph.getBody().getMethod(), stmt);
+    CallingContext newCtx = analysis.getCurrentKey().getCallingContext()
+            .push(analysis.getCompiledBody().getBody().getMethod(), stmt);
     argsType.stream().forEach(entry -> {
       MethodTable.Key key =
               new MethodTable.Key(e.getMethodRef(), newCtx, methodRegion, entry.getKey());
@@ -135,7 +150,7 @@ public class InfinitaryEffectAnalysis {
     return p;
   }
 
-  private Region methodRegionFromInvokeExpr(Map<Local, Region> env, InvokeExpr invokeExpr) {
+  private static Region methodRegionFromInvokeExpr(Environment env, InvokeExpr invokeExpr) {
     if (invokeExpr instanceof StaticInvokeExpr) {
       return SpecialRegion.STATIC_REGION;
     } else {
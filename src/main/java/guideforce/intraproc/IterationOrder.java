@@ -0,0 +1,34 @@
+package guideforce.intraproc;
+
+import soot.toolkits.graph.Orderer;
+import soot.toolkits.graph.PseudoTopologicalOrderer;
+
+/**
+ * Orders in which the finitary analysis of a method body processes its units. The worklist
+ * always processes the pending unit that comes first in the order.
+ */
+public enum IterationOrder {
+  /**
+   * Reverse postorder of a depth-first search, see {@link PseudoTopologicalOrderer}. The
+   * units of a loop may be interleaved with units that follow the loop.
+   */
+  PSEUDO_TOPOLOGICAL {
+    @Override
+    public <N> Orderer<N> orderer() {
+      return new PseudoTopologicalOrderer<>();
+    }
+  },
+
+  /**
+   * Weak topological order, see {@link WeakTopologicalOrderer}. Inner loops are stabilised
+   * before the units after them are processed.
+   */
+  WEAK_TOPOLOGICAL {
+    @Override
+    public <N> Orderer<N> orderer() {
+      return new WeakTopologicalOrderer<>();
+    }
+  };
+
+  public abstract <N> Orderer<N> orderer();
+}
@@ -17,6 +17,10 @@ public final class MethodVariable implements Variable {
     this.key = key;
   }
 
+  public MethodTable.Key getKey() {
+    return key;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
@@ -19,6 +19,10 @@ public final class UnitVariable<A> implements Variable {
     this.point = point;
   }
 
+  Unit getUnit() {
+    return unit;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
@@ -0,0 +1,153 @@
+package guideforce.intraproc;
+
+import soot.toolkits.graph.DirectedGraph;
+import soot.toolkits.graph.Orderer;
+
+import java.util.*;
+
+/**
+ * Orders the nodes of a graph by a weak topological order as defined by Bourdoncle in
+ * "Efficient chaotic iteration strategies with widenings" (1993). The nodes of each loop
+ * follow the head of the loop without interruption, and inner loops are nested in outer
+ * ones. A worklist that always processes the first pending node in this order therefore
+ * stabilises an inner loop before it leaves the loop.
+ * <p>
+ * Nodes that are not reachable from the heads of the graph follow the reachable ones.
+ */
+public class WeakTopologicalOrderer<N> implements Orderer<N> {
+
+  @Override
+  public List<N> newList(DirectedGraph<N> g, boolean reverse) {
+    Builder<N> builder = new Builder<>(g);
+    List<N> order = new ArrayList<>(g.size());
+    for (N head : g.getHeads()) {
+      builder.addRoot(head, order);
+    }
+    for (N n : g) {
+      builder.addRoot(n, order);
+    }
+    if (reverse) {
+      Collections.reverse(order);
+    }
+    return order;
+  }
+
+  /**
+   * Bourdoncle's algorithm, with an explicit stack of frames instead of recursion, so that
+   * long bodies do not overflow the stack of the analysing thread.
+   */
+  private static final class Builder<N> {
+    private final DirectedGraph<N> graph;
+    private final Map<N, Integer> dfn;
+    private final Deque<N> stack = new ArrayDeque<>();
+    private final Deque<Frame<N>> frames = new ArrayDeque<>();
+    private int num;
+
+    Builder(DirectedGraph<N> graph) {
+      this.graph = graph;
+      this.dfn = new IdentityHashMap<>(graph.size() * 2 + 1);
+    }
+
+    void addRoot(N root, List<N> order) {
+      if (dfn(root) != 0) {
+        return;
+      }
+      LinkedList<N> partition = new LinkedList<>();
+      enter(root, partition);
+      run();
+      order.addAll(partition);
+    }
+
+    private int dfn(N n) {
+      Integer i = dfn.get(n);
+      return i == null ? 0 : i;
+    }
+
+    /**
+     * Starts the visit of {@code v}, whose component is added to the front of
+     * {@code partition}.
+     */
+    private void enter(N v, LinkedList<N> partition) {
+      stack.push(v);
+      num++;
+      dfn.put(v, num);
+      frames.push(new Frame<>(v, partition, graph.getSuccsOf(v).iterator(), num, false));
+    }
+
+    private void run() {
+      int result = 0;
+      while (!frames.isEmpty()) {
+        Frame<N> frame = frames.peek();
+        if (frame.awaitsChild) {
+          frame.awaitsChild = false;
+          if (!frame.component && result <= frame.head) {
+            frame.head = result;
+            frame.loop = true;
+          }
+        }
+        if (frame.successors.hasNext()) {
+          N w = frame.successors.next();
+          if (frame.component) {
+            if (dfn(w) == 0) {
+              frame.awaitsChild = true;
+              enter(w, frame.nested);
+            }
+          } else if (dfn(w) == 0) {
+            frame.awaitsChild = true;
+            enter(w, frame.partition);
+          } else if (dfn(w) <= frame.head) {
+            frame.head = dfn(w);
+            frame.loop = true;
+          }
+          continue;
+        }
+
+        frames.pop();
+        if (frame.component) {
+          // The component consists of its head followed by the nested partition.
+          frame.nested.addFirst(frame.v);
+          frame.partition.addAll(0, frame.nested);
+          result = frame.head;
+          continue;
+        }
+        result = frame.head;
+        if (frame.head == dfn(frame.v)) {
+          dfn.put(frame.v, Integer.MAX_VALUE);
+          N element = stack.pop();
+          if (frame.loop) {
+            while (element != frame.v) {
+              dfn.put(element, 0);
+              element = stack.pop();
+            }
+            Frame<N> component = new Frame<>(frame.v, frame.partition,
+                    graph.getSuccsOf(frame.v).iterator(), frame.head, true);
+            component.nested = new LinkedList<>();
+            frames.push(component);
+          } else {
+            frame.partition.addFirst(frame.v);
+          }
+        }
+      }
+    }
+  }
+
+  private static final class Frame<N> {
+    private final N v;
+    private final LinkedList<N> partition;
+    private final Iterator<N> successors;
+    // Whether the frame builds the component of the loop with head v
+    private final boolean component;
+    private LinkedList<N> nested;
+    private int head;
+    private boolean loop;
+    private boolean awaitsChild;
+
+    Frame(N v, LinkedList<N> partition, Iterator<N> successors, int head, boolean component) {
+      this.v = v;
+      this.partition = partition;
+      this.successors = successors;
+      this.head = head;
+      this.component = component;
+    }
+  }
+}
@@ -3,6 +3,8 @@ package guideforce.policy;
 
 import javax.annotation.concurrent.Immutable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -22,19 +24,53 @@ import java.util.stream.Collectors;
  *
  * <p>
  * Finite and infinite abstractions are sets of monoid elements and of
- * tuples of such elements respectively.
+ * tuples of such elements respectively. Sets of monoid elements are bit sets,
+ * which are multiplied with the help of tables that are computed from the
+ * multiplication of the monoid when they are first needed. Sets of tuples are
+ * bit sets over the numbering of the tuples given by {@link #getTuples()}.
  * These sets are represented by the <b>immutable</b> inner classes
  * {@code Finitary} and {@code Infinitary}.
  * Invariants, such as that intraprocedural abstraction must be
  * <b>closed</b> sets of tuples are enforced.
  * </p>
+ *
+ * <p>
+ * Abstractions are interned, so that equal abstractions of a domain are the
+ * same object, and are numbered densely in the order of their creation. The
+ * results of joins, multiplications, stars and omegas are memoised by these
+ * numbers.
+ * </p>
  */
 public abstract class AbstractDomain {
 
   //region Monoid operations
   //---------------------------------------------------------------------------
 
-  private final Finitary BOTTOM_FINITARY = new Finitary();
+  // Interned abstractions and the counters for their numbers
+  private final Map<Finitary, Finitary> finitaries = new ConcurrentHashMap<>();
+  private final Map<Infinitary, Infinitary> infinitaries = new ConcurrentHashMap<>();
+  private final AtomicInteger finitaryIds = new AtomicInteger();
+  private final AtomicInteger infinitaryIds = new AtomicInteger();
+
+  // Memoised operations, keyed by the numbers of the operands
+  private final Map<Long, Finitary> finitaryJoins = new ConcurrentHashMap<>();
+  private final Map<Long, Finitary> finitaryProducts = new ConcurrentHashMap<>();
+  private final Map<Integer, Finitary> stars = new ConcurrentHashMap<>();
+  private final Map<Integer, Infinitary> omegas = new ConcurrentHashMap<>();
+  private final Map<Long, Infinitary> infinitaryJoins = new ConcurrentHashMap<>();
+  private final Map<Long, Infinitary> infinitaryProducts = new ConcurrentHashMap<>();
+
+  private static final long[] NO_WORDS = new long[0];
+
+  private final Finitary BOTTOM_FINITARY = finitary(0L, null);
+  private final Infinitary BOTTOM_INFINITARY = infinitary(NO_WORDS);
+  private volatile Finitary oneFinitary;
+
+  // Tables for the multiplication of finitary abstractions, computed when first needed
+  private volatile MultiplicationTables multiplicationTables;
+
+  // Numbering of the tuples and tables for infinitary abstractions, computed when first needed
+  private volatile InfinitaryTables infinitaryTables;
 
   /**
    * Returns the neutral element of the monoid.
@@ -94,18 +130,93 @@ public abstract class AbstractDomain {
    * the monoid unit.
    */
   public Finitary oneFinitary() {
-    return new Finitary(Collections.singleton(neutral()));
+    Finitary one = oneFinitary;
+    if (one == null) {
+      one = makeFinitary(neutral());
+      oneFinitary = one;
+    }
+    return one;
+  }
+
+  /**
+   * Top element of the finitary abstraction, i.e. the set of all monoid elements.
+   */
+  public Finitary topFinitary() {
+    return fromSet(getAllMonoidElements());
   }
 
   /**
    * Finite abstraction from monoid elements.
    */
   public Finitary makeFinitary(int... xs) {
-    Set<Integer> elements = new TreeSet<>();
+    long[] words = new long[0];
     for (int x : xs) {
-      elements.add(x);
+      words = setBit(words, x);
+    }
+    return fromWords(words);
+  }
+
+  private Finitary fromSet(Collection<Integer> xs) {
+    long[] words = new long[0];
+    for (int x : xs) {
+      words = setBit(words, x);
+    }
+    return fromWords(words);
+  }
+
+  /**
+   * Returns the abstraction with the elements in {@code words}, in the canonical
+   * representation: a single {@code long} if all elements are below 64.
+   */
+  private Finitary fromWords(long[] words) {
+    int length = words.length;
+    while (length > 0 && words[length - 1] == 0) {
+      length--;
+    }
+    if (length <= 1) {
+      return length == 0 ? BOTTOM_FINITARY : finitary(words[0], null);
+    }
+    return finitary(0L, length == words.length ? words : Arrays.copyOf(words, length));
+  }
+
+  /**
+   * Returns the interned abstraction with the given representation.
+   */
+  private Finitary finitary(long bits, long[] words) {
+    Finitary x = new Finitary(bits, words);
+    Finitary interned = finitaries.get(x);
+    if (interned != null) {
+      return interned;
+    }
+    return finitaries.computeIfAbsent(x, y -> {
+      y.id = finitaryIds.getAndIncrement();
+      return y;
+    });
+  }
+
+  private Infinitary infinitary(long[] words) {
+    Infinitary x = new Infinitary(words);
+    Infinitary interned = infinitaries.get(x);
+    if (interned != null) {
+      return interned;
     }
-    return new Finitary(elements);
+    return infinitaries.computeIfAbsent(x, y -> {
+      y.id = infinitaryIds.getAndIncrement();
+      return y;
+    });
+  }
+
+  private static long key(int x, int y) {
+    return ((long) x << 32) | (y & 0xffffffffL);
+  }
+
+  private static long[] setBit(long[] words, int x) {
+    int i = x >>> 6;
+    if (i >= words.length) {
+      words = Arrays.copyOf(words, i + 1);
+    }
+    words[i] |= 1L << x;
+    return words;
   }
 
   /**
@@ -114,13 +225,95 @@ public abstract class AbstractDomain {
   public Finitary multiply(Finitary x, Finitary y) {
     Objects.requireNonNull(x);
     Objects.requireNonNull(y);
-    Set<Integer> output = new TreeSet<>();
-    for (Integer clsA : x.classes) {
-      for (Integer clsB : y.classes) {
-        output.add(AbstractDomain.this.multiply(clsA, clsB));
+    if (x.isZero() || y.isZero()) {
+      return BOTTOM_FINITARY;
+    }
+    long key = key(x.id, y.id);
+    Finitary result = finitaryProducts.get(key);
+    if (result == null) {
+      result = computeProduct(x, y);
+      finitaryProducts.putIfAbsent(key, result);
+    }
+    return result;
+  }
+
+  private Finitary computeProduct(Finitary x, Finitary y) {
+    MultiplicationTables tables = multiplicationTables();
+    if (x.words == null && y.words == null && tables.byteRows != null) {
+      // The image of y under left multiplication with each element of x, one byte of y at a time
+      long result = 0;
+      for (long xs = x.bits; xs != 0; xs &= xs - 1) {
+        long[][] rows = tables.byteRows[Long.numberOfTrailingZeros(xs)];
+        long ys = y.bits;
+        for (int k = 0; ys != 0; k++, ys >>>= 8) {
+          result |= rows[k][(int) (ys & 0xff)];
+        }
+      }
+      return result == 0 ? BOTTOM_FINITARY : finitary(result, null);
+    }
+    long[] result = new long[(tables.size + 63) >>> 6];
+    int[] ys = y.elements();
+    for (int a : x.elements()) {
+      int[] products = tables.products[a];
+      for (int b : ys) {
+        int c = products[b];
+        result[c >>> 6] |= 1L << c;
+      }
+    }
+    return fromWords(result);
+  }
+
+  private MultiplicationTables multiplicationTables() {
+    MultiplicationTables tables = multiplicationTables;
+    if (tables == null) {
+      synchronized (this) {
+        tables = multiplicationTables;
+        if (tables == null) {
+          tables = new MultiplicationTables(getAllMonoidElements().size());
+          multiplicationTables = tables;
+        }
+      }
+    }
+    return tables;
+  }
+
+  /**
+   * The multiplication of the monoid, whose elements are 0, ..., size - 1, as a table and,
+   * for monoids of at most 64 elements, as masks: {@code byteRows[a][k][v]} is the set of
+   * products {@code a * b}, where {@code b} ranges over the elements {@code 8 * k + i} for
+   * the bits {@code i} of the byte {@code v}.
+   */
+  private final class MultiplicationTables {
+    private final int size;
+    private final int[][] products;
+    private final long[][][] byteRows;
+
+    MultiplicationTables(int size) {
+      this.size = size;
+      this.products = new int[size][size];
+      for (int a = 0; a < size; a++) {
+        for (int b = 0; b < size; b++) {
+          products[a][b] = AbstractDomain.this.multiply(a, b);
+        }
+      }
+      if (size > 64) {
+        this.byteRows = null;
+        return;
+      }
+      int bytes = (size + 7) >>> 3;
+      this.byteRows = new long[size][bytes][256];
+      for (int a = 0; a < size; a++) {
+        for (int k = 0; k < bytes; k++) {
+          long[] row = byteRows[a][k];
+          for (int v = 1; v < 256; v++) {
+            // Extend the mask of v without its lowest bit by the product with that bit
+            int i = Integer.numberOfTrailingZeros(v);
+            int b = 8 * k + i;
+            row[v] = row[v & (v - 1)] | (b < size ? 1L << products[a][b] : 0L);
+          }
+        }
       }
     }
-    return new Finitary(output);
   }
 
   /**
@@ -131,7 +324,12 @@ public abstract class AbstractDomain {
    */
   public Finitary star(Finitary x) {
     Objects.requireNonNull(x);
-    return new Finitary(star(x.classes));
+    Finitary result = stars.get(x.id);
+    if (result == null) {
+      result = fromSet(star(x.toSet()));
+      stars.putIfAbsent(x.id, result);
+    }
+    return result;
   }
 
   /**
@@ -142,7 +340,12 @@ public abstract class AbstractDomain {
    */
   public Infinitary omega(Finitary x) {
     Objects.requireNonNull(x);
-    return new Infinitary(omega(x.classes));
+    Infinitary result = omegas.get(x.id);
+    if (result == null) {
+      result = fromTuples(omega(x.toSet()));
+      omegas.putIfAbsent(x.id, result);
+    }
+    return result;
   }
 
   //---------------------------------------------------------------------------
@@ -159,36 +362,167 @@ public abstract class AbstractDomain {
    */
   public boolean acceptedFinitary(Finitary x) {
     Objects.requireNonNull(x);
-    return acceptedFinitary(x.classes);
+    return acceptedFinitary(x.toSet());
   }
 
   public Finitary getAcceptedFinitary(){
-    return new Finitary(getAcceptedFinitaryClasses());
+    return fromSet(getAcceptedFinitaryClasses());
   }
 
   public Infinitary getAcceptedInfinitary() {
-    return new Infinitary(getAcceptedInfinitaryClasses());
+    return fromTuples(getAcceptedInfinitaryClasses());
   }
 
   /**
    * Bottom element of the intraprocedural abstraction, i.e. the empty set.
    */
   public Infinitary zeroInfinitary() {
-    return new Infinitary();
+    return BOTTOM_INFINITARY;
+  }
+
+  /**
+   * Top element of the infinitary abstraction, which abstracts the language of all finite
+   * and infinite words.
+   */
+  public Infinitary topInfinitary() {
+    Finitary all = topFinitary();
+    return all.omega().join(all.asInfinitary());
+  }
+
+  /**
+   * Returns the infinitary abstraction with the given tuples of monoid elements,
+   * e.g. as obtained from {@link Infinitary#tuples()}.
+   *
+   * @param tuples pairs {C, D} of monoid elements
+   */
+  public Infinitary makeInfinitary(int[][] tuples) {
+    Set<Tuple> elements = new HashSet<>();
+    for (int[] tuple : tuples) {
+      elements.add(new Tuple(tuple[0], tuple[1]));
+    }
+    return fromTuples(elements);
+  }
+
+  private Infinitary fromTuples(Collection<Tuple> tuples) {
+    Map<Tuple, Integer> index = infinitaryTables().index;
+    long[] words = NO_WORDS;
+    for (Tuple t : tuples) {
+      Integer i = index.get(t);
+      if (i == null) {
+        throw new IllegalArgumentException("Not a tuple of the domain: " + t);
+      }
+      words = setBit(words, i);
+    }
+    return infinitary(trim(words));
+  }
+
+  private static long[] trim(long[] words) {
+    int length = words.length;
+    while (length > 0 && words[length - 1] == 0) {
+      length--;
+    }
+    return length == 0 ? NO_WORDS : length == words.length ? words : Arrays.copyOf(words, length);
   }
 
   /**
    * Multiplication of a finite abstraction with an infinite abstraction.
    */
   public Infinitary multiply(Finitary x, Infinitary y) {
-    return new Infinitary(concat(x.classes, y.tuples));
+    Objects.requireNonNull(x);
+    Objects.requireNonNull(y);
+    if (x.isZero() || y.words.length == 0) {
+      return BOTTOM_INFINITARY;
+    }
+    long key = key(x.id, y.id);
+    Infinitary result = infinitaryProducts.get(key);
+    if (result == null) {
+      result = computeProduct(x, y);
+      infinitaryProducts.putIfAbsent(key, result);
+    }
+    return result;
+  }
+
+  private Infinitary computeProduct(Finitary x, Infinitary y) {
+    InfinitaryTables tables = infinitaryTables();
+    long[] result = new long[tables.words];
+    int[] ps = y.elements();
+    for (int a : x.elements()) {
+      int[] row = tables.leftAction[a];
+      for (int p : ps) {
+        int q = row[p];
+        result[q >>> 6] |= 1L << q;
+      }
+    }
+    return infinitary(trim(result));
   }
 
   //---------------------------------------------------------------------------
   //endregion
 
   public boolean acceptedInfinitary(Infinitary x) {
-    return acceptedInfinitary(x.tuples);
+    long[] accepted = infinitaryTables().accepted;
+    for (int i = 0; i < x.words.length; i++) {
+      if ((x.words[i] & ~accepted[i]) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private InfinitaryTables infinitaryTables() {
+    InfinitaryTables tables = infinitaryTables;
+    if (tables == null) {
+      synchronized (this) {
+        tables = infinitaryTables;
+        if (tables == null) {
+          tables = new InfinitaryTables();
+          infinitaryTables = tables;
+        }
+      }
+    }
+    return tables;
+  }
+
+  /**
+   * The numbering of the tuples by their position in {@link #getTuples()}, the left action of
+   * the monoid on the tuples, where {@code leftAction[a][p]} is the number of the tuple
+   * {@code (a * C, D)} for the tuple {@code (C, D)} with number {@code p}, and the set of
+   * accepted tuples as a mask.
+   */
+  private final class InfinitaryTables {
+    private final Map<Tuple, Integer> index;
+    private final int[][] leftAction;
+    private final long[] accepted;
+    private final int words;
+
+    InfinitaryTables() {
+      List<Tuple> tuples = getTuples();
+      int n = tuples.size();
+      this.index = new HashMap<>(n * 2);
+      for (int p = 0; p < n; p++) {
+        index.put(tuples.get(p), p);
+      }
+      this.words = (n + 63) >>> 6;
+
+      int size = getAllMonoidElements().size();
+      this.leftAction = new int[size][n];
+      for (int a = 0; a < size; a++) {
+        for (int p = 0; p < n; p++) {
+          Tuple t = tuples.get(p);
+          Integer q = index.get(new Tuple(AbstractDomain.this.multiply(a, t.getC()), t.getD()));
+          if (q == null) {
+            throw new IllegalStateException("Tuples are not closed under multiplication: " + t);
+          }
+          leftAction[a][p] = q;
+        }
+      }
+
+      this.accepted = new long[words];
+      for (Tuple t : getAcceptedInfinitaryClasses()) {
+        int p = index.get(t);
+        accepted[p >>> 6] |= 1L << p;
+      }
+    }
   }
 
   //region Abstract methods that need to be implemented
@@ -198,12 +532,14 @@ public abstract class AbstractDomain {
 
   protected abstract Set<Tuple> omega(Set<Integer> x);
 
-  protected abstract Set<Tuple> concat(Set<Integer> x, Set<Tuple> y);
+  /**
+   * Returns the tuples {C, D} of monoid elements with C * D = C and D * D = D, in the order
+   * in which they are numbered. The order must not change.
+   */
+  protected abstract List<Tuple> getTuples();
 
   protected abstract boolean acceptedFinitary(Set<Integer> x);
 
-  protected abstract boolean acceptedInfinitary(Set<Tuple> x);
-
   protected abstract Set<Integer> getAcceptedFinitaryClasses();
 
   protected abstract Set<Tuple> getAcceptedInfinitaryClasses();
@@ -217,24 +553,48 @@ public abstract class AbstractDomain {
   @Immutable
   public final class Finitary {
 
-    // BitSets would be more efficient
-    private final Set<Integer> classes;
-
-    private Finitary() {
-      classes = new TreeSet<>();
-    }
+    // The monoid elements as a bit set: in bits if all are below 64, otherwise in words,
+    // whose last word is not zero.
+    private final long bits;
+    private final long[] words;
+    private final int hash;
+    // Number of the abstraction, set when it is interned
+    private int id = -1;
 
-    private Finitary(Set<Integer> classes) {
-      this.classes = classes;
+    private Finitary(long bits, long[] words) {
+      this.bits = bits;
+      this.words = words;
+      this.hash = words == null ? Long.hashCode(bits) : Arrays.hashCode(words);
     }
 
     /**
      * Returns an abstraction of the union of this language with another language x.
      */
     public Finitary join(Finitary x) {
-      Set<Integer> classes = new TreeSet<>(this.classes);
-      classes.addAll(x.classes);
-      return new Finitary(classes);
+      if (this == x) {
+        return this;
+      }
+      long key = id < x.id ? key(id, x.id) : key(x.id, id);
+      Finitary result = finitaryJoins.get(key);
+      if (result == null) {
+        result = computeJoin(x);
+        finitaryJoins.putIfAbsent(key, result);
+      }
+      return result;
+    }
+
+    private Finitary computeJoin(Finitary x) {
+      if (words == null && x.words == null) {
+        long joined = bits | x.bits;
+        return joined == bits ? this : joined == x.bits ? x : finitary(joined, null);
+      }
+      long[] a = words();
+      long[] b = x.words();
+      long[] joined = Arrays.copyOf(a.length >= b.length ? a : b, Math.max(a.length, b.length));
+      for (int i = 0; i < Math.min(a.length, b.length); i++) {
+        joined[i] = a[i] | b[i];
+      }
+      return fromWords(joined);
     }
 
     /**
@@ -242,9 +602,7 @@ public abstract class AbstractDomain {
      * abstraction {x}.
      */
     public Finitary join(Integer x) {
-      Set<Integer> classes = new TreeSet<>(this.classes);
-      classes.add(x);
-      return new Finitary(classes);
+      return fromWords(setBit(words().clone(), x));
     }
 
     public Finitary multiplyLeft(Finitary x) {
@@ -265,41 +623,94 @@ public abstract class AbstractDomain {
 
     public Infinitary asInfinitary() {
       Tuple t = new Tuple(neutral(), neutral());
-      return AbstractDomain.this.multiply(this, new Infinitary(Collections.singleton(t)));
+      return AbstractDomain.this.multiply(this, fromTuples(Collections.singleton(t)));
     }
 
     public boolean isZero() {
-      return this.classes.isEmpty();
+      return bits == 0 && words == null;
     }
 
     public boolean accepted() {
       return AbstractDomain.this.acceptedFinitary(this);
     }
 
+    // Compares the representations, as needed for interning; interned abstractions are
+    // equal only if they are the same object.
     @Override
     public boolean equals(Object o) {
       if (this == o) return true;
       if (o == null || getClass() != o.getClass()) return false;
       Finitary that = (Finitary) o;
-      return classes.equals(that.classes);
+      return hash == that.hash && bits == that.bits && Arrays.equals(words, that.words);
     }
 
     @Override
     public int hashCode() {
-      return Objects.hash(classes);
+      return hash;
     }
 
     @Override
     public String toString() {
       return "{" +
-              classes.stream()
-                      .map(AbstractDomain.this::monoidElementToString)
+              Arrays.stream(elements())
+                      .mapToObj(AbstractDomain.this::monoidElementToString)
                       .collect(Collectors.joining(", "))
               + "}";
     }
 
     public boolean contain (Finitary x) {
-      return classes.containsAll(x.classes);
+      if (words == null && x.words == null) {
+        return (x.bits & ~bits) == 0;
+      }
+      long[] a = words();
+      long[] b = x.words();
+      if (b.length > a.length) {
+        return false;
+      }
+      for (int i = 0; i < b.length; i++) {
+        if ((b[i] & ~a[i]) != 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Returns the monoid elements of this abstraction in ascending order.
+     */
+    public int[] elements() {
+      if (words == null) {
+        int[] result = new int[Long.bitCount(bits)];
+        int i = 0;
+        for (long xs = bits; xs != 0; xs &= xs - 1) {
+          result[i++] = Long.numberOfTrailingZeros(xs);
+        }
+        return result;
+      }
+      int count = 0;
+      for (long w : words) {
+        count += Long.bitCount(w);
+      }
+      int[] result = new int[count];
+      int i = 0;
+      for (int k = 0; k < words.length; k++) {
+        for (long xs = words[k]; xs != 0; xs &= xs - 1) {
+          result[i++] = 64 * k + Long.numberOfTrailingZeros(xs);
+        }
+      }
+      return result;
+    }
+
+    private long[] words() {
+      return words != null ? words : bits == 0 ? new long[0] : new long[]{bits};
+    }
+
+    private Set<Integer> toSet() {
+      Set<Integer> result = new TreeSet<>();
+      for (int x : elements()) {
+        result.add(x);
+      }
+      return result;
     }
   }
 
@@ -309,20 +720,47 @@ public abstract class AbstractDomain {
   @Immutable
   public final class Infinitary {
 
-    private final Set<Tuple> tuples;
+    // The numbers of the tuples as a bit set, whose last word is not zero
+    private final long[] words;
+    private final int hash;
+    // Number of the abstraction, set when it is interned
+    private int id = -1;
 
-    private Infinitary() {
-      tuples = new TreeSet<>();
+    private Infinitary(long[] words) {
+      this.words = words;
+      this.hash = Arrays.hashCode(words);
     }
 
-    private Infinitary(Set<Tuple> tuples) {
-      this.tuples = tuples;
+    public Infinitary join(Infinitary x) {
+      if (this == x) {
+        return this;
+      }
+      long key = id < x.id ? key(id, x.id) : key(x.id, id);
+      Infinitary result = infinitaryJoins.get(key);
+      if (result == null) {
+        result = computeJoin(x);
+        infinitaryJoins.putIfAbsent(key, result);
+      }
+      return result;
     }
 
-    public Infinitary join(Infinitary x) {
-      Set<Tuple> tuples = new TreeSet<>(this.tuples);
-      tuples.addAll(x.tuples);
-      return new Infinitary(tuples);
+    private Infinitary computeJoin(Infinitary x) {
+      long[] a = words;
+      long[] b = x.words;
+      if (b.length > a.length) {
+        a = x.words;
+        b = words;
+      }
+      long[] joined = null;
+      for (int i = 0; i < b.length; i++) {
+        if ((b[i] & ~a[i]) != 0) {
+          if (joined == null) {
+            joined = a.clone();
+          }
+          joined[i] |= b[i];
+        }
+      }
+      return joined == null ? (a == words ? this : x) : infinitary(joined);
     }
 
     public Infinitary multiplyLeft(Finitary x) {
@@ -333,23 +771,58 @@ public abstract class AbstractDomain {
       return AbstractDomain.this.acceptedInfinitary(this);
     }
 
+    /**
+     * Returns the tuples of this abstraction as pairs {C, D} of monoid elements.
+     */
+    public int[][] tuples() {
+      return Arrays.stream(elements())
+              .mapToObj(this::toTuple)
+              .map(t -> new int[]{t.getC(), t.getD()})
+              .toArray(int[][]::new);
+    }
+
+    /**
+     * Returns the numbers of the tuples of this abstraction in ascending order.
+     */
+    private int[] elements() {
+      int count = 0;
+      for (long w : words) {
+        count += Long.bitCount(w);
+      }
+      int[] result = new int[count];
+      int i = 0;
+      for (int k = 0; k < words.length; k++) {
+        for (long ps = words[k]; ps != 0; ps &= ps - 1) {
+          result[i++] = 64 * k + Long.numberOfTrailingZeros(ps);
+        }
+      }
+      return result;
+    }
+
+    private Tuple toTuple(int p) {
+      return getTuples().get(p);
+    }
+
+    // Compares the representations, as needed for interning
     @Override
     public boolean equals(Object o) {
       if (this == o) return true;
       if (o == null || getClass() != o.getClass()) return false;
       Infinitary that = (Infinitary) o;
-      return tuples.equals(that.tuples);
+      return hash == that.hash && Arrays.equals(words, that.words);
     }
 
     @Override
     public int hashCode() {
-      return Objects.hash(tuples);
+      return hash;
     }
 
     @Override
     public String toString() {
       return "{" +
-              tuples.stream()
+              Arrays.stream(elements())
+                      .mapToObj(this::toTuple)
+                      .sorted()
                       .map(Object::toString)
                       .collect(Collectors.joining(", "))
               + "}";
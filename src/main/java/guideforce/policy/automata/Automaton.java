@@ -5,7 +5,8 @@ import java.util.*;
 public class Automaton {
   private List<State> states = new ArrayList<>();
   private State initialState;
-  private Set<Object> alphabet = new HashSet<>();
+  // Insertion order, so that the numbering of the syntactic monoid does not vary between runs.
+  private Set<Object> alphabet = new LinkedHashSet<>();
   private List<State> finalStates = new ArrayList<>();
   private List<Edge> edges = new ArrayList<>();
 
@@ -20,7 +21,7 @@ public class Automaton {
                               Map<Object, Integer> alphabetMonoidRelations,
                               Set<Integer> accepting) {
     Automaton automaton = new Automaton();
-    automaton.alphabet = new HashSet<>(alphabetMonoidRelations.keySet());
+    automaton.alphabet = new LinkedHashSet<>(alphabetMonoidRelations.keySet());
 
     automaton.states = new ArrayList<>();
     Map<TransitionBox, State> classStateMap = new HashMap<>();
@@ -351,7 +352,7 @@ public class Automaton {
   }
 
   Map<Object, TransitionBox> computeAlphabetClasses() {
-    Map<Object, TransitionBox> output = new HashMap<>();
+    Map<Object, TransitionBox> output = new LinkedHashMap<>();
 
     for (Object token : alphabet) {
       TransitionBox cls = TransitionBox.empty(states, Collections.singletonList(token));
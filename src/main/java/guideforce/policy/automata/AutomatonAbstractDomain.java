@@ -9,10 +9,11 @@ public class AutomatonAbstractDomain extends AbstractDomain {
   private final Map<Object, Integer> alphabetClasses;
   private final Set<Integer> acceptedFinitary;
 
-  private final Set<Tuple> tuples;
+  // The tuples in the order in which they are numbered
+  private final List<Tuple> tuples;
   private final Set<Tuple> acceptedInfinitary;
 
-  // TODO: it's probably better to pre-compute this data
+  // The closure of each tuple, computed with the domain
   private final Map<Tuple, Set<Tuple>> singletonClosures = new HashMap<>();
   private final Map<Tuple, HashMap<Tuple, Boolean>> intersect = new HashMap<>();
 
@@ -32,7 +33,7 @@ public class AutomatonAbstractDomain extends AbstractDomain {
       }
     }
 
-    tuples = new HashSet<>();
+    List<Tuple> tuples = new ArrayList<>();
     for (int C = 0; C < monoid.elements().size(); C++) {
       for (int D = 0; D < monoid.elements().size(); D++) {
         if (monoid.multiply(C, D) == C && monoid.multiply(D, D) == D) {
@@ -40,6 +41,7 @@ public class AutomatonAbstractDomain extends AbstractDomain {
         }
       }
     }
+    this.tuples = Collections.unmodifiableList(tuples);
 
     acceptedInfinitary = new HashSet<>();
     for (Tuple tuple : tuples) {
@@ -58,6 +60,12 @@ public class AutomatonAbstractDomain extends AbstractDomain {
     }
 
     //acceptedInfinitary = closure(acceptedInfinitary); bereits abgeschlossen nach Lemma 2.9 (c)
+
+    // Compute the closures now, so that omega needs no automata during the analysis
+    for (Tuple tuple : tuples) {
+      singletonClosures.put(tuple, computeClosure(tuple));
+    }
+    intersect.clear();
   }
 
   @Override
@@ -89,11 +97,6 @@ public class AutomatonAbstractDomain extends AbstractDomain {
     return acceptedFinitary.containsAll(x);
   }
 
-  @Override
-  protected boolean acceptedInfinitary(Set<Tuple> x) {
-    return acceptedInfinitary.containsAll(x);
-  }
-
   @Override
   protected Set<Integer> getAcceptedFinitaryClasses() {
     return acceptedFinitary;
@@ -104,6 +107,11 @@ public class AutomatonAbstractDomain extends AbstractDomain {
     return acceptedInfinitary;
   }
 
+  @Override
+  protected List<Tuple> getTuples() {
+    return tuples;
+  }
+
   @Override
   public int read(Object token) {
     return alphabetClasses.get(token);
@@ -188,10 +196,6 @@ public class AutomatonAbstractDomain extends AbstractDomain {
   }
 
   private Set<Tuple> closure(Tuple tuple) {
-    if (!singletonClosures.containsKey(tuple)) {
-      singletonClosures.put(tuple, computeClosure(tuple));
-    }
-
     return singletonClosures.get(tuple);
   }
 
@@ -203,26 +207,40 @@ public class AutomatonAbstractDomain extends AbstractDomain {
     return output;
   }
 
+  /**
+   * Returns the closed set of tuples that abstracts L^omega, where L is the language of the
+   * words in the given classes.
+   * <p>
+   * By Ramsey's theorem, every infinite word in L^omega is in the concretisation of a tuple
+   * (C, D), where C and D are products of non-neutral classes in L and D is not neutral.
+   * Conversely, the concretisation of each such tuple contains a word in L^omega. The closure
+   * of these tuples is therefore the closure of the tuples whose concretisation meets
+   * L^omega, and it is computed without automata.
+   */
   protected Set<Tuple> omega(Set<Integer> classes) {
-    Set<Integer> nonEmptyClasses = new HashSet<>();
-
+    // The products of one or more non-neutral classes
+    Set<Integer> products = new HashSet<>();
     for (Integer cls : classes) {
       if (cls != monoid.neutral()) {
-        nonEmptyClasses.add(cls);
+        products.add(cls);
+      }
+    }
+    Deque<Integer> worklist = new ArrayDeque<>(products);
+    Set<Integer> generators = new HashSet<>(products);
+    while (!worklist.isEmpty()) {
+      int x = worklist.pop();
+      for (int y : generators) {
+        int xy = monoid.multiply(x, y);
+        if (products.add(xy)) {
+          worklist.push(xy);
+        }
       }
     }
-
-    Automaton classesAutomaton = Automaton.fromMonoid(monoid, alphabetClasses, nonEmptyClasses);
-    classesAutomaton = Automaton.omega(classesAutomaton);
 
     Set<Tuple> abstraction = new HashSet<>();
     for (Tuple tuple : tuples) {
-      if (tuple.getD() == monoid.neutral()) {
-        continue;
-      }
-
-      Automaton tupleAutomaton = concretize(tuple);
-      if (!Automaton.isIntersectionBuechiEmpty(classesAutomaton, tupleAutomaton)) {
+      if (tuple.getD() != monoid.neutral()
+              && products.contains(tuple.getC()) && products.contains(tuple.getD())) {
         abstraction.add(tuple);
       }
     }
@@ -237,15 +255,4 @@ public class AutomatonAbstractDomain extends AbstractDomain {
     return closure(abstraction);
   }
 
-  public Set<Tuple> concat(Set<Integer> classes, Set<Tuple> tuples) {
-    Set<Tuple> output = new HashSet<>();
-    for (Integer cls : classes) {
-      for (Tuple tuple : tuples) {
-        Tuple concatenation = new Tuple(monoid.multiply(cls, tuple.getC()), tuple.getD());
-        output.add(concatenation);
-      }
-    }
-    return output;
-  }
-
 }
@@ -42,6 +42,28 @@ public final class AllocationSiteRegion implements Region {
     this.location = Objects.requireNonNull(location);
   }
 
+  /**
+   * Construct region for objects of the given class by allocation site.
+   *
+   * @param sootClass      Class of the allocated objects, {@code null} if unknown.
+   * @param callingContext Calling context of the allocation site.
+   * @param location       Location if allocation site in source file
+   */
+  public AllocationSiteRegion(@Nullable SootClass sootClass, CallingContext callingContext,
+                              Location location) {
+    this.sootClass = sootClass;
+    this.callingContext = Objects.requireNonNull(callingContext);
+    this.location = Objects.requireNonNull(location);
+  }
+
+  public CallingContext getCallingContext() {
+    return callingContext;
+  }
+
+  public Location getLocation() {
+    return location;
+  }
+
   @Override
   public boolean impossible(SootMethodRef m) {
     // Actual class is not known.
@@ -60,15 +82,18 @@ public final class AllocationSiteRegion implements Region {
     // {@code sootClass} inherits the method in {@code m}.
     // The following code checks if the class in {@code sootClass} inherits the method in {@code m}
     // without overriding it.
-    FastHierarchy h = Scene.v().getFastHierarchy();
-    if (h.isSubclass(sootClass, m.getDeclaringClass())) {
-      // Resolve the method reference at the subclass
-      SootMethodRef mAtSootClassRef = Scene.v().makeMethodRef(sootClass, m.getName(),
-              m.getParameterTypes(), m.getReturnType(), m.isStatic());
-      SootMethod inheritedMethod = mAtSootClassRef.tryResolve();
-      if (inheritedMethod != null) {
-        // The given method reference can only be executed if it is the one that is inherited.
-        return !inheritedMethod.getDeclaringClass().equals(m.getDeclaringClass());
+    // Soot is not thread-safe; concurrent analyses query it under the lock of the scene.
+    synchronized (Scene.v()) {
+      FastHierarchy h = Scene.v().getFastHierarchy();
+      if (h.isSubclass(sootClass, m.getDeclaringClass())) {
+        // Resolve the method reference at the subclass
+        SootMethodRef mAtSootClassRef = Scene.v().makeMethodRef(sootClass, m.getName(),
+                m.getParameterTypes(), m.getReturnType(), m.isStatic());
+        SootMethod inheritedMethod = mAtSootClassRef.tryResolve();
+        if (inheritedMethod != null) {
+          // The given method reference can only be executed if it is the one that is inherited.
+          return !inheritedMethod.getDeclaringClass().equals(m.getDeclaringClass());
+        }
       }
     }
 
@@ -12,6 +12,10 @@ public class InputRegion implements Region {
     this.id = id;
   }
 
+  public int getId() {
+    return id;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
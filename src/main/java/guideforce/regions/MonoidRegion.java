@@ -13,6 +13,10 @@ public class MonoidRegion implements Region {
     this.value = value;
   }
 
+  public int getValue() {
+    return value;
+  }
+
   public AbstractDomain.Finitary asFinitary() {
     return abstractDomain.makeFinitary(value);
   }
@@ -0,0 +1,81 @@
+package guideforce.regions;
+
+import soot.SootMethodRef;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Region of a value that lies in one of several regions. Union regions only appear in the
+ * environments of the finitary analysis, when the environments of several paths have been
+ * joined into one. A statement that uses a local in a union region is analysed for each of
+ * its members.
+ */
+@Immutable
+public final class UnionRegion implements Region {
+  @Nonnull
+  private final Set<Region> members;
+
+  private UnionRegion(Set<Region> members) {
+    this.members = members;
+  }
+
+  /**
+   * Returns the region of a value that lies in {@code r1} or in {@code r2}, where
+   * {@code null} stands for no region. The result is a union region only if it has more than
+   * one member. Union regions are never nested.
+   */
+  public static Region of(Region r1, Region r2) {
+    if (r1 == null || r1.equals(r2)) {
+      return r2;
+    }
+    if (r2 == null) {
+      return r1;
+    }
+    Set<Region> members = new HashSet<>();
+    addMembers(members, r1);
+    addMembers(members, r2);
+    return members.size() == 1 ? members.iterator().next() :
+            new UnionRegion(Collections.unmodifiableSet(members));
+  }
+
+  private static void addMembers(Set<Region> members, Region r) {
+    if (r instanceof UnionRegion) {
+      members.addAll(((UnionRegion) r).members);
+    } else {
+      members.add(r);
+    }
+  }
+
+  public Set<Region> getMembers() {
+    return members;
+  }
+
+  @Override
+  public boolean impossible(SootMethodRef m) {
+    return members.stream().allMatch(r -> r.impossible(m));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    UnionRegion that = (UnionRegion) o;
+    return members.equals(that.members);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(members);
+  }
+
+  @Override
+  public String toString() {
+    return members.stream().map(Region::toString).collect(Collectors.joining(" | ", "(", ")"));
+  }
+}
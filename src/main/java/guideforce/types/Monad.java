@@ -6,11 +6,21 @@ import guideforce.policy.AbstractDomain.Finitary;
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.Immutable;
 import java.util.*;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
+/**
+ * Choices of values with the effects that lead to them.
+ * <p>
+ * Most monads have only a few choices. The choices of the monads that are built by the
+ * operations of this class are therefore kept in arrays, which are searched linearly, as long
+ * as there are at most {@link #SMALL} of them, and in a hash map otherwise.
+ */
 @Immutable
 public final class Monad<A> {
+  private static final int SMALL = 4;
+
   @Nonnull
   private final AbstractDomain domain;
   @Nonnull
@@ -30,89 +40,88 @@ public final class Monad<A> {
   }
 
   public static <A> Monad<A> cases(AbstractDomain domain, Set<A> value) {
-    HashMap<A, Finitary> result = new HashMap<>();
+    Choices<A> result = new Choices<>(value.size());
     for (A v : value) {
       result.put(v, domain.oneFinitary());
     }
-    return new Monad<>(domain, result);
+    return result.toMonad(domain);
   }
 
   public <B> Monad<B> then(Function<A, Monad<B>> f) {
-    HashMap<B, Finitary> result = new HashMap<>();
-    for (Map.Entry<A,Finitary> choice : this.choices.entrySet()) {
+    if (choices.size() == 1) {
+      Map.Entry<A, Finitary> choice = choices.entrySet().iterator().next();
       Monad<B> x = f.apply(choice.getKey());
-      Finitary first = choice.getValue();
-      for (Map.Entry<B,Finitary> y : x.choices.entrySet()) {
-        B v = y.getKey();
-        Finitary second = y.getValue();
-        result.computeIfPresent(v, (v1, e) -> e.join(first.multiply(second)));
-        result.putIfAbsent(v, first.multiply(second));
-      }
+      // The unit effect, e.g. of pure, leaves the effects of x unchanged
+      return choice.getValue() == domain.oneFinitary() ? x : x.thenLeft(choice.getValue());
     }
-    return new Monad<>(domain, result);
+    Choices<B> result = new Choices<>(choices.size());
+    forEachChoice((a, first) -> f.apply(a).forEachChoice((v, second) ->
+            result.join(v, first.multiply(second))));
+    return result.toMonad(domain);
+  }
+
+  /**
+   * Returns this monad with {@code effect} before the effect of each choice.
+   */
+  private Monad<A> thenLeft(Finitary effect) {
+    Choices<A> result = new Choices<>(choices.size());
+    forEachChoice((v, e) -> result.put(v, effect.multiply(e)));
+    return result.toMonad(domain);
   }
 
+  @SuppressWarnings("unchecked")
   public <B, C, D> Triple<Monad<B>, Monad<C>, Monad<D>> tripleThen(Function<A, Triple<Monad<B>, Monad<C>, Monad<D>>> f) {
-    HashMap<B, Finitary> mb = new HashMap<>();
-    HashMap<C, Finitary> mc = new HashMap<>();
-    HashMap<D, Finitary> md = new HashMap<>();
-    for (Map.Entry<A,Finitary> choice : this.choices.entrySet()) {
-      Triple triple = f.apply(choice.getKey());
-      Finitary ea = choice.getValue();
+    Choices<B> mb = new Choices<>(choices.size());
+    Choices<C> mc = new Choices<>(choices.size());
+    Choices<D> md = new Choices<>(choices.size());
+    forEachChoice((a, ea) -> {
+      Triple triple = f.apply(a);
       if (triple.getFirst() != null) {
-        for (Map.Entry<B,Finitary> x : ((Monad<B>) triple.getFirst()).choices.entrySet()) {
-        B b = x.getKey();
-        Finitary eb = ea.multiply(x.getValue());
-        mb.computeIfPresent(b, (b1, e) -> e.join(eb));
-        mb.putIfAbsent(b, eb);
-        }
+        ((Monad<B>) triple.getFirst()).forEachChoice((b, e) -> mb.join(b, ea.multiply(e)));
       }
       if (triple.getSecond() != null) {
-        for (Map.Entry<C,Finitary> x : ((Monad<C>) triple.getSecond()).choices.entrySet()) {
-          C c = x.getKey();
-          Finitary ec = ea.multiply(x.getValue());
-          mc.computeIfPresent(c, (c1, e) -> e.join(ec));
-          mc.putIfAbsent(c, ec);
-        }
+        ((Monad<C>) triple.getSecond()).forEachChoice((c, e) -> mc.join(c, ea.multiply(e)));
       }
       if (triple.getThird() != null) {
-        for (Map.Entry<D,Finitary> x : ((Monad<D>) triple.getThird()).choices.entrySet()) {
-          D d = x.getKey();
-          Finitary ed = ea.multiply(x.getValue());
-          md.computeIfPresent(d, (d1, e) -> e.join(ed));
-          md.putIfAbsent(d, ed);
-        }
+        ((Monad<D>) triple.getThird()).forEachChoice((d, e) -> md.join(d, ea.multiply(e)));
       }
-    }
-    return new Triple<>(new Monad<>(domain, mb), new Monad<>(domain, mc), new Monad<>(domain, md));
+    });
+    return new Triple<>(mb.toMonad(domain), mc.toMonad(domain), md.toMonad(domain));
   }
 
 
 
   public Monad<A> then(Finitary effect) {
-    HashMap<A, Finitary> result = new HashMap<>(this.choices.size());
-    for (Map.Entry<A,Finitary> choice : this.choices.entrySet()) {
-      A v = choice.getKey();
-      Finitary e = choice.getValue();
-      result.put(v, e.multiply(effect));
+    if (effect == domain.oneFinitary()) {
+      return this;
     }
-    return new Monad<>(this.domain, result);
+    Choices<A> result = new Choices<>(choices.size());
+    forEachChoice((v, e) -> result.put(v, e.multiply(effect)));
+    return result.toMonad(domain);
   }
 
   public <B> Monad<B> map(Function<A, B> f) {
-    HashMap<B, Finitary> result = new HashMap<>(this.choices.size());
-    for (Map.Entry<A,Finitary> choice : this.choices.entrySet()) {
-      A v = choice.getKey();
-      Finitary e = choice.getValue();
-      result.put(f.apply(v), e);
-    }
-    return new Monad<>(this.domain, result);
+    Choices<B> result = new Choices<>(choices.size());
+    // f need not be injective; the effects of choices that it maps to the same value are joined
+    forEachChoice((v, e) -> result.join(f.apply(v), e));
+    return result.toMonad(domain);
   }
 
   public Monad<A> remove(A key) {
-    HashMap<A, Finitary> result = new HashMap<>(choices);
-    result.remove(key);
-    return new Monad<>(domain, result);
+    if (!choices.containsKey(key)) {
+      return this;
+    }
+    Choices<A> result = new Choices<>(choices.size());
+    forEachChoice((v, e) -> {
+      if (!Objects.equals(v, key)) {
+        result.put(v, e);
+      }
+    });
+    return result.toMonad(domain);
+  }
+
+  private void forEachChoice(BiConsumer<A, Finitary> action) {
+    choices.forEach(action);
   }
 
   public Finitary get(A key) {
@@ -125,25 +134,33 @@ public final class Monad<A> {
   }
 
   public Monad<A> join(Monad<A> other) {
-    HashMap<A, Finitary> merged = new HashMap<>(this.choices.size() + other.choices.size());
-    for (Map.Entry<A,Finitary> entry : choices.entrySet()) {
-      A v = entry.getKey();
-      Finitary vType1 = entry.getValue();
-      if (other.choices.containsKey(v)) {
-        Finitary vType2 = other.choices.get(v);
-        merged.put(v, vType1.join(vType2));
-      } else {
-        merged.put(v, vType1);
-      }
+    if (this == other || other.choices.isEmpty()) {
+      return this;
     }
-    for (Map.Entry<A,Finitary> entry : other.choices.entrySet()) {
-      A v = entry.getKey();
-      Finitary vType2 = entry.getValue();
-      if (!choices.containsKey(v)) {
-        merged.put(v, vType2);
+    if (choices.isEmpty()) {
+      return other;
+    }
+    Choices<A> merged = new Choices<>(this.choices.size() + other.choices.size());
+    forEachChoice(merged::put);
+    other.forEachChoice(merged::join);
+    return merged.toMonad(domain);
+  }
+
+  /**
+   * Returns true if joining this monad into {@code other} leaves {@code other} unchanged,
+   * i.e. if every choice of this monad is a choice of {@code other} with a larger effect.
+   */
+  public boolean isIncludedIn(Monad<A> other) {
+    if (this == other) {
+      return true;
+    }
+    for (Map.Entry<A,Finitary> entry : choices.entrySet()) {
+      Finitary e = other.choices.get(entry.getKey());
+      if (e == null || !e.contain(entry.getValue())) {
+        return false;
       }
     }
-    return new Monad<>(domain, merged);
+    return true;
   }
 
   public static <A> Monad<List<A>> sequence(AbstractDomain domain, List<Monad<A>> a) {
@@ -201,6 +218,216 @@ public final class Monad<A> {
     return choices.values().stream().reduce(domain.zeroFinitary(), Finitary::join);
   }
 
+  /**
+   * Choices under construction, in arrays until there are more than {@link #SMALL} of them.
+   */
+  private static final class Choices<A> {
+    private Object[] keys;
+    private Finitary[] effects;
+    private int size;
+    private HashMap<A, Finitary> map;
+
+    Choices(int expectedSize) {
+      if (expectedSize > SMALL) {
+        map = new HashMap<>(expectedSize * 2);
+      } else {
+        keys = new Object[SMALL];
+        effects = new Finitary[SMALL];
+      }
+    }
+
+    /**
+     * Sets the effect of {@code key}, replacing any previous one as {@link HashMap#put} does.
+     */
+    void put(A key, Finitary effect) {
+      if (map != null) {
+        map.put(key, effect);
+        return;
+      }
+      for (int i = 0; i < size; i++) {
+        if (Objects.equals(keys[i], key)) {
+          effects[i] = effect;
+          return;
+        }
+      }
+      add(key, effect);
+    }
+
+    /**
+     * Joins {@code effect} into the effect of {@code key}.
+     */
+    void join(A key, Finitary effect) {
+      if (map != null) {
+        map.merge(key, effect, Finitary::join);
+        return;
+      }
+      for (int i = 0; i < size; i++) {
+        if (Objects.equals(keys[i], key)) {
+          effects[i] = effects[i].join(effect);
+          return;
+        }
+      }
+      add(key, effect);
+    }
+
+    /**
+     * Adds {@code key}, which has no effect yet, to the arrays.
+     */
+    private void add(A key, Finitary effect) {
+      if (size < SMALL) {
+        keys[size] = key;
+        effects[size] = effect;
+        size++;
+      } else {
+        promote();
+        map.put(key, effect);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void promote() {
+      map = new HashMap<>(4 * SMALL);
+      for (int i = 0; i < size; i++) {
+        map.put((A) keys[i], effects[i]);
+      }
+      keys = null;
+      effects = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    Monad<A> toMonad(AbstractDomain domain) {
+      if (map != null) {
+        return new Monad<>(domain, map);
+      }
+      switch (size) {
+        case 0:
+          return empty(domain);
+        case 1:
+          return new Monad<>(domain, Collections.singletonMap((A) keys[0], effects[0]));
+        default:
+          return new Monad<>(domain, new SmallMap<>(Arrays.copyOf(keys, size),
+                  Arrays.copyOf(effects, size)));
+      }
+    }
+  }
+
+  /**
+   * Immutable map of a few choices in parallel arrays, which are searched linearly.
+   */
+  private static final class SmallMap<A> extends AbstractMap<A, Finitary> {
+    private final Object[] keys;
+    private final Finitary[] effects;
+
+    SmallMap(Object[] keys, Finitary[] effects) {
+      assert distinct(keys) : Arrays.toString(keys);
+      this.keys = keys;
+      this.effects = effects;
+    }
+
+    private static boolean distinct(Object[] keys) {
+      for (int i = 0; i < keys.length; i++) {
+        for (int j = i + 1; j < keys.length; j++) {
+          if (Objects.equals(keys[i], keys[j])) {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+
+    private int indexOf(Object key) {
+      for (int i = 0; i < keys.length; i++) {
+        if (Objects.equals(keys[i], key)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    public int size() {
+      return keys.length;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Finitary get(Object key) {
+      int i = indexOf(key);
+      return i < 0 ? null : effects[i];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super A, ? super Finitary> action) {
+      for (int i = 0; i < keys.length; i++) {
+        action.accept((A) keys[i], effects[i]);
+      }
+    }
+
+    @Override
+    public Set<Map.Entry<A, Finitary>> entrySet() {
+      return new AbstractSet<Map.Entry<A, Finitary>>() {
+        @Override
+        public Iterator<Map.Entry<A, Finitary>> iterator() {
+          return new Iterator<Map.Entry<A, Finitary>>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+              return i < keys.length;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public Map.Entry<A, Finitary> next() {
+              if (i >= keys.length) {
+                throw new NoSuchElementException();
+              }
+              Map.Entry<A, Finitary> entry =
+                      new AbstractMap.SimpleImmutableEntry<>((A) keys[i], effects[i]);
+              i++;
+              return entry;
+            }
+          };
+        }
+
+        @Override
+        public int size() {
+          return keys.length;
+        }
+      };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Map)) return false;
+      Map<?, ?> that = (Map<?, ?>) o;
+      if (that.size() != keys.length) {
+        return false;
+      }
+      for (int i = 0; i < keys.length; i++) {
+        if (!effects[i].equals(that.get(keys[i]))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      int h = 0;
+      for (int i = 0; i < keys.length; i++) {
+        h += Objects.hashCode(keys[i]) ^ effects[i].hashCode();
+      }
+      return h;
+    }
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
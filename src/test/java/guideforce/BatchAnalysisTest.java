@@ -0,0 +1,78 @@
+package guideforce;
+
+import guideforce.interproc.AnalysisOptions;
+import guideforce.interproc.InterProcAnalysis;
+import guideforce.policy.ABCPolicy;
+import guideforce.policy.BinaryPolicy;
+import guideforce.policy.Policy;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Checks that the analysis of many entry points in one scene gives the results of separate
+ * analyses.
+ */
+public class BatchAnalysisTest {
+
+    private static final String[] CLASSES = {
+            "securibench.micro.basic.Basic10",
+            "securibench.micro.basic.Basic20",
+            "securibench.micro.collections.Collections1",
+            "securibench.micro.inter.Inter1",
+            "securibench.micro.inter.Inter4",
+            "securibench.micro.session.Session1",
+    };
+
+    /**
+     * The result of an analysis at its entry point, which can be compared across scenes.
+     */
+    private static String result(InterProcAnalysis analysis) {
+        return analysis.getTypeAndEffectsAtEntryPoint().toString();
+    }
+
+    @Test
+    public void entryPointsOfSeveralClasses() {
+        Map<String, String> separate = new LinkedHashMap<>();
+        for (String className : CLASSES) {
+            TSA tsa = Scenes.setUp(className);
+            InterProcAnalysis analysis = tsa.run(new BinaryPolicy(), 1, "doGet");
+            assertNotNull(className, analysis);
+            separate.put(className, result(analysis));
+        }
+
+        TSA tsa = Scenes.setUp(CLASSES[0], CLASSES);
+        List<String> entryPoints = new ArrayList<>();
+        for (String className : CLASSES) {
+            entryPoints.add(Scenes.method(className, "doGet").getSignature());
+        }
+        Map<String, InterProcAnalysis> batch = tsa.runAll(new BinaryPolicy(), 1, entryPoints);
+        assertEquals(entryPoints, new ArrayList<>(batch.keySet()));
+        for (int i = 0; i < CLASSES.length; i++) {
+            InterProcAnalysis analysis = batch.get(entryPoints.get(i));
+            assertNotNull(CLASSES[i], analysis);
+            assertEquals(CLASSES[i], separate.get(CLASSES[i]), result(analysis));
+        }
+    }
+
+    @Test
+    public void entryPointsOfTheMainClass() {
+        String className = "mytestcases.infinitary.Recursion3";
+        String[] methods = {"mutualRecursion", "f", "g"};
+        Policy policy = new ABCPolicy();
+
+        TSA tsa = Scenes.setUp(className);
+        List<String> separate = new ArrayList<>();
+        for (String method : methods) {
+            separate.add(result(tsa.run(policy, 1, method)));
+        }
+
+        Map<String, InterProcAnalysis> batch = tsa.runAll(policy, 1, Arrays.asList(methods));
+        for (int i = 0; i < methods.length; i++) {
+            assertEquals(methods[i], separate.get(i), result(batch.get(methods[i])));
+        }
+    }
+}
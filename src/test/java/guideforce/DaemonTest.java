@@ -0,0 +1,160 @@
+package guideforce;
+
+import guideforce.interproc.AnalysisOptions;
+import guideforce.interproc.EffectType;
+import guideforce.interproc.InterProcAnalysis;
+import guideforce.policy.ABCPolicy;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the protocol of the analysis daemon.
+ */
+public class DaemonTest {
+
+    private static final String CLASS = "mytestcases.infinitary.Recursion3";
+
+    private static List<Map<String, Object>> serve(Daemon daemon, String... requests)
+            throws IOException {
+        StringWriter out = new StringWriter();
+        daemon.serve(new StringReader(String.join("\n", requests)), out);
+        List<Map<String, Object>> responses = new ArrayList<>();
+        for (String line : out.toString().split("\n")) {
+            responses.add(Daemon.Json.parseObject(line));
+        }
+        return responses;
+    }
+
+    @Test
+    public void responsesGiveTheResultsOfTheAnalyses() throws IOException {
+        TSA tsa = Scenes.setUp(CLASS);
+        InterProcAnalysis analysis = tsa.run(new ABCPolicy(), 1, "mutualRecursion");
+        assertNotNull(analysis);
+        EffectType expected = analysis.getTypeAndEffectsAtEntryPoint();
+
+        Daemon daemon = new Daemon(tsa, AnalysisOptions.DEFAULT);
+        String request = "{\"id\": %d, \"class\": \"" + CLASS + "\", "
+                + "\"method\": \"mutualRecursion\", \"policy\": \"ABCPolicy\", \"k\": 1%s}";
+        List<Map<String, Object>> responses = serve(daemon,
+                String.format(request, 1, ""),
+                "",
+                String.format(request, 2, ", \"report\": true"));
+
+        assertEquals(2, responses.size());
+        for (Map<String, Object> response : responses) {
+            assertEquals("ok", response.get("status"));
+            assertEquals(expected.getType().toString(), response.get("type"));
+            assertEquals(expected.getAggregateFinitary().toString(), response.get("finitary"));
+            assertEquals(expected.getInfinitary().getConstantTerm().toString(),
+                    response.get("infinitary"));
+            assertEquals(0L, response.get("widened"));
+            assertTrue(response.get("millis") instanceof Long);
+        }
+        assertEquals(1L, responses.get(0).get("id"));
+        assertEquals(2L, responses.get(1).get("id"));
+        assertFalse(responses.get(0).containsKey("report"));
+        assertEquals(analysis.analysisResult(), responses.get(1).get("report"));
+    }
+
+    @Test
+    public void classesAreLoadedOnDemand() throws IOException {
+        Daemon daemon = new Daemon(Scenes.setUp(CLASS), AnalysisOptions.DEFAULT);
+        List<Map<String, Object>> responses = serve(daemon,
+                "{\"id\": \"a\", \"class\": \"securibench.micro.basic.Basic10\", "
+                        + "\"method\": \"doGet\"}");
+        assertEquals("a", responses.get(0).get("id"));
+        assertEquals("ok", responses.get(0).get("status"));
+        assertEquals(false, responses.get(0).get("accepted"));
+    }
+
+    @Test
+    public void invalidRequestsAreAnsweredWithErrors() throws IOException {
+        Daemon daemon = new Daemon(Scenes.setUp(CLASS), AnalysisOptions.DEFAULT);
+        List<Map<String, Object>> responses = serve(daemon,
+                "{\"id\": 1",
+                "{\"id\": 2, \"class\": \"" + CLASS + "\"}",
+                "{\"id\": 3, \"class\": \"" + CLASS + "\", \"method\": \"f\", \"k\": \"one\"}",
+                "{\"id\": 4, \"class\": \"" + CLASS + "\", \"method\": \"f\", "
+                        + "\"policy\": \"NoPolicy\"}",
+                "{\"id\": 5, \"class\": \"" + CLASS + "\", \"method\": \"noSuchMethod\"}",
+                "{\"id\": 6, \"class\": \"" + CLASS + "\", \"method\": \"f\"}");
+
+        assertEquals(6, responses.size());
+        assertEquals(null, responses.get(0).get("id"));
+        for (int i = 0; i < 5; i++) {
+            assertEquals("error", responses.get(i).get("status"));
+            assertTrue(responses.get(i).get("message") instanceof String);
+        }
+        for (int i = 1; i < 6; i++) {
+            assertEquals((long) i + 1, responses.get(i).get("id"));
+        }
+        assertEquals("ok", responses.get(5).get("status"));
+    }
+
+    private static boolean notAPolicyInitialised;
+
+    /**
+     * A class that is not a policy, and that records whether it has been initialised.
+     */
+    public static final class NotAPolicy {
+        static {
+            notAPolicyInitialised = true;
+        }
+    }
+
+    @Test
+    public void classesThatAreNotPoliciesAreNotInitialised() throws IOException {
+        Daemon daemon = new Daemon(Scenes.setUp(CLASS), AnalysisOptions.DEFAULT);
+        List<Map<String, Object>> responses = serve(daemon,
+                "{\"id\": 1, \"class\": \"" + CLASS + "\", \"method\": \"f\", "
+                        + "\"policy\": \"" + NotAPolicy.class.getName() + "\"}",
+                "{\"id\": 2, \"class\": \"" + CLASS + "\", \"method\": \"f\", "
+                        + "\"policy\": \"java.lang.String\"}");
+
+        for (Map<String, Object> response : responses) {
+            assertEquals("error", response.get("status"));
+            assertTrue(response.get("message").toString().contains("is not a policy"));
+        }
+        assertFalse(notAPolicyInitialised);
+    }
+
+    @Test
+    public void contextDepthsOutsideTheRangeOfIntAreErrors() throws IOException {
+        Daemon daemon = new Daemon(Scenes.setUp(CLASS), AnalysisOptions.DEFAULT);
+        String request = "{\"id\": %d, \"class\": \"" + CLASS + "\", \"method\": \"f\", "
+                + "\"k\": %d}";
+        long[] depths = {0, -1, 1L << 32 | 1, Integer.MAX_VALUE + 1L, 2};
+        String[] requests = new String[depths.length];
+        for (int i = 0; i < depths.length; i++) {
+            requests[i] = String.format(request, i, depths[i]);
+        }
+        List<Map<String, Object>> responses = serve(daemon, requests);
+
+        assertEquals(depths.length, responses.size());
+        for (int i = 0; i < depths.length - 1; i++) {
+            assertEquals(String.valueOf(depths[i]), "error", responses.get(i).get("status"));
+        }
+        assertEquals("ok", responses.get(depths.length - 1).get("status"));
+    }
+
+    @Test
+    public void jsonRoundTrip() {
+        Map<String, Object> object = new LinkedHashMap<>();
+        object.put("id", 7L);
+        object.put("text", "a \"quoted\"\tline\nwith \\ and \u0001");
+        object.put("flag", true);
+        object.put("none", null);
+        String json = Daemon.Json.write(object);
+        assertFalse(json.contains("\n"));
+        assertEquals(object, Daemon.Json.parseObject(json));
+    }
+}
@@ -0,0 +1,160 @@
+package guideforce;
+
+import guideforce.interproc.AnalysisOptions;
+import guideforce.interproc.InterProcAnalysis;
+import guideforce.policy.ABCPolicy;
+import guideforce.policy.BinaryPolicy;
+import guideforce.policy.Policy;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that an analysis that resumes from the snapshot of a previous analysis gives the
+ * result of an analysis from scratch.
+ */
+public class FixpointSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private InterProcAnalysis analyse(String className, String methodName, Policy policy,
+                                      AnalysisOptions options) {
+        InterProcAnalysis analysis = Scenes.setUp(className).run(policy, 1, methodName, options);
+        assertNotNull(className + "." + methodName, analysis);
+        return analysis;
+    }
+
+    private static long files(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private void resume(String className, String methodName, Supplier<Policy> policy)
+            throws IOException {
+        Path directory = folder.newFolder().toPath();
+        AnalysisOptions options = AnalysisOptions.DEFAULT.withSnapshotDirectory(directory);
+
+        InterProcAnalysis fresh = analyse(className, methodName, policy.get(), options);
+        assertEquals(1, files(directory));
+        InterProcAnalysis resumed = analyse(className, methodName, policy.get(), options);
+
+        String name = className + "." + methodName;
+        assertEquals(name, fresh.getTypeAndEffectsAtEntryPoint().toString(),
+                resumed.getTypeAndEffectsAtEntryPoint().toString());
+        assertTrue(name, resumed.getMetrics().getFlowComputations()
+                < fresh.getMetrics().getFlowComputations());
+    }
+
+    @Test
+    public void resumedAnalysesGiveTheSameResults() throws IOException {
+        resume("securibench.micro.basic.Basic10", "doGet", BinaryPolicy::new);
+        resume("securibench.micro.inter.Inter4", "doGet", BinaryPolicy::new);
+        resume("securibench.micro.collections.Collections1", "doGet", BinaryPolicy::new);
+        resume("mytestcases.infinitary.Recursion3", "mutualRecursion", ABCPolicy::new);
+        resume("mytestcases.exceptions.ExceptionExample9", "throwExceptionsInLoop",
+                ABCPolicy::new);
+    }
+
+    @Test
+    public void snapshotsOfAnotherDomainAreNotUsed() throws IOException {
+        String className = "mytestcases.infinitary.WhileLoop6";
+        String methodName = "loopWithMethodCall";
+        AnalysisOptions options =
+                AnalysisOptions.DEFAULT.withSnapshotDirectory(folder.newFolder().toPath());
+
+        analyse(className, methodName, new BinaryPolicy(), options);
+        InterProcAnalysis other = analyse(className, methodName, new ABCPolicy(), options);
+        InterProcAnalysis fresh =
+                analyse(className, methodName, new ABCPolicy(), AnalysisOptions.DEFAULT);
+        assertEquals(fresh.getTypeAndEffectsAtEntryPoint().toString(),
+                other.getTypeAndEffectsAtEntryPoint().toString());
+        assertEquals(fresh.getMetrics().getFlowComputations(),
+                other.getMetrics().getFlowComputations());
+    }
+
+    /**
+     * Inverts the digest that the snapshot {@code file} records for the class file of
+     * {@code className}, as if the class had changed since the snapshot was written.
+     */
+    private static void changeDigest(Path file, String className) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file));
+             DataOutputStream out = new DataOutputStream(buffer)) {
+            out.writeInt(in.readInt()); // magic
+            out.writeInt(in.readInt()); // format version
+            out.writeLong(in.readLong()); // domain
+            out.writeLong(in.readLong()); // type pool
+            out.writeUTF(in.readUTF()); // entry point
+            int n = in.readInt();
+            out.writeInt(n);
+            boolean found = false;
+            for (int i = 0; i < n; i++) {
+                String name = in.readUTF();
+                long digest = in.readLong();
+                found |= name.equals(className);
+                out.writeUTF(name);
+                out.writeLong(name.equals(className) ? ~digest : digest);
+            }
+            assertTrue(className, found);
+            byte[] rest = new byte[1 << 12];
+            for (int read; (read = in.read(rest)) > 0; ) {
+                out.write(rest, 0, read);
+            }
+        }
+        Files.write(file, buffer.toByteArray());
+    }
+
+    private static Set<String> analysedMethods(InterProcAnalysis analysis) {
+        return new TreeSet<>(analysis.getMetrics().getHotMethods(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void changedClassInvalidatesOnlyItsEntries() throws IOException {
+        String className = "securibench.micro.collections.Collections1";
+        Path directory = folder.newFolder().toPath();
+        AnalysisOptions options = AnalysisOptions.DEFAULT.withSnapshotDirectory(directory);
+
+        InterProcAnalysis fresh = analyse(className, "doGet", new BinaryPolicy(), options);
+        Path file;
+        try (Stream<Path> files = Files.list(directory)) {
+            file = files.findFirst().orElseThrow(AssertionError::new);
+        }
+        // The mock class provides the bodies of the methods of java.util.LinkedList.
+        changeDigest(file, "mockup.misc.LinkedList");
+        InterProcAnalysis resumed = analyse(className, "doGet", new BinaryPolicy(), options);
+
+        assertEquals(fresh.getTypeAndEffectsAtEntryPoint().toString(),
+                resumed.getTypeAndEffectsAtEntryPoint().toString());
+
+        // Only the methods of the changed class and the entry point, which reads them, are
+        // analysed again; the entries of the servlet and writer methods are restored.
+        Set<String> expected = new TreeSet<>();
+        for (String m : analysedMethods(fresh)) {
+            if (m.startsWith("<java.util.LinkedList: ") || m.startsWith("<" + className + ": ")) {
+                expected.add(m);
+            }
+        }
+        // three methods of the list and the entry point
+        assertEquals(4, expected.size());
+        assertEquals(expected, analysedMethods(resumed));
+        assertTrue(resumed.getMetrics().getFlowComputations()
+                < fresh.getMetrics().getFlowComputations());
+    }
+}
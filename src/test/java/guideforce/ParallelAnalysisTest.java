@@ -0,0 +1,86 @@
+package guideforce;
+
+import guideforce.interproc.AnalysisOptions;
+import guideforce.interproc.InterProcAnalysis;
+import guideforce.policy.ABCPolicy;
+import guideforce.policy.BinaryPolicy;
+import guideforce.policy.Policy;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Checks that the parallel mode of the finitary fixpoint gives the results of the sequential
+ * mode on cases of the evaluation.
+ */
+public class ParallelAnalysisTest {
+
+    private static final AnalysisOptions PARALLEL = AnalysisOptions.DEFAULT.withParallelism(4);
+
+    private static final String[] SECURIBENCH = {
+            "securibench.micro.aliasing.Aliasing1",
+            "securibench.micro.basic.Basic10",
+            "securibench.micro.basic.Basic20",
+            "securibench.micro.collections.Collections1",
+            "securibench.micro.datastructures.Datastructures1",
+            "securibench.micro.factories.Factories1",
+            "securibench.micro.inter.Inter1",
+            "securibench.micro.inter.Inter4",
+            "securibench.micro.inter.Inter9",
+            "securibench.micro.sanitizers.Sanitizers1",
+            "securibench.micro.session.Session1",
+            "securibench.micro.strong_updates.StrongUpdates1",
+    };
+
+    private void compare(String className, String methodName, Policy policy) {
+        TSA tsa = Scenes.setUp(className);
+        InterProcAnalysis sequential = tsa.run(policy, 1, methodName, AnalysisOptions.DEFAULT);
+        InterProcAnalysis parallel = tsa.run(policy, 1, methodName, PARALLEL);
+        assertNotNull(className, sequential);
+        assertNotNull(className, parallel);
+        assertEquals(className, sequential.getTypeAndEffectsAtEntryPoint(),
+                parallel.getTypeAndEffectsAtEntryPoint());
+        assertEquals(className, sequential.getWidenedEntries(), parallel.getWidenedEntries());
+    }
+
+    @Test
+    public void securibench() {
+        for (String className : SECURIBENCH) {
+            compare(className, "doGet", new BinaryPolicy());
+        }
+    }
+
+    @Test
+    public void infinitaryEffects() {
+        compare("mytestcases.paperexamples.Test", "linear", new ABCPolicy());
+        compare("mytestcases.infinitary.WhileLoop6", "loopWithMethodCall", new ABCPolicy());
+        compare("mytestcases.infinitary.Recursion3", "mutualRecursion", new ABCPolicy());
+        compare("mytestcases.exceptions.ExceptionExample9", "throwExceptionsInLoop",
+                new ABCPolicy());
+    }
+
+    @Test
+    public void batch() {
+        TSA tsa = Scenes.setUp(SECURIBENCH[0], SECURIBENCH);
+        List<String> entryPoints = new ArrayList<>();
+        for (String className : SECURIBENCH) {
+            entryPoints.add(Scenes.method(className, "doGet").getSignature());
+        }
+        Policy policy = new BinaryPolicy();
+        Map<String, InterProcAnalysis> sequential =
+                tsa.runAll(policy, 1, entryPoints, AnalysisOptions.DEFAULT);
+        Map<String, InterProcAnalysis> parallel = tsa.runAll(policy, 1, entryPoints, PARALLEL);
+        assertEquals(entryPoints, new ArrayList<>(parallel.keySet()));
+        for (String entryPoint : entryPoints) {
+            assertNotNull(entryPoint, sequential.get(entryPoint));
+            assertNotNull(entryPoint, parallel.get(entryPoint));
+            assertEquals(entryPoint, sequential.get(entryPoint).getTypeAndEffectsAtEntryPoint(),
+                    parallel.get(entryPoint).getTypeAndEffectsAtEntryPoint());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package guideforce;
+
+import guideforce.interproc.CallingContext;
+import guideforce.interproc.EffectType;
+import guideforce.interproc.MethodTable;
+import guideforce.policy.AbstractDomain;
+import guideforce.regions.InputRegion;
+import guideforce.regions.Region;
+import guideforce.regions.SpecialRegion;
+import soot.G;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.VoidType;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sets up Soot scenes with the test cases for tests of the analysis, and provides the method
+ * table keys and assertions that these tests share.
+ */
+public final class Scenes {
+
+    public static final String CLASS_PATH = "build/classes/java/test/" + File.pathSeparator +
+            "build/classes/java/main/" + File.pathSeparator +
+            "lib/cos.jar" + File.pathSeparator +
+            "lib/j2ee.jar" + File.pathSeparator +
+            "lib/java2html.jar";
+
+    private static TSA tsa;
+
+    private Scenes() {
+    }
+
+    /**
+     * Resets Soot and sets up a scene with {@code className} as main application class and
+     * {@code appClasses} as further application classes.
+     */
+    static TSA setUp(String className, String... appClasses) {
+        G.reset();
+        for (String c : appClasses) {
+            Scene.v().addBasicClass(c, SootClass.BODIES);
+        }
+        tsa = new TSA(CLASS_PATH, className);
+        for (String c : appClasses) {
+            Scene.v().getSootClass(c).setApplicationClass();
+        }
+        return tsa;
+    }
+
+    /**
+     * Resets Soot, sets up a scene with {@code className} as main application class and
+     * returns its method {@code methodName}.
+     */
+    public static SootMethod load(String className, String methodName) {
+        setUp(className);
+        return method(className, methodName);
+    }
+
+    /**
+     * Returns the method {@code methodName} of {@code className} in the current scene, which
+     * loads the class if necessary.
+     */
+    public static SootMethod method(String className, String methodName) {
+        return tsa.resolveMethod(className, methodName);
+    }
+
+    /**
+     * Returns the key of the method table entry of {@code m} as an entry point with calling
+     * contexts of depth 1, as {@link guideforce.interproc.InterProcAnalysis} creates it.
+     */
+    public static MethodTable.Key entryPointKey(SootMethod m) {
+        List<Region> args = new ArrayList<>();
+        for (int i = 0; i < m.getParameterCount(); i++) {
+            args.add(new InputRegion(i));
+        }
+        return new MethodTable.Key(m.makeRef(), new CallingContext(1),
+                m.isStatic() ? SpecialRegion.STATIC_REGION : SpecialRegion.ENTRYPOINT_REGION,
+                args);
+    }
+
+    /**
+     * Returns the key of a method table entry for the static method {@code methodName} of
+     * {@code c} without parameters, which need not exist in the scene.
+     */
+    public static MethodTable.Key staticKey(SootClass c, String methodName) {
+        return new MethodTable.Key(
+                Scene.v().makeMethodRef(c, methodName, Collections.emptyList(), VoidType.v(),
+                        true),
+                new CallingContext(1), SpecialRegion.STATIC_REGION, Collections.emptyList());
+    }
+
+    /**
+     * Asserts that {@code actual} is a conservative approximation of {@code expected}: its
+     * effects contain the expected ones and its type has at least the expected regions.
+     */
+    public static void assertConservative(EffectType expected, EffectType actual) {
+        AbstractDomain.Finitary finitary = actual.getAggregateFinitary();
+        assertTrue(finitary + " should contain " + expected.getAggregateFinitary(),
+                finitary.contain(expected.getAggregateFinitary()));
+        AbstractDomain.Infinitary infinitary = actual.getInfinitary().getConstantTerm();
+        AbstractDomain.Infinitary expectedInfinitary = expected.getInfinitary().getConstantTerm();
+        assertEquals(infinitary, infinitary.join(expectedInfinitary));
+        assertTrue(actual.getType().support().containsAll(expected.getType().support()));
+    }
+}
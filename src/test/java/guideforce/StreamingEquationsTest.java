@@ -0,0 +1,68 @@
+package guideforce;
+
+import guideforce.interproc.AnalysisOptions;
+import guideforce.interproc.InterProcAnalysis;
+import guideforce.policy.ABCPolicy;
+import guideforce.policy.BinaryPolicy;
+import guideforce.policy.Policy;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that building the equations of the infinitary analysis along with the transfer
+ * functions gives the results of building them after the finitary analysis.
+ */
+public class StreamingEquationsTest {
+
+    private static final AnalysisOptions STREAMING =
+            AnalysisOptions.DEFAULT.withStreamingEquations(true);
+
+    private static void check(Policy policy, String className, String methodName,
+                              AnalysisOptions options) {
+        TSA tsa = Scenes.setUp(className);
+        InterProcAnalysis separate = tsa.run(policy, 1, methodName, options);
+        assertNotNull(methodName, separate);
+        InterProcAnalysis streaming =
+                tsa.run(policy, 1, methodName, options.withStreamingEquations(true));
+        assertNotNull(methodName, streaming);
+        assertEquals(methodName, separate.getTypeAndEffectsAtEntryPoint(),
+                streaming.getTypeAndEffectsAtEntryPoint());
+    }
+
+    @Test
+    public void recursiveMethods() {
+        check(new ABCPolicy(), "mytestcases.infinitary.Recursion3", "mutualRecursion",
+                AnalysisOptions.DEFAULT);
+        check(new ABCPolicy(), "mytestcases.infinitary.Recursion4", "factorial",
+                AnalysisOptions.DEFAULT);
+        check(new ABCPolicy(), "mytestcases.infinitary.Recursion5", "fibonacci",
+                AnalysisOptions.DEFAULT);
+    }
+
+    @Test
+    public void loopsAndExceptions() {
+        check(new ABCPolicy(), "mytestcases.infinitary.WhileLoop6", "loopWithMethodCall",
+                AnalysisOptions.DEFAULT);
+        check(new ABCPolicy(), "mytestcases.exceptions.ExceptionExample10",
+                "catchExceptionsInLoop", AnalysisOptions.DEFAULT);
+    }
+
+    @Test
+    public void servletsInParallel() {
+        check(new BinaryPolicy(), "securibench.micro.basic.Basic10", "doGet",
+                AnalysisOptions.DEFAULT.withParallelism(4));
+        check(new BinaryPolicy(), "securibench.micro.inter.Inter4", "doGet",
+                AnalysisOptions.DEFAULT.withParallelism(4));
+    }
+
+    @Test
+    public void streamingIsOffByDefault() {
+        assertFalse(AnalysisOptions.DEFAULT.isStreamingEquations());
+        assertTrue(STREAMING.isStreamingEquations());
+        assertFalse(STREAMING.withStreamingEquations(false).isStreamingEquations());
+    }
+}
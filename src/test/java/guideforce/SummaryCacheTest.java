@@ -0,0 +1,171 @@
+package guideforce;
+
+import guideforce.interproc.AnalysisOptions;
+import guideforce.interproc.InterProcAnalysis;
+import guideforce.interproc.SummaryCache;
+import guideforce.policy.ABCPolicy;
+import guideforce.policy.BinaryPolicy;
+import guideforce.policy.Policy;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that method summaries saved to a file give the same results when they are loaded
+ * in a later run.
+ */
+public class SummaryCacheTest {
+
+    private static final String[] CLASSES = {
+            "securibench.micro.basic.Basic10",
+            "securibench.micro.basic.Basic20",
+            "securibench.micro.inter.Inter1",
+            "securibench.micro.session.Session1",
+    };
+
+    /**
+     * A mock class that some, but not all, of the summaries of the classes refer to.
+     */
+    private static final String CHANGED_CLASS = "mockup.misc.PrintWriter";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String> entryPoints() {
+        List<String> entryPoints = new ArrayList<>();
+        for (String className : CLASSES) {
+            entryPoints.add(Scenes.method(className, "doGet").getSignature());
+        }
+        return entryPoints;
+    }
+
+    @Test
+    public void savedSummariesGiveTheSameResults() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("summaries.bin");
+        Policy policy = new BinaryPolicy();
+
+        TSA tsa = Scenes.setUp(CLASSES[0], CLASSES);
+        List<String> entryPoints = entryPoints();
+        Map<String, InterProcAnalysis> cold =
+                tsa.runAll(policy, 1, entryPoints, AnalysisOptions.DEFAULT, file);
+
+        // A new scene, as in a later run
+        tsa = Scenes.setUp(CLASSES[0], CLASSES);
+        SummaryCache cache = new SummaryCache(policy);
+        int loaded = cache.load(file);
+        assertTrue(loaded > 0);
+        assertEquals(loaded, cache.size());
+
+        Map<String, InterProcAnalysis> warm =
+                tsa.runAll(policy, 1, entryPoints, AnalysisOptions.DEFAULT, file);
+        assertSameResults(entryPoints, cold, warm);
+        // Entries with a loaded summary are not analysed again.
+        assertTrue(flowComputations(warm) < flowComputations(cold));
+    }
+
+    private static void assertSameResults(List<String> entryPoints,
+                                          Map<String, InterProcAnalysis> expected,
+                                          Map<String, InterProcAnalysis> actual) {
+        for (String entryPoint : entryPoints) {
+            assertNotNull(entryPoint, expected.get(entryPoint));
+            assertNotNull(entryPoint, actual.get(entryPoint));
+            assertEquals(entryPoint, expected.get(entryPoint).getTypeAndEffectsAtEntryPoint(),
+                    actual.get(entryPoint).getTypeAndEffectsAtEntryPoint());
+        }
+    }
+
+    private static long flowComputations(Map<String, InterProcAnalysis> analyses) {
+        long result = 0;
+        for (InterProcAnalysis analysis : analyses.values()) {
+            result += analysis.getMetrics().getFlowComputations();
+        }
+        return result;
+    }
+
+    /**
+     * Inverts all digests of the class file of {@code className} in the summary file
+     * {@code file}, as if the class had changed since the summaries were saved.
+     */
+    private static void changeDigest(Path file, String className) throws IOException {
+        byte[] digest;
+        try (InputStream in = SummaryCacheTest.class.getClassLoader()
+                .getResourceAsStream(className.replace('.', '/') + ".class")) {
+            assertNotNull(className, in);
+            ByteArrayOutputStream classFile = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                classFile.write(buffer, 0, n);
+            }
+            // The first eight bytes of the SHA-256 hash, as stored by the cache
+            digest = Arrays.copyOf(sha256(classFile.toByteArray()), 8);
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        int changed = 0;
+        for (int i = 0; i + digest.length <= bytes.length; i++) {
+            if (Arrays.equals(digest, Arrays.copyOfRange(bytes, i, i + digest.length))) {
+                for (int j = 0; j < digest.length; j++) {
+                    bytes[i + j] = (byte) ~bytes[i + j];
+                }
+                changed++;
+            }
+        }
+        assertTrue(className, changed > 0);
+        Files.write(file, bytes);
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    public void summariesOfChangedClassesAreNotLoaded() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("summaries.bin");
+        Policy policy = new BinaryPolicy();
+
+        TSA tsa = Scenes.setUp(CLASSES[0], CLASSES);
+        List<String> entryPoints = entryPoints();
+        Map<String, InterProcAnalysis> cold =
+                tsa.runAll(policy, 1, entryPoints, AnalysisOptions.DEFAULT, file);
+        int saved = new SummaryCache(policy).load(file);
+
+        changeDigest(file, CHANGED_CLASS);
+        tsa = Scenes.setUp(CLASSES[0], CLASSES);
+        int loaded = new SummaryCache(policy).load(file);
+        assertTrue(loaded > 0);
+        assertTrue(loaded < saved);
+
+        Map<String, InterProcAnalysis> warm =
+                tsa.runAll(policy, 1, entryPoints, AnalysisOptions.DEFAULT, file);
+        assertSameResults(entryPoints, cold, warm);
+    }
+
+    @Test
+    public void summariesOfAnotherDomainAreNotLoaded() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("summaries.bin");
+        TSA tsa = Scenes.setUp(CLASSES[0], CLASSES);
+        tsa.runAll(new BinaryPolicy(), 1, entryPoints(), AnalysisOptions.DEFAULT, file);
+
+        assertTrue(new SummaryCache(new BinaryPolicy()).load(file) > 0);
+        assertEquals(0, new SummaryCache(new ABCPolicy()).load(file));
+    }
+}
@@ -0,0 +1,95 @@
+package guideforce;
+
+import guideforce.interproc.AnalysisOptions;
+import guideforce.interproc.InterProcAnalysis;
+import guideforce.policy.ABCPolicy;
+import guideforce.policy.BinaryPolicy;
+import guideforce.policy.Policy;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that an analysis whose budget is exhausted gives up, or gives a conservative result
+ * if the options allow for widening.
+ */
+public class WideningTest {
+
+    private static final String CLASS = "mytestcases.infinitary.Recursion4";
+    private static final String METHOD = "factorial";
+
+    @Test
+    public void exhaustedBudgetWidensChangingEntries() {
+        Policy policy = new ABCPolicy();
+        TSA tsa = Scenes.setUp(CLASS);
+        InterProcAnalysis converged = tsa.run(policy, 1, METHOD);
+        assertNotNull(converged);
+        assertTrue(converged.getWidenedEntries().isEmpty());
+
+        AnalysisOptions budget = AnalysisOptions.DEFAULT.withIterationBudget(1);
+        assertNull(tsa.run(policy, 1, METHOD, budget));
+
+        InterProcAnalysis widened = tsa.run(policy, 1, METHOD, budget.withWidening(true));
+        assertNotNull(widened);
+        assertFalse(widened.getWidenedEntries().isEmpty());
+        for (int count : widened.getWidenedEntries().values()) {
+            assertTrue(count >= 1);
+        }
+        Scenes.assertConservative(converged.getTypeAndEffectsAtEntryPoint(),
+                widened.getTypeAndEffectsAtEntryPoint());
+    }
+
+    @Test
+    public void exhaustedTimeBudgetWidensChangingEntries() {
+        Policy policy = new ABCPolicy();
+        TSA tsa = Scenes.setUp(CLASS);
+        InterProcAnalysis converged = tsa.run(policy, 1, METHOD);
+        assertNotNull(converged);
+
+        AnalysisOptions budget = AnalysisOptions.DEFAULT.withTimeBudget(Duration.ZERO);
+        assertNull(tsa.run(policy, 1, METHOD, budget));
+
+        InterProcAnalysis widened = tsa.run(policy, 1, METHOD, budget.withWidening(true));
+        assertNotNull(widened);
+        assertFalse(widened.getWidenedEntries().isEmpty());
+        Scenes.assertConservative(converged.getTypeAndEffectsAtEntryPoint(),
+                widened.getTypeAndEffectsAtEntryPoint());
+    }
+
+    @Test
+    public void budgetExhaustedAgainAfterWideningStillGivesResult() {
+        // Entries of this case still change after all changing entries have been widened,
+        // beyond the budget that starts again after widening.
+        String className = "securibench.micro.basic.Basic11";
+        Policy policy = new BinaryPolicy();
+        TSA tsa = Scenes.setUp(className);
+        InterProcAnalysis converged = tsa.run(policy, 1, "doGet");
+        assertNotNull(converged);
+
+        AnalysisOptions budget = AnalysisOptions.DEFAULT.withIterationBudget(1).withWidening(true);
+        InterProcAnalysis widened = tsa.run(policy, 1, "doGet", budget);
+        assertNotNull(widened);
+        assertFalse(widened.getWidenedEntries().isEmpty());
+        Scenes.assertConservative(converged.getTypeAndEffectsAtEntryPoint(),
+                widened.getTypeAndEffectsAtEntryPoint());
+    }
+
+    @Test
+    public void sufficientBudgetWidensNothing() {
+        Policy policy = new ABCPolicy();
+        TSA tsa = Scenes.setUp(CLASS);
+        InterProcAnalysis converged = tsa.run(policy, 1, METHOD);
+        InterProcAnalysis widening =
+                tsa.run(policy, 1, METHOD, AnalysisOptions.DEFAULT.withWidening(true));
+        assertNotNull(widening);
+        assertTrue(widening.getWidenedEntries().isEmpty());
+        assertEquals(converged.getTypeAndEffectsAtEntryPoint(),
+                widening.getTypeAndEffectsAtEntryPoint());
+    }
+}
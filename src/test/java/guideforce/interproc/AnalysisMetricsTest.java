@@ -0,0 +1,106 @@
+package guideforce.interproc;
+
+import guideforce.Scenes;
+import guideforce.intraproc.IterationOrder;
+import guideforce.policy.ABCPolicy;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import soot.SootClass;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the measurements of an analysis and their export as JSON.
+ */
+public class AnalysisMetricsTest {
+
+    private static final SootClass CLASS = new SootClass("example.Methods");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void phasesAreSummedAndListedInOrder() {
+        AnalysisMetrics metrics = new AnalysisMetrics("main", IterationOrder.WEAK_TOPOLOGICAL);
+        metrics.recordPhase("custom", 1_000_000);
+        metrics.recordPhase(AnalysisMetrics.SOLVE, 2_000_000);
+        metrics.recordPhase(AnalysisMetrics.SCENE_SETUP, 3_000_000);
+        metrics.recordPhase(AnalysisMetrics.SOLVE, 500_000);
+
+        assertEquals(2_500_000L, (long) metrics.getPhaseNanos().get(AnalysisMetrics.SOLVE));
+        String json = metrics.toJson();
+        assertTrue(json, json.contains("\"phases\": {\n"
+                + "    \"sceneSetup\": 3.000,\n"
+                + "    \"solve\": 2.500,\n"
+                + "    \"custom\": 1.000\n"
+                + "  }"));
+        assertTrue(json, json.contains("\"iterationOrder\": \"WEAK_TOPOLOGICAL\""));
+    }
+
+    @Test
+    public void methodsAreListedByTime() {
+        AnalysisMetrics metrics = new AnalysisMetrics("a \"quoted\" entry",
+                IterationOrder.WEAK_TOPOLOGICAL);
+        MethodTable.Key f = Scenes.staticKey(CLASS, "f");
+        MethodTable.Key g = Scenes.staticKey(CLASS, "g");
+        metrics.methodAnalysed(f, 1_000, 3);
+        metrics.methodAnalysed(g, 5_000, 4);
+        metrics.methodAnalysed(f, 1_000, 2);
+
+        assertEquals(9, metrics.getFlowComputations());
+        assertEquals(Arrays.asList(g.getMethodRef().getSignature(),
+                f.getMethodRef().getSignature()), metrics.getHotMethods(5));
+        assertEquals(Collections.singletonList(g.getMethodRef().getSignature()),
+                metrics.getHotMethods(1));
+
+        String json = metrics.toJson();
+        assertTrue(json, json.contains("\"entryPoint\": \"a \\\"quoted\\\" entry\""));
+        assertTrue(json, json.contains("\"method\": \"" + f.getMethodRef().getSignature()
+                + "\", \"analyses\": 2, \"millis\": 0.002, \"flowComputations\": 5}"));
+        assertTrue(json.indexOf("<example.Methods: void g()>")
+                < json.indexOf("<example.Methods: void f()>"));
+    }
+
+    @Test
+    public void analysesRecordTheirPhasesAndRounds() throws IOException {
+        InterProcAnalysis analysis = new InterProcAnalysis(new ABCPolicy(), 1,
+                Scenes.load("mytestcases.infinitary.Recursion4", "factorial"),
+                AnalysisOptions.DEFAULT);
+        assertTrue(analysis.doAnalysis(40));
+
+        AnalysisMetrics metrics = analysis.getMetrics();
+        assertEquals(new HashSet<>(Arrays.asList(AnalysisMetrics.TYPE_POOL,
+                AnalysisMetrics.FINITARY, AnalysisMetrics.INFINITARY_EQUATIONS,
+                AnalysisMetrics.SOLVE, AnalysisMetrics.COUNTEREXAMPLE)),
+                metrics.getPhaseNanos().keySet());
+        assertTrue(metrics.getRoundCount() >= 1);
+        assertTrue(metrics.getFlowComputations() > 0);
+        assertTrue(metrics.getHotMethods(Integer.MAX_VALUE).contains(
+                "<mytestcases.infinitary.Recursion4: int factorial(int)>"));
+
+        String json = metrics.toJson();
+        assertEquals(metrics.getRoundCount(), count(json, "{\"round\": "));
+        assertTrue(json, json.contains("\"flowComputations\": "
+                + metrics.getFlowComputations() + ",\n"));
+
+        Path file = folder.getRoot().toPath().resolve("metrics.json");
+        metrics.writeJson(file);
+        assertEquals(json, new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,144 @@
+package guideforce.interproc;
+
+import guideforce.MockInfo;
+import guideforce.Scenes;
+import guideforce.intraproc.CompiledBody;
+import guideforce.policy.ABCPolicy;
+import guideforce.policy.BinaryPolicy;
+import guideforce.regions.SpecialRegion;
+import guideforce.types.Regions;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import soot.ArrayType;
+import soot.RefType;
+import soot.SootMethod;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the class table records which entries have been added or have grown, and that
+ * tables take their bodies from their summary caches.
+ */
+public class ClassTableTest {
+
+    private static final ArrayType ARRAY_TYPE = ArrayType.v(RefType.v("java.lang.Object"), 1);
+
+    private final ArrayTable.Key array = new ArrayTable.Key(SpecialRegion.STATIC_REGION);
+    private final ArrayTable.Key other = new ArrayTable.Key(SpecialRegion.ENTRYPOINT_REGION);
+    private final Regions nullRegion = Regions.singleton(SpecialRegion.NULL_REGION);
+    private final Regions unknownRegion = Regions.singleton(SpecialRegion.UNKNOWN_REGION);
+
+    private static SootMethod entryPoint;
+
+    private ClassTable state;
+
+    @BeforeClass
+    public static void setUpScene() {
+        entryPoint = Scenes.load("mytestcases.paperexamples.Test", "linear");
+    }
+
+    @Before
+    public void setUp() {
+        state = new ClassTable(new ABCPolicy(), 1, entryPoint);
+    }
+
+    @Test
+    public void addedEntriesAreChanges() {
+        long version = state.getVersion();
+        state.putIfAbsent(array, nullRegion);
+
+        assertTrue(state.getVersion() > version);
+        assertFalse(state.unchangedSince(Collections.singleton(array), version));
+        assertTrue(state.unchangedSince(Collections.singleton(other), version));
+        assertTrue(state.unchangedSince(Collections.singleton(array), state.getVersion()));
+        assertEquals(Collections.singleton(array), state.pollChanges());
+        assertEquals(Collections.emptySet(), state.pollChanges());
+    }
+
+    @Test
+    public void onlyGrowingEntriesAreChanges() {
+        state.putIfAbsent(array, nullRegion);
+        state.pollChanges();
+        long version = state.getVersion();
+
+        state.putIfAbsent(array, unknownRegion);
+        state.joinIfPresent(array, nullRegion);
+        state.joinIfPresent(other, unknownRegion);
+        assertEquals(version, state.getVersion());
+        assertEquals(Collections.emptySet(), state.pollChanges());
+
+        state.joinIfPresent(array, unknownRegion);
+        assertEquals(nullRegion.join(unknownRegion), state.get(array, ARRAY_TYPE));
+        assertFalse(state.unchangedSince(Collections.singleton(array), version));
+        assertEquals(Collections.singleton(array), state.pollChanges());
+    }
+
+    @Test
+    public void accessesAreRecorded() {
+        state.putIfAbsent(array, nullRegion);
+        Set<Object> reads = new HashSet<>();
+        Set<Object> writes = new HashSet<>();
+        Regions result = state.recordAccesses(() -> {
+            state.joinIfPresent(other, unknownRegion);
+            return state.get(array, ARRAY_TYPE);
+        }, reads, writes);
+
+        assertEquals(nullRegion, result);
+        assertEquals(Collections.singleton(array), reads);
+        assertEquals(Collections.singleton(other), writes);
+
+        List<Object> replayed = new ArrayList<>();
+        state.observeReads(replayed::add);
+        state.replayAccesses(reads, writes);
+        state.observeReads(null);
+        assertEquals(Collections.singletonList(array), replayed);
+    }
+
+    @Test
+    public void copiesTrackTheirOwnChanges() {
+        state.putIfAbsent(array, nullRegion);
+        ClassTable copy = new ClassTable(state);
+        assertEquals(state.getVersion(), copy.getVersion());
+
+        long version = copy.getVersion();
+        copy.joinIfPresent(array, unknownRegion);
+        assertFalse(copy.unchangedSince(Collections.singleton(array), version));
+        assertTrue(state.unchangedSince(Collections.singleton(array), version));
+        assertEquals(nullRegion, state.get(array, ARRAY_TYPE));
+    }
+
+    @Test
+    public void clearingChangesEverything() {
+        state.putIfAbsent(array, nullRegion);
+        long version = state.getVersion();
+        state.clear();
+        assertFalse(state.unchangedSince(Collections.singleton(other), version));
+        assertEquals(Collections.emptySet(), state.pollChanges());
+        assertTrue(state.getArrayTable().isEmpty());
+    }
+
+    @Test
+    public void summaryCachesOfOneSceneShareCompiledBodies() {
+        MethodTable.Key key = Scenes.entryPointKey(entryPoint);
+        CFGCache bodies = new CFGCache(new MockInfo());
+        ClassTable abc = new ClassTable(new ABCPolicy(), 1, entryPoint,
+                new SummaryCache(new ABCPolicy(), bodies));
+        ClassTable binary = new ClassTable(new BinaryPolicy(), 1, entryPoint,
+                new SummaryCache(new BinaryPolicy(), bodies));
+        ClassTable separate = new ClassTable(new ABCPolicy(), 1, entryPoint,
+                new SummaryCache(new ABCPolicy()));
+
+        CompiledBody compiled = abc.getCompiledBody(key);
+        assertNotNull(compiled);
+        assertSame(compiled, binary.getCompiledBody(key));
+        assertNotSame(compiled, separate.getCompiledBody(key));
+    }
+}
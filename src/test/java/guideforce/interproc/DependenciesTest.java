@@ -0,0 +1,75 @@
+package guideforce.interproc;
+
+import guideforce.Scenes;
+import guideforce.regions.SpecialRegion;
+import org.junit.Test;
+import soot.SootClass;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the record of reads and writes from which the finitary fixpoint finds the entries
+ * that have to be analysed again.
+ */
+public class DependenciesTest {
+
+    private static final SootClass CLASS = new SootClass("example.Methods");
+
+    private final MethodTable.Key main = Scenes.staticKey(CLASS, "main");
+    private final MethodTable.Key f = Scenes.staticKey(CLASS, "f");
+    private final MethodTable.Key g = Scenes.staticKey(CLASS, "g");
+    private final ArrayTable.Key array = new ArrayTable.Key(SpecialRegion.BASETYPE_REGION);
+
+    private final Dependencies dependencies = new Dependencies();
+
+    @Test
+    public void readersOfAnEntryAreTheEntriesToAnalyseAgain() {
+        dependencies.addRead(main, f);
+        dependencies.addRead(main, array);
+        dependencies.addRead(g, array);
+        dependencies.addWrite(f, array);
+        dependencies.addWrite(f, f);
+
+        assertEquals(Arrays.asList(main, g), new ArrayList<>(dependencies.readersOf(array)));
+        assertEquals(Collections.singleton(main), dependencies.readersOf(f));
+        assertEquals(Collections.emptySet(), dependencies.readersOf(g));
+        assertEquals(Collections.singleton(f), dependencies.writersOf(array));
+        assertEquals(new HashSet<>(Arrays.asList(array, f)), dependencies.writesOf(f));
+        assertEquals(new HashSet<>(Arrays.asList(f, array)), dependencies.readsOf(main));
+    }
+
+    @Test
+    public void calleesAreTheMethodEntriesThatHaveBeenRead() {
+        dependencies.addRead(main, f);
+        dependencies.addRead(main, array);
+        dependencies.addRead(main, g);
+        dependencies.addRead(f, f);
+
+        assertEquals(new HashSet<>(Arrays.asList(f, g)),
+                new HashSet<>(dependencies.calleesOf(main)));
+        assertEquals(Collections.singletonList(f), dependencies.calleesOf(f));
+        assertTrue(dependencies.calleesOf(g).isEmpty());
+    }
+
+    @Test
+    public void clearForgetsTheReadsAndWritesOfAnEntry() {
+        dependencies.addRead(main, array);
+        dependencies.addRead(g, array);
+        dependencies.addRead(main, f);
+        dependencies.addWrite(main, array);
+
+        dependencies.clear(main);
+        assertEquals(Collections.singleton(g), dependencies.readersOf(array));
+        assertEquals(Collections.emptySet(), dependencies.readersOf(f));
+        assertEquals(Collections.emptySet(), dependencies.writersOf(array));
+        assertEquals(Collections.emptySet(), dependencies.readsOf(main));
+        assertEquals(Collections.emptySet(), dependencies.writesOf(main));
+
+        dependencies.clearAll();
+        assertEquals(Collections.emptySet(), dependencies.readersOf(array));
+        assertEquals(Collections.emptySet(), dependencies.readsOf(g));
+    }
+}
@@ -0,0 +1,109 @@
+package guideforce.interproc;
+
+import guideforce.Scenes;
+import guideforce.intraproc.CompiledBody;
+import guideforce.intraproc.FinitaryEffectAnalysis;
+import guideforce.policy.AbstractDomain;
+import guideforce.policy.BinaryPolicy;
+import guideforce.policy.Policy;
+import guideforce.regions.InputRegion;
+import guideforce.regions.Region;
+import guideforce.types.Monad;
+import org.junit.Test;
+import soot.SootMethod;
+import soot.Unit;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that joining the environments before a unit once there are more than the limit
+ * gives conservative results.
+ */
+public class EnvironmentLimitTest {
+
+    private static final String[] CLASSES = {
+            "securibench.micro.basic.Basic10",
+            "securibench.micro.basic.Basic20",
+            "securibench.micro.inter.Inter4",
+            "securibench.micro.session.Session1",
+    };
+
+    private static InterProcAnalysis analyse(String className, AnalysisOptions options) {
+        InterProcAnalysis analysis = new InterProcAnalysis(new BinaryPolicy(), 1,
+                Scenes.load(className, "doGet"), options);
+        assertTrue(className, analysis.doAnalysis(40));
+        assertNotNull(analysis.getTypeAndEffectsAtEntryPoint());
+        return analysis;
+    }
+
+    @Test
+    public void limitedAnalysesAreConservative() {
+        int joined = 0;
+        for (String className : CLASSES) {
+            InterProcAnalysis unlimited = analyse(className, AnalysisOptions.DEFAULT);
+            assertTrue(unlimited.getMetrics().getJoinedUnits().isEmpty());
+            InterProcAnalysis limited =
+                    analyse(className, AnalysisOptions.DEFAULT.withEnvironmentLimit(1));
+            Scenes.assertConservative(unlimited.getTypeAndEffectsAtEntryPoint(),
+                    limited.getTypeAndEffectsAtEntryPoint());
+            joined += limited.getMetrics().getJoinedUnits().size();
+        }
+        assertTrue(joined > 0);
+    }
+
+    @Test
+    public void generousLimitChangesNothing() {
+        for (String className : CLASSES) {
+            InterProcAnalysis unlimited = analyse(className, AnalysisOptions.DEFAULT);
+            InterProcAnalysis limited =
+                    analyse(className, AnalysisOptions.DEFAULT.withEnvironmentLimit(1_000));
+            assertTrue(limited.getMetrics().getJoinedUnits().isEmpty());
+            assertEquals(className, unlimited.getTypeAndEffectsAtEntryPoint(),
+                    limited.getTypeAndEffectsAtEntryPoint());
+        }
+    }
+
+    @Test
+    public void joinedUnitsHaveASingleEnvironment() {
+        Policy policy = new BinaryPolicy();
+        int joined = 0;
+        for (String className : CLASSES) {
+            SootMethod m = Scenes.load(className, "doGet");
+            MethodTable.Key key = Scenes.entryPointKey(m);
+            ClassTable state = new ClassTable(policy, 1, m);
+            state.ensurePresent(key);
+            CompiledBody body = state.getCompiledBody(key);
+            // Callees that may return either of two regions give two environments each
+            AbstractDomain domain = policy.getAbstractDomain();
+            Map<Region, AbstractDomain.Finitary> choices = new HashMap<>();
+            choices.put(new InputRegion(0), domain.oneFinitary());
+            choices.put(new InputRegion(1), domain.oneFinitary());
+            EffectType either = new EffectType(new Monad<>(domain, choices), Monad.empty(domain),
+                    domain.zeroInfinitary());
+            for (Object entry : new FinitaryEffectAnalysis(policy, state, key, body).getReads()) {
+                if (entry instanceof MethodTable.Key) {
+                    state.joinIfPresent((MethodTable.Key) entry, either);
+                }
+            }
+            FinitaryEffectAnalysis analysis = new FinitaryEffectAnalysis(policy, state, key, body,
+                    AnalysisOptions.DEFAULT.withEnvironmentLimit(1), null, Collections.emptySet());
+
+            for (Unit u : body.getOrder()) {
+                int size = analysis.getFlowBefore(u).get().support().size();
+                if (analysis.getJoinedUnits().contains(u)) {
+                    assertEquals(u.toString(), 1, size);
+                } else {
+                    assertTrue(u.toString(), size <= 1);
+                }
+            }
+            joined += analysis.getJoinedUnits().size();
+        }
+        assertTrue(joined > 0);
+        assertFalse(AnalysisOptions.DEFAULT.getEnvironmentLimit() > 0);
+    }
+}
@@ -0,0 +1,125 @@
+package guideforce.interproc;
+
+import guideforce.Scenes;
+import guideforce.intraproc.CompiledBody;
+import guideforce.intraproc.Environment;
+import guideforce.intraproc.ExceptionHandler;
+import guideforce.intraproc.FinitaryEffectAnalysis;
+import guideforce.policy.ABCPolicy;
+import guideforce.policy.Policy;
+import guideforce.regions.SpecialRegion;
+import org.junit.Test;
+import soot.Body;
+import soot.Local;
+import soot.SootMethod;
+import soot.Unit;
+import soot.ValueBox;
+import soot.jimple.ReturnStmt;
+import soot.toolkits.graph.BriefUnitGraph;
+import soot.toolkits.scalar.SimpleLiveLocals;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the locals that are live before each unit and that the environments of the finitary
+ * analysis only keep those.
+ */
+public class LiveLocalsTest {
+
+    private static final String[][] METHODS = {
+            {"mytestcases.infinitary.WhileLoop6", "loopWithMethodCall"},
+            {"mytestcases.infinitary.Recursion4", "factorial"},
+            {"mytestcases.exceptions.ExceptionExample6", "noExceptionCaught"},
+            {"mytestcases.exceptions.ExceptionExample10", "catchExceptionsInLoop"},
+    };
+
+    @Test
+    public void withoutTrapsLiveLocalsAreThoseOfSoot() {
+        int compared = 0;
+        for (String[] method : METHODS) {
+            Body body = Scenes.load(method[0], method[1]).retrieveActiveBody();
+            if (!body.getTraps().isEmpty()) {
+                continue;
+            }
+            CompiledBody compiled = new CompiledBody(body);
+            SimpleLiveLocals soot = new SimpleLiveLocals(new BriefUnitGraph(body));
+            for (Unit u : compiled.getOrder()) {
+                assertEquals(u.toString(), new HashSet<>(soot.getLiveLocalsBefore(u)),
+                        new HashSet<>(compiled.getLiveLocals(u)));
+            }
+            compared++;
+        }
+        assertTrue(compared >= 2);
+    }
+
+    @Test
+    public void liveLocalsIncludeUsesAndThoseLiveInHandlers() {
+        for (String[] method : METHODS) {
+            CompiledBody compiled = new CompiledBody(
+                    Scenes.load(method[0], method[1]).retrieveActiveBody());
+            for (Unit u : compiled.getOrder()) {
+                Set<Local> live = compiled.getLiveLocals(u);
+                for (ValueBox box : u.getUseBoxes()) {
+                    if (box.getValue() instanceof Local) {
+                        assertTrue(u + " uses " + box.getValue(), live.contains(box.getValue()));
+                    }
+                }
+                for (ExceptionHandler handler : compiled.getHandlersAt(u)) {
+                    for (Unit v : handler.getSuccessors()) {
+                        for (Local l : compiled.getLiveLocals(v)) {
+                            assertTrue(l == handler.getLocal() || live.contains(l));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void deadLocalsAreDropped() {
+        Body body = Scenes.load("mytestcases.infinitary.Recursion4", "factorial")
+                .retrieveActiveBody();
+        CompiledBody compiled = new CompiledBody(body);
+        Unit last = body.getUnits().getLast();
+        assertTrue(last instanceof ReturnStmt);
+        Environment env = Environment.EMPTY;
+        for (Local l : body.getLocals()) {
+            env = env.put(l, SpecialRegion.UNKNOWN_REGION);
+        }
+        Environment restricted = compiled.restrictToLive(env, last);
+        assertTrue(restricted.size() < env.size());
+        assertEquals(compiled.getLiveLocals(last).size(), restricted.size());
+        for (Local l : body.getLocals()) {
+            assertEquals(compiled.getLiveLocals(last).contains(l), restricted.containsKey(l));
+        }
+        assertSame(restricted, compiled.restrictToLive(restricted, last));
+    }
+
+    @Test
+    public void flowsOnlyKeepLiveLocals() {
+        Policy policy = new ABCPolicy();
+        for (String[] method : METHODS) {
+            SootMethod m = Scenes.load(method[0], method[1]);
+            ClassTable state = new ClassTable(policy, 1, m);
+            MethodTable.Key key = Scenes.entryPointKey(m);
+            state.ensurePresent(key);
+            CompiledBody body = state.getCompiledBody(key);
+            FinitaryEffectAnalysis analysis =
+                    new FinitaryEffectAnalysis(policy, state, key, body);
+
+            boolean reached = false;
+            for (Unit u : body.getOrder()) {
+                Set<Environment> envs = analysis.getFlowBefore(u).get().support();
+                for (Environment env : envs) {
+                    assertSame(u.toString(), env, body.restrictToLive(env, u));
+                }
+                reached |= !envs.isEmpty() && !body.getHeads().contains(u);
+            }
+            assertTrue(reached);
+        }
+    }
+}
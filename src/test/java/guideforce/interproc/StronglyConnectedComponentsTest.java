@@ -0,0 +1,122 @@
+package guideforce.interproc;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class StronglyConnectedComponentsTest {
+
+    /**
+     * Node whose hash code is unrelated to its position, so that an order that follows hash
+     * codes differs from the order of the nodes.
+     */
+    private static final class Node {
+        private final String name;
+        private final int hash;
+
+        Node(String name, int hash) {
+            this.name = name;
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private final Map<Node, List<Node>> edges = new HashMap<>();
+
+    private Node node(String name, int hash) {
+        Node n = new Node(name, hash);
+        edges.put(n, new ArrayList<>());
+        return n;
+    }
+
+    private void edge(Node from, Node to) {
+        edges.get(from).add(to);
+    }
+
+    private List<List<Node>> components(Node... nodes) {
+        return StronglyConnectedComponents.reverseTopological(Arrays.asList(nodes), edges::get);
+    }
+
+    @Test
+    public void calleesComeBeforeCallers() {
+        Node main = node("main", 1);
+        Node f = node("f", 2);
+        Node g = node("g", 3);
+        Node h = node("h", 4);
+        edge(main, f);
+        edge(f, g);
+        edge(g, f);
+        edge(g, h);
+
+        List<List<Node>> components = components(main, f, g, h);
+        assertEquals(Arrays.asList(
+                Collections.singletonList(h),
+                Arrays.asList(f, g),
+                Collections.singletonList(main)), components);
+
+        List<List<Node>> levels = StronglyConnectedComponents.levels(components, edges::get);
+        assertEquals(Arrays.asList(
+                Collections.singletonList(h),
+                Arrays.asList(f, g),
+                Collections.singletonList(main)), levels);
+    }
+
+    @Test
+    public void unrelatedNodesFollowTheGivenOrder() {
+        Node[] nodes = new Node[20];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = node("n" + i, (nodes.length - i) * 7919);
+        }
+        List<List<Node>> expected = new ArrayList<>();
+        for (Node n : nodes) {
+            expected.add(Collections.singletonList(n));
+        }
+        assertEquals(expected, components(nodes));
+
+        List<Node> reversed = new ArrayList<>(Arrays.asList(nodes));
+        Collections.reverse(reversed);
+        Collections.reverse(expected);
+        assertEquals(expected, StronglyConnectedComponents.reverseTopological(reversed,
+                edges::get));
+    }
+
+    @Test
+    public void componentsListTheirNodesInTheGivenOrder() {
+        Node a = node("a", 30);
+        Node b = node("b", 20);
+        Node c = node("c", 10);
+        edge(c, b);
+        edge(b, a);
+        edge(a, c);
+
+        assertEquals(Collections.singletonList(Arrays.asList(a, b, c)), components(a, b, c));
+        assertEquals(Collections.singletonList(Arrays.asList(c, a, b)), components(c, a, b));
+    }
+
+    @Test
+    public void longChainsDoNotOverflowTheStack() {
+        int n = 100000;
+        Node[] nodes = new Node[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = node("n" + i, i);
+        }
+        for (int i = 0; i + 1 < n; i++) {
+            edge(nodes[i], nodes[i + 1]);
+        }
+        List<List<Node>> components = components(nodes);
+        assertEquals(n, components.size());
+        assertEquals(nodes[n - 1], components.get(0).get(0));
+        assertEquals(nodes[0], components.get(n - 1).get(0));
+    }
+}
@@ -0,0 +1,127 @@
+package guideforce.interproc;
+
+import guideforce.Scenes;
+import guideforce.intraproc.CompiledBody;
+import guideforce.intraproc.Environment;
+import guideforce.intraproc.FinitaryEffectAnalysis;
+import guideforce.policy.ABCPolicy;
+import guideforce.policy.Policy;
+import guideforce.regions.Region;
+import guideforce.types.Monad;
+import guideforce.types.Triple;
+import org.junit.Before;
+import org.junit.Test;
+import soot.SootMethod;
+import soot.Unit;
+import soot.jimple.Stmt;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the cached results of the transfer functions are those of a fresh evaluation,
+ * and that they are evaluated again when an entry that they have read changes.
+ */
+public class TransferCacheTest {
+
+    private final Policy policy = new ABCPolicy();
+    private ClassTable state;
+    private MethodTable.Key key;
+    private CompiledBody body;
+    private FinitaryEffectAnalysis analysis;
+
+    @Before
+    public void setUp() {
+        SootMethod m = Scenes.load("mytestcases.infinitary.Recursion4", "factorial");
+        state = new ClassTable(policy, 1, m);
+        key = Scenes.entryPointKey(m);
+        state.ensurePresent(key);
+        body = state.getCompiledBody(key);
+        analysis = new FinitaryEffectAnalysis(policy, state, key, body);
+    }
+
+    private Set<Environment> environmentsBefore(Unit u) {
+        return analysis.getFlowBefore(u).get().support();
+    }
+
+    /**
+     * Returns the entries of the method table that the transfer function of {@code stmt} reads
+     * in {@code env}.
+     */
+    private Set<Object> methodReads(Stmt stmt, Environment env) {
+        Set<Object> reads = new HashSet<>();
+        state.observeReads(reads::add);
+        try {
+            analysis.abstractedStmtTriple(stmt).apply(env);
+        } finally {
+            state.observeReads(null);
+        }
+        reads.removeIf(entry -> !(entry instanceof MethodTable.Key));
+        return reads;
+    }
+
+    @Test
+    public void cachedResultsAreThoseOfAFreshEvaluation() {
+        FinitaryEffectAnalysis fresh = new FinitaryEffectAnalysis(policy, state, key, body);
+        int checked = 0;
+        for (Unit u : body.getOrder()) {
+            Stmt stmt = (Stmt) u;
+            for (Environment env : environmentsBefore(u)) {
+                Triple<Monad<Environment>, Monad<Region>, Monad<Region>> cached =
+                        analysis.abstractedStmtTriple(stmt).apply(env);
+                assertSame(cached, analysis.abstractedStmtTriple(stmt).apply(env));
+                assertEquals(u.toString(), fresh.abstractedStmtTriple(stmt).apply(env), cached);
+                checked++;
+            }
+        }
+        assertTrue(checked > 0);
+    }
+
+    @Test
+    public void reusedResultsReplayTheirReads() {
+        int checked = 0;
+        for (Unit u : body.getOrder()) {
+            for (Environment env : environmentsBefore(u)) {
+                Set<Object> first = methodReads((Stmt) u, env);
+                assertEquals(first, methodReads((Stmt) u, env));
+                checked += first.size();
+            }
+        }
+        assertTrue(checked > 0);
+    }
+
+    @Test
+    public void changedEntriesInvalidateTheResultsThatReadThem() {
+        Map<Stmt, Environment> readers = new LinkedHashMap<>();
+        Set<Object> read = new HashSet<>();
+        for (Unit u : body.getOrder()) {
+            for (Environment env : environmentsBefore(u)) {
+                Set<Object> reads = methodReads((Stmt) u, env);
+                if (!reads.isEmpty()) {
+                    readers.put((Stmt) u, env);
+                    read.addAll(reads);
+                }
+            }
+        }
+        assertFalse(readers.isEmpty());
+
+        Map<Stmt, Triple<?, ?, ?>> before = new HashMap<>();
+        readers.forEach((stmt, env) ->
+                before.put(stmt, analysis.abstractedStmtTriple(stmt).apply(env)));
+        for (Object entry : read) {
+            assertTrue(state.widen((MethodTable.Key) entry));
+        }
+
+        FinitaryEffectAnalysis fresh = new FinitaryEffectAnalysis(policy, state, key, body);
+        readers.forEach((stmt, env) -> {
+            Triple<?, ?, ?> after = analysis.abstractedStmtTriple(stmt).apply(env);
+            assertNotEquals(stmt.toString(), before.get(stmt), after);
+            assertEquals(stmt.toString(), fresh.abstractedStmtTriple(stmt).apply(env), after);
+        });
+    }
+}
@@ -0,0 +1,87 @@
+package guideforce.interproc;
+
+import guideforce.Scenes;
+import guideforce.intraproc.CompiledBody;
+import guideforce.intraproc.FinitaryEffectAnalysis;
+import guideforce.policy.ABCPolicy;
+import guideforce.policy.Policy;
+import org.junit.Test;
+import soot.SootMethod;
+import soot.Unit;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that analysing an entry again from the flows of an earlier analysis gives the same
+ * result as a fresh analysis.
+ */
+public class WarmStartTest {
+
+    private static void assertSameFlows(FinitaryEffectAnalysis expected,
+                                        FinitaryEffectAnalysis actual) {
+        for (Unit u : expected.getCompiledBody().getOrder()) {
+            assertEquals(u.toString(), expected.getFlowBefore(u), actual.getFlowBefore(u));
+        }
+        assertEquals(expected.annotatedMethod(), actual.annotatedMethod());
+        assertEquals(expected.getReads(), actual.getReads());
+    }
+
+    @Test
+    public void warmStartAfterGrownEntriesGivesTheFreshResult() {
+        Policy policy = new ABCPolicy();
+        SootMethod m = Scenes.load("mytestcases.infinitary.Recursion4", "factorial");
+        ClassTable state = new ClassTable(policy, 1, m);
+        MethodTable.Key key = Scenes.entryPointKey(m);
+        state.ensurePresent(key);
+        CompiledBody body = state.getCompiledBody(key);
+
+        FinitaryEffectAnalysis first = new FinitaryEffectAnalysis(policy, state, key, body);
+
+        Set<Object> changed = new HashSet<>();
+        for (Object entry : first.getReads()) {
+            if (entry instanceof MethodTable.Key && state.widen((MethodTable.Key) entry)) {
+                changed.add(entry);
+            }
+        }
+        assertFalse(changed.isEmpty());
+        Map<Unit, String> before = new HashMap<>();
+        for (Unit u : body.getOrder()) {
+            before.put(u, first.getFlowBefore(u).toString());
+        }
+
+        FinitaryEffectAnalysis warm = new FinitaryEffectAnalysis(policy, state, key, body,
+                AnalysisOptions.DEFAULT, first, changed);
+        FinitaryEffectAnalysis fresh = new FinitaryEffectAnalysis(policy, state, key, body,
+                AnalysisOptions.DEFAULT, null, Collections.emptySet());
+
+        assertSameFlows(fresh, warm);
+        boolean grown = false;
+        for (Unit u : body.getOrder()) {
+            grown |= !before.get(u).equals(warm.getFlowBefore(u).toString());
+        }
+        assertTrue(grown);
+        assertTrue(warm.getFlowComputations() > 0);
+        assertTrue(warm.getFlowComputations() <= fresh.getFlowComputations());
+    }
+
+    @Test
+    public void warmStartWithoutChangesComputesNothing() {
+        Policy policy = new ABCPolicy();
+        SootMethod m = Scenes.load("mytestcases.infinitary.WhileLoop6", "loopWithMethodCall");
+        ClassTable state = new ClassTable(policy, 1, m);
+        MethodTable.Key key = Scenes.entryPointKey(m);
+        state.ensurePresent(key);
+        CompiledBody body = state.getCompiledBody(key);
+
+        FinitaryEffectAnalysis first = new FinitaryEffectAnalysis(policy, state, key, body);
+        FinitaryEffectAnalysis warm = new FinitaryEffectAnalysis(policy, state, key, body,
+                AnalysisOptions.DEFAULT, first, Collections.emptySet());
+
+        assertEquals(0, warm.getFlowComputations());
+        assertSameFlows(first, warm);
+    }
+}
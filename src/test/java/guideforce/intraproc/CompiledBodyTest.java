@@ -0,0 +1,84 @@
+package guideforce.intraproc;
+
+import guideforce.Scenes;
+import org.junit.Test;
+import soot.Body;
+import soot.Trap;
+import soot.TrapManager;
+import soot.Unit;
+import soot.jimple.IdentityStmt;
+import soot.toolkits.graph.BriefUnitGraph;
+import soot.toolkits.graph.PseudoTopologicalOrderer;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that a compiled body gives the control flow information that the analyses used to
+ * compute from Soot for each unit.
+ */
+public class CompiledBodyTest {
+
+    private static void check(Body body) {
+        CompiledBody compiled = new CompiledBody(body);
+        BriefUnitGraph graph = new BriefUnitGraph(body);
+
+        assertSame(body, compiled.getBody());
+        assertEquals(new PseudoTopologicalOrderer<Unit>().newList(graph, false),
+                compiled.getOrder());
+        assertEquals(body.getUnits().size(), compiled.size());
+        assertEquals(new HashSet<>(body.getUnits()), new HashSet<>(compiled.getOrder()));
+        assertEquals(graph.getHeads(), compiled.getHeads());
+
+        List<Unit> order = compiled.getOrder();
+        for (int i = 0; i < order.size(); i++) {
+            Unit u = order.get(i);
+            assertEquals(i, compiled.indexOf(u));
+            assertEquals(i, (int) compiled.getIndex().get(u));
+            assertEquals(graph.getSuccsOf(u), compiled.getSuccsOf(u));
+
+            List<Trap> traps = new ArrayList<>();
+            for (ExceptionHandler handler : compiled.getHandlersAt(u)) {
+                traps.add(handler.getTrap());
+            }
+            assertEquals(u.toString(), TrapManager.getTrapsAt(u, body), traps);
+        }
+    }
+
+    @Test
+    public void bodyWithTraps() {
+        check(Scenes.load("mytestcases.exceptions.ExceptionExample6", "noExceptionCaught")
+                .retrieveActiveBody());
+    }
+
+    @Test
+    public void loopWithTrap() {
+        check(Scenes.load("mytestcases.exceptions.ExceptionExample10", "catchExceptionsInLoop")
+                .retrieveActiveBody());
+    }
+
+    @Test
+    public void loopWithCalls() {
+        check(Scenes.load("mytestcases.infinitary.WhileLoop6", "loopWithMethodCall")
+                .retrieveActiveBody());
+    }
+
+    @Test
+    public void handlersKnowTheirLocalAndSuccessors() {
+        Body body = Scenes.load("mytestcases.exceptions.ExceptionExample6", "noExceptionCaught")
+                .retrieveActiveBody();
+        CompiledBody compiled = new CompiledBody(body);
+        Set<Trap> seen = new HashSet<>();
+        for (Unit u : compiled.getOrder()) {
+            for (ExceptionHandler handler : compiled.getHandlersAt(u)) {
+                Unit handlerUnit = handler.getTrap().getHandlerUnit();
+                assertSame(((IdentityStmt) handlerUnit).getLeftOp(), handler.getLocal());
+                assertEquals(compiled.getSuccsOf(handlerUnit), handler.getSuccessors());
+                seen.add(handler.getTrap());
+            }
+        }
+        assertEquals(new HashSet<>(body.getTraps()), seen);
+    }
+}
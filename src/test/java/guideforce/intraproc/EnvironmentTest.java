@@ -0,0 +1,140 @@
+package guideforce.intraproc;
+
+import guideforce.regions.InputRegion;
+import guideforce.regions.Region;
+import guideforce.regions.SpecialRegion;
+import guideforce.regions.UnionRegion;
+import org.junit.Test;
+import soot.IntType;
+import soot.Local;
+import soot.jimple.Jimple;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the operations of environments against those of a map from locals to regions.
+ */
+public class EnvironmentTest {
+
+    private static final Region A = new InputRegion(0);
+    private static final Region B = new InputRegion(1);
+    private static final Region C = SpecialRegion.STATIC_REGION;
+
+    private static Local local(String name) {
+        return Jimple.v().newLocal(name, IntType.v());
+    }
+
+    private static Environment environment(Map<Local, Region> map) {
+        Environment env = Environment.EMPTY;
+        for (Map.Entry<Local, Region> entry : map.entrySet()) {
+            env = env.put(entry.getKey(), entry.getValue());
+        }
+        return env;
+    }
+
+    private static void assertAgrees(Map<Local, Region> expected, Collection<Local> locals,
+                                     Environment env) {
+        assertEquals(expected.size(), env.size());
+        for (Local l : locals) {
+            assertEquals(expected.containsKey(l), env.containsKey(l));
+            assertEquals(expected.get(l), env.get(l));
+        }
+    }
+
+    @Test
+    public void environmentsBehaveAsMaps() {
+        Random random = new Random(17);
+        List<Local> locals = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            locals.add(local("l" + i));
+        }
+        Region[] regions = {A, B, C};
+        for (int round = 0; round < 200; round++) {
+            Map<Local, Region> map = new LinkedHashMap<>();
+            Environment env = Environment.EMPTY;
+            for (int k = 0; k < 12; k++) {
+                Local l = locals.get(random.nextInt(locals.size()));
+                Region r = regions[random.nextInt(regions.length)];
+                map.put(l, r);
+                env = env.put(l, r);
+                assertAgrees(map, locals, env);
+            }
+
+            // The order of the updates does not matter
+            List<Map.Entry<Local, Region>> entries = new ArrayList<>(map.entrySet());
+            Collections.shuffle(entries, random);
+            Map<Local, Region> shuffled = new LinkedHashMap<>();
+            entries.forEach(e -> shuffled.put(e.getKey(), e.getValue()));
+            Environment other = environment(shuffled);
+            assertEquals(env, other);
+            assertEquals(env.hashCode(), other.hashCode());
+            assertEquals(env.toString(), other.toString());
+
+            Set<Local> keep = new HashSet<>(locals.subList(0, random.nextInt(locals.size())));
+            Map<Local, Region> retained = new HashMap<>(map);
+            retained.keySet().retainAll(keep);
+            assertAgrees(retained, locals, env.retainAll(keep));
+        }
+    }
+
+    @Test
+    public void unchangedEnvironmentsAreReturnedAsTheyAre() {
+        Local x = local("x");
+        Local y = local("y");
+        Environment env = Environment.EMPTY.put(x, A).put(y, B);
+        assertSame(env, env.put(x, A));
+        assertSame(env, env.retainAll(new HashSet<>(Arrays.asList(x, y))));
+        assertSame(env, env.join(env));
+        assertSame(env, env.join(Environment.EMPTY));
+        assertSame(env, env.cases(Arrays.asList(x, y)).get(0));
+        assertFalse(env.hasUnions());
+    }
+
+    @Test
+    public void differentRegionsOrLocalsGiveDifferentEnvironments() {
+        Local x = local("x");
+        Local y = local("y");
+        assertNotEquals(Environment.EMPTY.put(x, A), Environment.EMPTY.put(x, B));
+        assertNotEquals(Environment.EMPTY.put(x, A), Environment.EMPTY.put(y, A));
+        assertNotEquals(Environment.EMPTY.put(x, A), Environment.EMPTY.put(x, A).put(y, A));
+        assertNull(Environment.EMPTY.put(x, A).get(y));
+    }
+
+    @Test
+    public void joinsAreExpandedIntoCases() {
+        Local x = local("x");
+        Local y = local("y");
+        Local z = local("z");
+        Environment e1 = Environment.EMPTY.put(x, A).put(y, A).put(z, C);
+        Environment e2 = Environment.EMPTY.put(x, B).put(y, A);
+        Environment joined = e1.join(e2);
+        assertTrue(joined.hasUnions());
+        assertEquals(UnionRegion.of(A, B), joined.get(x));
+        assertEquals(A, joined.get(y));
+        assertEquals(C, joined.get(z));
+
+        assertEquals(Collections.singletonList(joined), joined.cases(Collections.singleton(y)));
+        assertEquals(new HashSet<>(Arrays.asList(e1, e1.put(x, B))),
+                new HashSet<>(joined.cases(Arrays.asList(x, y))));
+    }
+
+    @Test
+    public void localsWithTheSameNumberAreDistinguished() {
+        Local x = local("x");
+        Local y = local("y");
+        y.setNumber(x.getNumber());
+        Environment env = Environment.EMPTY.put(x, A).put(y, B);
+        assertEquals(2, env.size());
+        assertEquals(A, env.get(x));
+        assertEquals(B, env.get(y));
+        assertEquals(B, env.put(x, B).get(x));
+        assertEquals(1, env.retainAll(Collections.singleton(y)).size());
+    }
+}
@@ -0,0 +1,78 @@
+package guideforce.intraproc;
+
+import guideforce.Scenes;
+import guideforce.regions.ExceptionRegion;
+import guideforce.regions.SpecialRegion;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import soot.Scene;
+import soot.SootClass;
+import soot.Unit;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks which exceptions the handlers of a body catch.
+ */
+public class ExceptionHandlerTest {
+
+    private static final String PACKAGE = "mytestcases.exceptions.";
+
+    private static Map<String, ExceptionHandler> handlers;
+
+    @BeforeClass
+    public static void setUp() {
+        CompiledBody body = new CompiledBody(Scenes.load(PACKAGE + "ExceptionExample6",
+                "noExceptionCaught").retrieveActiveBody());
+        handlers = new HashMap<>();
+        for (Unit u : body.getOrder()) {
+            for (ExceptionHandler handler : body.getHandlersAt(u)) {
+                handlers.put(handler.getTrap().getException().getShortName(), handler);
+            }
+        }
+        assertEquals(new HashSet<>(Arrays.asList("SubException", "AnotherException")),
+                handlers.keySet());
+    }
+
+    private static ExceptionRegion exception(String className) {
+        SootClass c = Scene.v().getSootClass(PACKAGE + className);
+        return new ExceptionRegion(c);
+    }
+
+    @Test
+    public void handlersCatchSubclasses() {
+        ExceptionHandler handler = handlers.get("SubException");
+        assertTrue(handler.catches(exception("SubException")));
+        assertTrue(handler.mayCatch(exception("SubException")));
+        assertFalse(handler.catches(exception("AException")));
+        assertFalse(handler.mayCatch(exception("AException")));
+        assertFalse(handler.catches(exception("AnotherException")));
+        assertTrue(handlers.get("AnotherException").catches(exception("AnotherException")));
+        assertFalse(handlers.get("AnotherException").catches(exception("SubException")));
+    }
+
+    @Test
+    public void exceptionsOfUnknownClassMayBeCaughtByAllHandlers() {
+        for (ExceptionHandler handler : handlers.values()) {
+            assertFalse(handler.catches(SpecialRegion.UNKNOWN_REGION));
+            assertTrue(handler.mayCatch(SpecialRegion.UNKNOWN_REGION));
+            assertFalse(handler.catches(new ExceptionRegion(null)));
+            assertTrue(handler.mayCatch(new ExceptionRegion(null)));
+            // Without a class, the region of an exception has class Exception
+            assertFalse(handler.mayCatch(new ExceptionRegion()));
+        }
+    }
+
+    @Test
+    public void answersAreStable() {
+        ExceptionHandler handler = handlers.get("SubException");
+        for (int i = 0; i < 3; i++) {
+            assertTrue(handler.catches(exception("SubException")));
+            assertFalse(handler.catches(exception("AException")));
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package guideforce.intraproc;
+
+import org.junit.Test;
+import soot.toolkits.graph.DirectedGraph;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the fixed points of the forward flow analysis on small graphs, with the flows
+ * passed to the successors through the slots of the analysis.
+ */
+public class ForwardFlowAnalysisTest {
+
+    /**
+     * Collects the nodes that have been passed on some path to each node.
+     */
+    private static class PathAnalysis extends ForwardFlowAnalysis<String, Set<String>> {
+        private final String decoy;
+        private final List<String> targets = new ArrayList<>();
+
+        PathAnalysis(DirectedGraph<String> graph, String decoy) {
+            super(graph);
+            this.decoy = decoy;
+            doAnalysis();
+        }
+
+        @Override
+        protected Set<String> newInitialFlow() {
+            return new HashSet<>();
+        }
+
+        @Override
+        protected Set<String> entryInitialFlow() {
+            return new HashSet<>(Collections.singleton("start"));
+        }
+
+        @Override
+        protected void copy(Set<String> source, Set<String> dest) {
+            dest.clear();
+            dest.addAll(source);
+        }
+
+        @Override
+        protected void merge(Set<String> in1, Set<String> in2, Set<String> out) {
+            Set<String> union = new HashSet<>(in1);
+            union.addAll(in2);
+            copy(union, out);
+        }
+
+        @Override
+        protected boolean mergeInto(String target, Set<String> in, Set<String> out) {
+            targets.add(target);
+            return super.mergeInto(target, in, out);
+        }
+
+        @Override
+        protected void flowThrough(Set<String> in, String node, FlowSink<String, Set<String>> out) {
+            for (String succ : graph.getSuccsOf(node)) {
+                if (node.equals(decoy)) {
+                    // replaced by the flow below
+                    out.flowTo(succ, new HashSet<>(Collections.singleton("decoy")));
+                }
+                Set<String> flow = new HashSet<>(in);
+                flow.add(node);
+                out.flowTo(succ, flow);
+            }
+        }
+    }
+
+    /**
+     * A graph whose nodes are in the order of their first appearance in the edges.
+     */
+    private static final class Graph implements DirectedGraph<String> {
+        private final Map<String, List<String>> succs = new LinkedHashMap<>();
+        private final Map<String, List<String>> preds = new LinkedHashMap<>();
+
+        Graph(String... edges) {
+            for (String edge : edges) {
+                // The orderers compare the nodes by identity
+                String[] nodes = edge.split("->");
+                for (int i = 0; i < nodes.length; i++) {
+                    nodes[i] = nodes[i].intern();
+                }
+                for (String node : nodes) {
+                    succs.putIfAbsent(node, new ArrayList<>());
+                    preds.putIfAbsent(node, new ArrayList<>());
+                }
+                succs.get(nodes[0]).add(nodes[1]);
+                preds.get(nodes[1]).add(nodes[0]);
+            }
+        }
+
+        @Override
+        public List<String> getHeads() {
+            return Collections.singletonList(succs.keySet().iterator().next());
+        }
+
+        @Override
+        public List<String> getTails() {
+            List<String> tails = new ArrayList<>();
+            succs.forEach((node, targets) -> {
+                if (targets.isEmpty()) {
+                    tails.add(node);
+                }
+            });
+            return tails;
+        }
+
+        @Override
+        public List<String> getPredsOf(String s) {
+            return preds.get(s);
+        }
+
+        @Override
+        public List<String> getSuccsOf(String s) {
+            return succs.get(s);
+        }
+
+        @Override
+        public int size() {
+            return succs.size();
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return succs.keySet().iterator();
+        }
+    }
+
+    private static Set<String> set(String... elements) {
+        return new HashSet<>(Arrays.asList(elements));
+    }
+
+    @Test
+    public void loopReachesItsFixedPoint() {
+        PathAnalysis analysis =
+                new PathAnalysis(new Graph("a->b", "b->c", "c->b", "c->d"), null);
+        assertEquals(set("start"), analysis.getFlowBefore("a"));
+        // The flow after a node is that before its successors
+        assertEquals(set("start", "a", "b", "c"), analysis.getFlowAfter("a"));
+        assertEquals(set("start", "a", "b", "c"), analysis.getFlowBefore("b"));
+        assertEquals(set("start", "a", "b", "c"), analysis.getFlowBefore("c"));
+        assertEquals(set("start", "a", "b", "c"), analysis.getFlowBefore("d"));
+        assertTrue(analysis.getFlowComputations() >= 4);
+    }
+
+    @Test
+    public void branchesAreMerged() {
+        PathAnalysis analysis =
+                new PathAnalysis(new Graph("a->b", "a->c", "b->d", "c->d", "d->e"), null);
+        assertEquals(set("start", "a"), analysis.getFlowBefore("b"));
+        assertEquals(set("start", "a"), analysis.getFlowBefore("c"));
+        assertEquals(set("start", "a", "b", "c"), analysis.getFlowBefore("d"));
+        assertEquals(set("start", "a", "b", "c", "d"), analysis.getFlowBefore("e"));
+        // Without loops, each node is processed once
+        assertEquals(5, analysis.getFlowComputations());
+        assertEquals(set("b", "c", "d", "e"), new HashSet<>(analysis.targets));
+    }
+
+    @Test
+    public void laterFlowToTheSameTargetReplacesEarlierOne() {
+        PathAnalysis analysis = new PathAnalysis(new Graph("a->b", "b->c", "c->b"), "b");
+        for (String node : Arrays.asList("b", "c")) {
+            assertEquals(set("start", "a", "b", "c"), analysis.getFlowBefore(node));
+        }
+        assertEquals(Arrays.asList("b", "c"), analysis.targets.subList(0, 2));
+    }
+
+    @Test
+    public void resumedAnalysisStartsFromThePreviousFlows() {
+        DirectedGraph<String> graph = new Graph("a->b", "b->c", "c->b", "c->d");
+        PathAnalysis first = new PathAnalysis(graph, null);
+        PathAnalysis resumed = new PathAnalysis(graph, null) {
+            {
+                doAnalysis(first.unitToBeforeFlow, Collections.singleton("c"));
+            }
+        };
+        for (String node : graph) {
+            assertEquals(node, first.getFlowBefore(node), resumed.getFlowBefore(node));
+        }
+        // Only c is processed, since no flow changes
+        assertEquals(1, resumed.getFlowComputations());
+    }
+}
@@ -0,0 +1,154 @@
+package guideforce.intraproc;
+
+import guideforce.Scenes;
+import guideforce.interproc.AnalysisOptions;
+import guideforce.interproc.InterProcAnalysis;
+import guideforce.policy.ABCPolicy;
+import org.junit.Test;
+import soot.SootMethod;
+import soot.Unit;
+import soot.toolkits.graph.DirectedGraph;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the weak topological order of graphs and bodies, and that the finitary analysis
+ * reaches the same fixed point in either iteration order.
+ */
+public class WeakTopologicalOrdererTest {
+
+    /**
+     * A graph whose nodes are in the order of their first appearance in the edges and whose
+     * head is the first node.
+     */
+    private static final class Graph implements DirectedGraph<String> {
+        private final Map<String, List<String>> succs = new LinkedHashMap<>();
+
+        Graph(String... edges) {
+            for (String edge : edges) {
+                // The orderers compare the nodes by identity
+                String[] nodes = edge.split("->");
+                for (int i = 0; i < nodes.length; i++) {
+                    nodes[i] = nodes[i].intern();
+                    succs.putIfAbsent(nodes[i], new ArrayList<>());
+                }
+                if (nodes.length == 2) {
+                    succs.get(nodes[0]).add(nodes[1]);
+                }
+            }
+        }
+
+        @Override
+        public List<String> getHeads() {
+            return Collections.singletonList(succs.keySet().iterator().next());
+        }
+
+        @Override
+        public List<String> getTails() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<String> getPredsOf(String s) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<String> getSuccsOf(String s) {
+            return succs.get(s);
+        }
+
+        @Override
+        public int size() {
+            return succs.size();
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return succs.keySet().iterator();
+        }
+    }
+
+    private static List<String> order(Graph graph) {
+        return new WeakTopologicalOrderer<String>().newList(graph, false);
+    }
+
+    @Test
+    public void innerLoopsAreNestedInOuterOnes() {
+        // a (b (c d) e) f
+        Graph graph = new Graph("a->b", "b->c", "c->d", "d->c", "d->e", "e->b", "e->f");
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e", "f"), order(graph));
+    }
+
+    @Test
+    public void loopsComeBeforeTheUnitsAfterThem() {
+        // The reverse postorder puts the exit x of the loop before its last node d
+        Graph graph = new Graph("a->b", "b->c", "c->d", "d->b", "c->x");
+        assertEquals(Arrays.asList("a", "b", "c", "x", "d"),
+                IterationOrder.PSEUDO_TOPOLOGICAL.<String>orderer().newList(graph, false));
+        assertEquals(Arrays.asList("a", "b", "c", "d", "x"), order(graph));
+        assertEquals(Arrays.asList("x", "d", "c", "b", "a"),
+                new WeakTopologicalOrderer<String>().newList(graph, true));
+    }
+
+    @Test
+    public void unreachableNodesComeLast() {
+        Graph graph = new Graph("a->b", "u->b", "v");
+        assertEquals(Arrays.asList("a", "b", "u", "v"), order(graph));
+    }
+
+    @Test
+    public void longLoopsDoNotOverflowTheStack() {
+        int n = 100_000;
+        String[] edges = new String[n];
+        for (int i = 0; i < n; i++) {
+            edges[i] = i + "->" + (i + 1) % n;
+        }
+        List<String> order = order(new Graph(edges));
+        assertEquals(n, order.size());
+        for (int i = 0; i < n; i++) {
+            assertEquals(String.valueOf(i), order.get(i));
+        }
+    }
+
+    private static final String[][] METHODS = {
+            {"mytestcases.infinitary.WhileLoop6", "loopWithMethodCall"},
+            {"mytestcases.exceptions.ExceptionExample10", "catchExceptionsInLoop"},
+            {"mytestcases.infinitary.Recursion4", "factorial"},
+            {"mytestcases.infinitary.Recursion3", "mutualRecursion"},
+    };
+
+    @Test
+    public void bodiesAreOrderedCompletely() {
+        for (String[] method : METHODS) {
+            CompiledBody body = new CompiledBody(
+                    Scenes.load(method[0], method[1]).retrieveActiveBody());
+            List<Unit> order = body.getOrder(IterationOrder.WEAK_TOPOLOGICAL);
+            assertEquals(body.size(), order.size());
+            assertEquals(new HashSet<>(body.getOrder()), new HashSet<>(order));
+            assertEquals(body.getHeads().get(0), order.get(0));
+            Map<Unit, Integer> index = body.getIndex(IterationOrder.WEAK_TOPOLOGICAL);
+            for (int i = 0; i < order.size(); i++) {
+                assertEquals(i, (int) index.get(order.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void iterationOrdersGiveTheSameResults() {
+        for (String[] method : METHODS) {
+            SootMethod m = Scenes.load(method[0], method[1]);
+            InterProcAnalysis pseudo = new InterProcAnalysis(new ABCPolicy(), 1, m,
+                    AnalysisOptions.DEFAULT.withIterationOrder(IterationOrder.PSEUDO_TOPOLOGICAL));
+            assertTrue(pseudo.doAnalysis(40));
+            InterProcAnalysis weak = new InterProcAnalysis(new ABCPolicy(), 1, m,
+                    AnalysisOptions.DEFAULT.withIterationOrder(IterationOrder.WEAK_TOPOLOGICAL));
+            assertTrue(weak.doAnalysis(40));
+            assertEquals(method[1], pseudo.getTypeAndEffectsAtEntryPoint(),
+                    weak.getTypeAndEffectsAtEntryPoint());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package guideforce.policy;
+
+import java.util.*;
+
+/**
+ * Domain of the cyclic group of order {@code n}, whose elements are the numbers modulo
+ * {@code n} with addition. The token {@code k} is read as the element {@code k mod n}. Words
+ * are accepted if their class is below {@code n / 2}.
+ * <p>
+ * The only idempotent is the neutral element 0, so all tuples have the form (C, 0) and
+ * abstract finite words. The domain is used to test abstractions with more than 64 elements.
+ */
+class CyclicDomain extends AbstractDomain {
+    private final int n;
+    private final List<Tuple> tuples = new ArrayList<>();
+
+    CyclicDomain(int n) {
+        this.n = n;
+        for (int c = 0; c < n; c++) {
+            tuples.add(new Tuple(c, 0));
+        }
+    }
+
+    @Override
+    public int neutral() {
+        return 0;
+    }
+
+    @Override
+    public int multiply(int x, int y) {
+        return (x + y) % n;
+    }
+
+    @Override
+    public int read(Object token) {
+        return Math.floorMod((Integer) token, n);
+    }
+
+    @Override
+    public String monoidElementToString(int x) {
+        return Integer.toString(x);
+    }
+
+    @Override
+    public Set<Integer> getAllMonoidElements() {
+        Set<Integer> all = new TreeSet<>();
+        for (int x = 0; x < n; x++) {
+            all.add(x);
+        }
+        return all;
+    }
+
+    @Override
+    protected Set<Integer> star(Set<Integer> x) {
+        Set<Integer> result = new TreeSet<>();
+        result.add(0);
+        Deque<Integer> worklist = new ArrayDeque<>(result);
+        while (!worklist.isEmpty()) {
+            int a = worklist.pop();
+            for (int b : x) {
+                if (result.add(multiply(a, b))) {
+                    worklist.push(multiply(a, b));
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    protected Set<Tuple> omega(Set<Integer> x) {
+        // Only the finite words of L^omega, i.e. those of L^* if L contains the empty word
+        Set<Tuple> result = new HashSet<>();
+        if (x.contains(0)) {
+            for (int c : star(x)) {
+                result.add(new Tuple(c, 0));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    protected List<Tuple> getTuples() {
+        return tuples;
+    }
+
+    @Override
+    protected boolean acceptedFinitary(Set<Integer> x) {
+        return getAcceptedFinitaryClasses().containsAll(x);
+    }
+
+    @Override
+    protected Set<Integer> getAcceptedFinitaryClasses() {
+        Set<Integer> accepted = new TreeSet<>();
+        for (int x = 0; x < n / 2; x++) {
+            accepted.add(x);
+        }
+        return accepted;
+    }
+
+    @Override
+    protected Set<Tuple> getAcceptedInfinitaryClasses() {
+        Set<Tuple> accepted = new HashSet<>();
+        for (int x : getAcceptedFinitaryClasses()) {
+            accepted.add(new Tuple(x, 0));
+        }
+        return accepted;
+    }
+}
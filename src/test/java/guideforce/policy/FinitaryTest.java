@@ -0,0 +1,113 @@
+package guideforce.policy;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the bit set representation of finitary abstractions against sets of monoid elements.
+ */
+public class FinitaryTest {
+
+    private static final int SAMPLES = 300;
+
+    private static Set<Integer> randomSet(Random random, int size) {
+        Set<Integer> result = new TreeSet<>();
+        int count = random.nextInt(5);
+        for (int i = 0; i < count; i++) {
+            result.add(random.nextInt(size));
+        }
+        return result;
+    }
+
+    private static Set<Integer> set(AbstractDomain.Finitary x) {
+        Set<Integer> result = new TreeSet<>();
+        for (int a : x.elements()) {
+            result.add(a);
+        }
+        return result;
+    }
+
+    private static AbstractDomain.Finitary finitary(AbstractDomain domain, Set<Integer> xs) {
+        return domain.makeFinitary(xs.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private static Set<Integer> product(AbstractDomain domain, Set<Integer> xs, Set<Integer> ys) {
+        Set<Integer> result = new TreeSet<>();
+        for (int x : xs) {
+            for (int y : ys) {
+                result.add(domain.multiply(x, y));
+            }
+        }
+        return result;
+    }
+
+    private static void check(AbstractDomain domain) {
+        int size = domain.getAllMonoidElements().size();
+        Random random = new Random(size);
+        for (int i = 0; i < SAMPLES; i++) {
+            Set<Integer> xs = randomSet(random, size);
+            Set<Integer> ys = randomSet(random, size);
+            AbstractDomain.Finitary x = finitary(domain, xs);
+            AbstractDomain.Finitary y = finitary(domain, ys);
+
+            assertEquals(xs, set(x));
+            assertEquals(xs.isEmpty(), x.isZero());
+            assertEquals(xs.equals(ys), x.equals(y));
+
+            Set<Integer> union = new TreeSet<>(xs);
+            union.addAll(ys);
+            assertEquals(union, set(x.join(y)));
+            assertEquals(union, set(y.join(x)));
+            assertEquals(xs.containsAll(ys), x.contain(y));
+            assertTrue(x.join(y).contain(x));
+
+            assertEquals(product(domain, xs, ys), set(x.multiply(y)));
+            assertEquals(product(domain, ys, xs), set(x.multiplyLeft(y)));
+            assertEquals(domain.star(xs), set(x.star()));
+            assertEquals(domain.acceptedFinitary(xs), x.accepted());
+
+            for (int a : ys) {
+                Set<Integer> added = new TreeSet<>(xs);
+                added.add(a);
+                assertEquals(added, set(x.join(a)));
+            }
+        }
+    }
+
+    @Test
+    public void abcPolicy() {
+        check(new ABCPolicy().getAbstractDomain());
+    }
+
+    @Test
+    public void binaryPolicy() {
+        check(new BinaryPolicy().getAbstractDomain());
+    }
+
+    @Test
+    public void moreThan64Elements() {
+        check(new CyclicDomain(70));
+        check(new CyclicDomain(130));
+    }
+
+    @Test
+    public void constants() {
+        AbstractDomain domain = new CyclicDomain(100);
+        assertTrue(domain.zeroFinitary().isZero());
+        assertEquals(Collections.singleton(0), set(domain.oneFinitary()));
+        assertEquals(domain.getAllMonoidElements(), set(domain.topFinitary()));
+        assertEquals(domain.getAcceptedFinitaryClasses(), set(domain.getAcceptedFinitary()));
+
+        AbstractDomain.Finitary x = domain.makeFinitary(3, 70);
+        assertEquals(x, x.multiply(domain.oneFinitary()));
+        assertTrue(x.multiply(domain.zeroFinitary()).isZero());
+        assertEquals(x, x.join(domain.zeroFinitary()));
+        assertFalse(domain.makeFinitary(70).contain(domain.makeFinitary(3)));
+        assertEquals("{3, 70}", x.toString());
+    }
+}
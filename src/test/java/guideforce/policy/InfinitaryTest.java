@@ -0,0 +1,154 @@
+package guideforce.policy;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the bit set representation of infinitary abstractions against sets of tuples.
+ */
+public class InfinitaryTest {
+
+    private static final int SAMPLES = 300;
+
+    private static List<Integer> pair(int c, int d) {
+        return Arrays.asList(c, d);
+    }
+
+    private static List<List<Integer>> tuples(AbstractDomain domain) {
+        return domain.getTuples().stream()
+                .map(t -> pair(t.getC(), t.getD()))
+                .collect(Collectors.toList());
+    }
+
+    private static Set<List<Integer>> set(AbstractDomain.Infinitary x) {
+        Set<List<Integer>> result = new HashSet<>();
+        for (int[] t : x.tuples()) {
+            assertTrue(result.add(pair(t[0], t[1])));
+        }
+        return result;
+    }
+
+    private static Set<List<Integer>> set(Collection<AbstractDomain.Tuple> tuples) {
+        return tuples.stream().map(t -> pair(t.getC(), t.getD())).collect(Collectors.toSet());
+    }
+
+    private static AbstractDomain.Infinitary infinitary(AbstractDomain domain,
+                                                        Set<List<Integer>> tuples) {
+        return domain.makeInfinitary(tuples.stream()
+                .map(t -> new int[]{t.get(0), t.get(1)})
+                .toArray(int[][]::new));
+    }
+
+    private static Set<List<Integer>> randomSet(Random random, List<List<Integer>> tuples) {
+        Set<List<Integer>> result = new HashSet<>();
+        int count = random.nextInt(5);
+        for (int i = 0; i < count; i++) {
+            result.add(tuples.get(random.nextInt(tuples.size())));
+        }
+        return result;
+    }
+
+    private static Set<Integer> randomElements(Random random, int size) {
+        Set<Integer> result = new TreeSet<>();
+        int count = random.nextInt(4);
+        for (int i = 0; i < count; i++) {
+            result.add(random.nextInt(size));
+        }
+        return result;
+    }
+
+    private static void check(AbstractDomain domain) {
+        List<List<Integer>> tuples = tuples(domain);
+        Set<List<Integer>> accepted = set(domain.getAcceptedInfinitaryClasses());
+        int size = domain.getAllMonoidElements().size();
+        Random random = new Random(tuples.size());
+        for (int i = 0; i < SAMPLES; i++) {
+            Set<List<Integer>> ys = randomSet(random, tuples);
+            Set<List<Integer>> zs = randomSet(random, tuples);
+            AbstractDomain.Infinitary y = infinitary(domain, ys);
+            AbstractDomain.Infinitary z = infinitary(domain, zs);
+
+            assertEquals(ys, set(y));
+            assertEquals(ys.equals(zs), y.equals(z));
+            assertEquals(accepted.containsAll(ys), y.accepted());
+
+            Set<List<Integer>> union = new HashSet<>(ys);
+            union.addAll(zs);
+            assertEquals(union, set(y.join(z)));
+            assertEquals(union, set(z.join(y)));
+
+            Set<Integer> xs = randomElements(random, size);
+            AbstractDomain.Finitary x =
+                    domain.makeFinitary(xs.stream().mapToInt(Integer::intValue).toArray());
+            Set<List<Integer>> product = new HashSet<>();
+            for (int a : xs) {
+                for (List<Integer> t : ys) {
+                    product.add(pair(domain.multiply(a, t.get(0)), t.get(1)));
+                }
+            }
+            assertEquals(product, set(domain.multiply(x, y)));
+            assertEquals(product, set(y.multiplyLeft(x)));
+
+            Set<List<Integer>> finite = new HashSet<>();
+            for (int a : xs) {
+                finite.add(pair(a, domain.neutral()));
+            }
+            assertEquals(finite, set(x.asInfinitary()));
+            assertEquals(set(domain.omega(xs)), set(x.omega()));
+        }
+    }
+
+    @Test
+    public void abcPolicy() {
+        check(new ABCPolicy().getAbstractDomain());
+    }
+
+    @Test
+    public void binaryPolicy() {
+        check(new BinaryPolicy().getAbstractDomain());
+    }
+
+    @Test
+    public void aStarBStar() {
+        check(new AStarBStar().getAbstractDomain());
+    }
+
+    @Test
+    public void moreThan64Tuples() {
+        check(new CyclicDomain(70));
+        check(new CyclicDomain(130));
+    }
+
+    @Test
+    public void constants() {
+        AbstractDomain domain = new ABCPolicy().getAbstractDomain();
+        assertEquals(Collections.emptySet(), set(domain.zeroInfinitary()));
+        assertEquals(set(domain.getAcceptedInfinitaryClasses()),
+                set(domain.getAcceptedInfinitary()));
+        assertTrue(domain.getAcceptedInfinitary().accepted());
+
+        Set<List<Integer>> top = set(domain.topInfinitary());
+        for (List<Integer> t : tuples(domain)) {
+            if (t.get(1) == domain.neutral()) {
+                assertTrue(top.contains(t));
+            }
+        }
+    }
+
+    @Test
+    public void toStringListsTheTuplesInOrder() {
+        AbstractDomain domain = new CyclicDomain(100);
+        assertEquals("{(3, 0), (70, 0)}", domain.makeInfinitary(new int[][]{{70, 0}, {3, 0}})
+                .toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void makeInfinitaryRejectsOtherPairs() {
+        new CyclicDomain(10).makeInfinitary(new int[][]{{1, 1}});
+    }
+}
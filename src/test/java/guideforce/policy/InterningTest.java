@@ -0,0 +1,96 @@
+package guideforce.policy;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that equal abstractions of a domain are the same object, however they are obtained.
+ */
+public class InterningTest {
+
+    @Test
+    public void equalFinitariesAreTheSameObject() {
+        AbstractDomain domain = new ABCPolicy().getAbstractDomain();
+        AbstractDomain.Finitary x = domain.makeFinitary(1, 2, 3);
+        assertSame(x, domain.makeFinitary(3, 2, 1));
+        assertSame(x, domain.makeFinitary(1, 2).join(domain.makeFinitary(3)));
+        assertSame(x, domain.makeFinitary(1, 3).join(2));
+        assertSame(domain.oneFinitary(), domain.makeFinitary(domain.neutral()));
+        assertSame(domain.zeroFinitary(), domain.makeFinitary());
+        assertSame(domain.topFinitary(), domain.topFinitary());
+        assertSame(x.multiply(x), domain.makeFinitary(x.multiply(x).elements()));
+        assertSame(x.star(), domain.makeFinitary(x.star().elements()));
+
+        AbstractDomain large = new CyclicDomain(100);
+        assertSame(large.makeFinitary(5, 80), large.makeFinitary(80).join(large.makeFinitary(5)));
+        assertSame(large.makeFinitary(80, 90),
+                large.makeFinitary(5, 15).multiply(large.makeFinitary(75)));
+    }
+
+    @Test
+    public void equalInfinitariesAreTheSameObject() {
+        AbstractDomain domain = new ABCPolicy().getAbstractDomain();
+        AbstractDomain.Finitary x = domain.makeFinitary(1, 2);
+        AbstractDomain.Infinitary y = x.omega();
+        assertSame(y, domain.makeInfinitary(y.tuples()));
+        assertSame(y, x.omega());
+        assertSame(y, y.join(domain.zeroInfinitary()));
+        assertSame(domain.zeroInfinitary(), domain.makeInfinitary(new int[0][]));
+
+        AbstractDomain.Infinitary z = x.asInfinitary();
+        assertSame(y.join(z), z.join(y));
+        assertSame(y.join(z), domain.makeInfinitary(y.join(z).tuples()));
+        assertSame(domain.multiply(x, y), domain.makeInfinitary(domain.multiply(x, y).tuples()));
+    }
+
+    @Test
+    public void domainsDoNotShareAbstractions() {
+        AbstractDomain a = new CyclicDomain(10);
+        AbstractDomain b = new CyclicDomain(10);
+        assertNotSame(a.makeFinitary(1, 2), b.makeFinitary(1, 2));
+        assertEquals(a.makeFinitary(1, 2).toString(), b.makeFinitary(1, 2).toString());
+    }
+
+    @Test
+    public void concurrentOperationsGiveTheSameObjects() throws Exception {
+        AbstractDomain domain = new ABCPolicy().getAbstractDomain();
+        int size = domain.getAllMonoidElements().size();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Object>>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    // Every thread computes the same abstractions in the same order
+                    Random random = new Random(42);
+                    List<Object> results = new ArrayList<>();
+                    for (int i = 0; i < 500; i++) {
+                        AbstractDomain.Finitary x =
+                                domain.makeFinitary(random.nextInt(size), random.nextInt(size));
+                        AbstractDomain.Finitary y = domain.makeFinitary(random.nextInt(size));
+                        results.add(x.join(y));
+                        results.add(x.multiply(y));
+                        results.add(x.star());
+                        results.add(x.omega());
+                        results.add(x.multiply(y).asInfinitary().join(y.omega()));
+                    }
+                    return results;
+                }));
+            }
+            List<Object> expected = futures.get(0).get();
+            for (Future<List<Object>> future : futures) {
+                List<Object> results = future.get();
+                for (int i = 0; i < expected.size(); i++) {
+                    assertSame(expected.get(i), results.get(i));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package guideforce.policy.automata;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the algebraic omega of {@link AutomatonAbstractDomain} gives the tuples that
+ * are found with Büchi automata, as the domain computed them before.
+ */
+public class AutomatonAbstractDomainTest {
+
+    /**
+     * Words a^n b^m.
+     */
+    private static Automaton aStarBStar() {
+        Automaton a = new Automaton();
+        a.addAlphabetSymbol("a");
+        a.addAlphabetSymbol("b");
+        a.addState("0");
+        a.addState("1");
+        a.addEdge("0", "0", "a");
+        a.addEdge("0", "1", "b");
+        a.addEdge("1", "1", "b");
+        a.setInitialState("0");
+        a.addFinalState("0");
+        a.addFinalState("1");
+        return a;
+    }
+
+    /**
+     * Words with at most one a, over a, b and c.
+     */
+    private static Automaton atMostOneA() {
+        Automaton a = new Automaton();
+        a.addAlphabetSymbol("a");
+        a.addAlphabetSymbol("b");
+        a.addAlphabetSymbol("c");
+        a.addState("0");
+        a.addState("1");
+        a.addEdge("0", "1", "a");
+        a.addEdge("0", "0", "b");
+        a.addEdge("0", "0", "c");
+        a.addEdge("1", "1", "b");
+        a.addEdge("1", "1", "c");
+        a.setInitialState("0");
+        a.addFinalState("0");
+        a.addFinalState("1");
+        return a;
+    }
+
+    /**
+     * Words in which every b directly follows an a.
+     */
+    private static Automaton bAfterA() {
+        Automaton a = new Automaton();
+        a.addAlphabetSymbol("a");
+        a.addAlphabetSymbol("b");
+        a.addState("0");
+        a.addState("1");
+        a.addState("2");
+        a.addEdge("0", "1", "a");
+        a.addEdge("1", "1", "a");
+        a.addEdge("1", "2", "b");
+        a.addEdge("2", "1", "a");
+        a.setInitialState("0");
+        a.addFinalState("0");
+        a.addFinalState("1");
+        a.addFinalState("2");
+        return a;
+    }
+
+    /**
+     * Computes omega like the domain did before, by checking the intersection with
+     * (L \ {ε})^omega for each tuple and closing the result with Büchi automata.
+     */
+    private static Set<List<Integer>> expectedOmega(Automaton automaton, Set<Integer> classes) {
+        SyntacticMonoid monoid = automaton.toMonoid();
+        Map<Object, Integer> alphabetClasses = new HashMap<>();
+        for (Map.Entry<Object, TransitionBox> e : automaton.computeAlphabetClasses().entrySet()) {
+            alphabetClasses.put(e.getKey(), monoid.elements().indexOf(e.getValue()));
+        }
+        int neutral = monoid.neutral();
+        int n = monoid.elements().size();
+
+        List<List<Integer>> infinite = new ArrayList<>();
+        Map<List<Integer>, Automaton> concretisations = new HashMap<>();
+        for (int c = 0; c < n; c++) {
+            for (int d = 0; d < n; d++) {
+                if (d != neutral && monoid.multiply(c, d) == c && monoid.multiply(d, d) == d) {
+                    List<Integer> t = Arrays.asList(c, d);
+                    infinite.add(t);
+                    concretisations.put(t, Automaton.concat(
+                            Automaton.fromMonoid(monoid, alphabetClasses, c),
+                            Automaton.omega(Automaton.fromMonoid(monoid, alphabetClasses, d))));
+                }
+            }
+        }
+
+        Set<Integer> nonNeutral = new HashSet<>(classes);
+        nonNeutral.remove(neutral);
+        Automaton omega = Automaton.omega(Automaton.fromMonoid(monoid, alphabetClasses, nonNeutral));
+        Set<List<Integer>> result = new HashSet<>();
+        for (List<Integer> t : infinite) {
+            if (!Automaton.isIntersectionBuechiEmpty(omega, concretisations.get(t))) {
+                result.add(t);
+            }
+        }
+
+        // The closure: tuples whose concretisation meets that of a tuple in the result
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (List<Integer> t : infinite) {
+                if (result.contains(t)) {
+                    continue;
+                }
+                for (List<Integer> u : new ArrayList<>(result)) {
+                    if (!Automaton.isIntersectionBuechiEmpty(concretisations.get(t),
+                            concretisations.get(u))) {
+                        result.add(t);
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (classes.contains(neutral)) {
+            Set<Integer> star = new HashSet<>(classes);
+            boolean grown = true;
+            while (grown) {
+                grown = false;
+                for (int x : new ArrayList<>(star)) {
+                    for (int y : new ArrayList<>(star)) {
+                        grown |= star.add(monoid.multiply(x, y));
+                    }
+                }
+            }
+            for (int c : star) {
+                result.add(Arrays.asList(c, neutral));
+            }
+        }
+        return result;
+    }
+
+    private static Set<List<Integer>> omega(AutomatonAbstractDomain domain, Set<Integer> classes) {
+        int[][] tuples = domain.makeFinitary(
+                classes.stream().mapToInt(Integer::intValue).toArray()).omega().tuples();
+        Set<List<Integer>> result = new HashSet<>();
+        for (int[] t : tuples) {
+            result.add(Arrays.asList(t[0], t[1]));
+        }
+        return result;
+    }
+
+    private static void check(Automaton automaton) {
+        AutomatonAbstractDomain domain = new AutomatonAbstractDomain(automaton);
+        int n = domain.getAllMonoidElements().size();
+        for (int mask = 0; mask < 1 << n; mask++) {
+            Set<Integer> classes = new TreeSet<>();
+            for (int i = 0; i < n; i++) {
+                if ((mask >> i & 1) != 0) {
+                    classes.add(i);
+                }
+            }
+            assertEquals(classes.toString(), expectedOmega(automaton, classes),
+                    omega(domain, classes));
+        }
+    }
+
+    @Test
+    public void aStarBStarOmega() {
+        check(aStarBStar());
+    }
+
+    @Test
+    public void atMostOneAOmega() {
+        check(atMostOneA());
+    }
+
+    @Test
+    public void bAfterAOmega() {
+        check(bAfterA());
+    }
+}
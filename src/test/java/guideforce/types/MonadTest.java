@@ -0,0 +1,133 @@
+package guideforce.types;
+
+import guideforce.policy.ABCPolicy;
+import guideforce.policy.AbstractDomain;
+import guideforce.policy.AbstractDomain.Finitary;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the operations of {@link Monad} with the same operations on hash maps, for monads
+ * of both the small and the large representation.
+ */
+public class MonadTest {
+
+    private final AbstractDomain domain = new ABCPolicy().getAbstractDomain();
+    private final Finitary a = domain.makeFinitary(domain.read(ABCPolicy.Token.A));
+    private final Finitary b = domain.makeFinitary(domain.read(ABCPolicy.Token.B));
+    private final Finitary c = domain.makeFinitary(domain.read(ABCPolicy.Token.C));
+
+    /**
+     * Builds a monad with the given choices through the operations of the class, so that it
+     * has the representation that the analysis uses.
+     */
+    private Monad<String> build(Map<String, Finitary> choices) {
+        Monad<String> result = Monad.empty(domain);
+        for (Map.Entry<String, Finitary> choice : choices.entrySet()) {
+            result = result.join(Monad.pure(domain, choice.getKey()).then(choice.getValue()));
+        }
+        return result;
+    }
+
+    private Map<String, Finitary> randomChoices(Random random, int size) {
+        Finitary[] effects = {domain.oneFinitary(), a, b, c, a.join(b), b.multiply(c)};
+        Map<String, Finitary> choices = new HashMap<>();
+        while (choices.size() < size) {
+            choices.put("v" + random.nextInt(2 * size + 1),
+                    effects[random.nextInt(effects.length)]);
+        }
+        return choices;
+    }
+
+    @Test
+    public void mapJoinsChoicesWithTheSameValue() {
+        Map<String, Finitary> choices = new HashMap<>();
+        choices.put("x", a);
+        choices.put("y", b);
+        Monad<String> m = build(choices).map(v -> "r");
+
+        assertEquals(1, m.getChoices().size());
+        assertEquals(Collections.singleton("r"), m.support());
+        assertEquals(a.join(b), m.get("r"));
+        assertEquals(new Monad<>(domain, Collections.singletonMap("r", a.join(b))), m);
+    }
+
+    @Test
+    public void mapOfLargeMonadJoinsChoicesWithTheSameValue() {
+        Map<String, Finitary> choices = randomChoices(new Random(3), 9);
+        Monad<Integer> m = build(choices).map(String::length);
+
+        Map<Integer, Finitary> expected = new HashMap<>();
+        for (Map.Entry<String, Finitary> choice : choices.entrySet()) {
+            expected.merge(choice.getKey().length(), choice.getValue(), Finitary::join);
+        }
+        assertEquals(new Monad<>(domain, expected), m);
+    }
+
+    @Test
+    public void equalsAndHashCodeAgreeWithHashMapMonads() {
+        Random random = new Random(1);
+        for (int size = 0; size <= 8; size++) {
+            for (int i = 0; i < 20; i++) {
+                Map<String, Finitary> choices = randomChoices(random, size);
+                Monad<String> built = build(choices);
+                Monad<String> hashed = new Monad<>(domain, new HashMap<>(choices));
+
+                assertEquals(hashed, built);
+                assertEquals(built, hashed);
+                assertEquals(hashed.hashCode(), built.hashCode());
+                assertEquals(choices.hashCode(), built.getChoices().hashCode());
+                assertEquals(choices.size(), built.getChoices().size());
+                assertEquals(choices.keySet(), built.support());
+                for (Map.Entry<String, Finitary> choice : choices.entrySet()) {
+                    assertSame(choice.getValue(), built.get(choice.getKey()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void joinAndThenAgreeWithHashMaps() {
+        Random random = new Random(2);
+        for (int i = 0; i < 200; i++) {
+            Map<String, Finitary> left = randomChoices(random, random.nextInt(7));
+            Map<String, Finitary> right = randomChoices(random, random.nextInt(7));
+
+            Map<String, Finitary> joined = new HashMap<>(left);
+            right.forEach((v, e) -> joined.merge(v, e, Finitary::join));
+            assertEquals(new Monad<>(domain, joined), build(left).join(build(right)));
+
+            // Each choice continues with the choices of right under a suffix of its value
+            Map<String, Finitary> sequenced = new HashMap<>();
+            left.forEach((v, e1) -> right.forEach((w, e2) ->
+                    sequenced.merge(w + v.length(), e1.multiply(e2), Finitary::join)));
+            Monad<String> then = build(left).then(v -> build(right).map(w -> w + v.length()));
+            assertEquals(new Monad<>(domain, sequenced), then);
+
+            Map<String, Finitary> followed = new HashMap<>();
+            left.forEach((v, e) -> followed.put(v, e.multiply(c)));
+            assertEquals(new Monad<>(domain, followed), build(left).then(c));
+        }
+    }
+
+    @Test
+    public void removeAndTripleThen() {
+        Map<String, Finitary> choices = randomChoices(new Random(4), 6);
+        Monad<String> m = build(choices);
+        String removed = choices.keySet().iterator().next();
+        Map<String, Finitary> rest = new HashMap<>(choices);
+        rest.remove(removed);
+        assertEquals(new Monad<>(domain, rest), m.remove(removed));
+        assertSame(m, m.remove("absent"));
+
+        Triple<Monad<String>, Monad<String>, Monad<String>> t = m.tripleThen(v ->
+                new Triple<>(Monad.pure(domain, "r"), null, Monad.pure(domain, v)));
+        Finitary all = choices.values().stream().reduce(domain.zeroFinitary(), Finitary::join);
+        assertEquals(new Monad<>(domain, Collections.singletonMap("r", all)), t.getFirst());
+        assertTrue(t.getSecond().isEmpty());
+        assertEquals(m, t.getThird());
+    }
+}